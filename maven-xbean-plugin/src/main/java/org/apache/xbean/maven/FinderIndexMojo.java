@@ -0,0 +1,108 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.xbean.maven;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.xbean.finder.archive.ArchiveIndex;
+import org.apache.xbean.finder.archive.FileArchive;
+
+/**
+ * Scans the compiled classes of the module and stores their annotation index
+ * under META-INF so the jar can be served by the finder without reading its
+ * class files, see IndexedArchive#detect.
+ *
+ * @version $Rev$ $Date$
+ * @goal finder-index
+ * @description Creates the xbean-finder annotation index
+ * @phase process-classes
+ */
+public class FinderIndexMojo extends AbstractMojo {
+
+    /**
+     * @parameter expression="${project.build.outputDirectory}"
+     * @required
+     */
+    private File classesDirectory;
+
+    /**
+     * @parameter expression="${xbean.finder.index.skip}"
+     */
+    private boolean skip;
+
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        if (skip) {
+            getLog().info("Skipping xbean-finder index");
+            return;
+        }
+        if (!classesDirectory.isDirectory()) {
+            getLog().info("No classes to index in " + classesDirectory);
+            return;
+        }
+
+        final File output = new File(classesDirectory, ArchiveIndex.LOCATION);
+        // a previous index is not a class but don't let it survive a failed build
+        if (output.exists() && !output.delete()) {
+            throw new MojoExecutionException("Cannot delete " + output);
+        }
+
+        final URLClassLoader loader;
+        try {
+            loader = new URLClassLoader(new URL[]{classesDirectory.toURI().toURL()}, null);
+        } catch (MalformedURLException e) {
+            throw new MojoExecutionException("Invalid classes directory " + classesDirectory, e);
+        }
+        final ArchiveIndex index;
+        try {
+            index = ArchiveIndex.build(new FileArchive(loader, classesDirectory));
+        } catch (IOException e) {
+            throw new MojoExecutionException("Cannot index " + classesDirectory, e);
+        } finally {
+            try {
+                loader.close();
+            } catch (IOException e) {
+                getLog().debug("Cannot close the class loader of " + classesDirectory, e);
+            }
+        }
+
+        final File parent = output.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new MojoExecutionException("Cannot create " + parent);
+        }
+        try {
+            final OutputStream out = new BufferedOutputStream(new FileOutputStream(output));
+            try {
+                index.write(out);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("Cannot write " + output, e);
+        }
+        getLog().info("Indexed " + index.size() + " classes in " + output);
+    }
+}
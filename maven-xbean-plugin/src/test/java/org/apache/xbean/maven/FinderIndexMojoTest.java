@@ -0,0 +1,90 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.xbean.maven;
+
+import java.io.File;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+
+import org.apache.xbean.finder.AnnotationFinder;
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.ArchiveIndex;
+import org.apache.xbean.finder.archive.FileArchive;
+import org.apache.xbean.finder.archive.IndexedArchive;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class FinderIndexMojoTest {
+
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void indexIsServedByTheFinder() throws Exception {
+        final File classes = tmp.newFolder("classes");
+        copy(classes, FinderIndexMojoTest.class, Indexed.class);
+
+        final FinderIndexMojo mojo = new FinderIndexMojo();
+        set(mojo, "classesDirectory", classes);
+        mojo.execute();
+        assertTrue(new File(classes, ArchiveIndex.LOCATION).isFile());
+
+        final URLClassLoader loader = new URLClassLoader(new URL[]{classes.toURI().toURL()}, getClass().getClassLoader());
+        try {
+            final Archive archive = IndexedArchive.detect(new FileArchive(loader, classes));
+            assertTrue(archive instanceof IndexedArchive);
+            assertEquals(2, ((IndexedArchive) archive).getIndex().size());
+            assertEquals(1, new AnnotationFinder(archive).findAnnotatedClasses(Deprecated.class).size());
+        } finally {
+            loader.close();
+        }
+    }
+
+    private static void copy(final File dir, final Class<?>... types) throws Exception {
+        for (Class<?> type : types) {
+            final String name = type.getName().replace('.', '/') + ".class";
+            final File file = new File(dir, name);
+            assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+            final InputStream in = type.getClassLoader().getResourceAsStream(name);
+            try {
+                Files.copy(in, file.toPath());
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    private static void set(final Object target, final String name, final Object value) throws Exception {
+        final Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    @Deprecated
+    public static class Indexed {
+    }
+}
@@ -20,8 +20,12 @@
 
 package org.apache.xbean.finder;
 
+import org.apache.xbean.asm9.original.commons.AsmConstants;
 import org.apache.xbean.asm9.original.commons.EmptyVisitor;
 import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.CompositeArchive;
+import org.apache.xbean.finder.archive.IndexedArchive;
+import org.apache.xbean.finder.archive.MappedJarArchive;
 import org.apache.xbean.finder.util.Classes;
 import org.apache.xbean.finder.util.SingleLinkedList;
 import org.objectweb.asm.AnnotationVisitor;
@@ -32,26 +36,45 @@ import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Type;
 
 import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.annotation.Annotation;
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Target;
+import java.lang.reflect.Array;
 import java.lang.reflect.AnnotatedElement;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Member;
 import java.lang.reflect.Method;
+import java.util.AbstractList;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 /**
  * ClassFinder searches the classpath of the specified classloader for
@@ -73,20 +96,83 @@ public class AnnotationFinder implements IAnnotationFinder {
     // xbean.finder.prevent-lazy-linking= true will prevent it, see readClassDef(Class)
     private static final boolean ALLOW_LAZY_LINKING = !Boolean.getBoolean("xbean.finder.prevent-lazy-linking");
 
+    // default of prefilter(), see that method
+    private static final boolean PREFILTER = Boolean.getBoolean("xbean.finder.prefilter");
+
+    // default of hierarchyIndex(), see that method
+    private static final boolean HIERARCHY_INDEX = Boolean.getBoolean("xbean.finder.hierarchy-index");
+
+    // when set every finder reports to ScanMetrics.getInstance()
+    private static final boolean METRICS = Boolean.getBoolean("xbean.finder.metrics");
+
+    // subclasses still reading the archive entries with readClassDef(String, InputStream) of this class
+    private static final ClassValue<Boolean> DEFAULT_READING = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(final Class<?> type) {
+            for (Class<?> current = type; current != AnnotationFinder.class; current = current.getSuperclass()) {
+                try {
+                    current.getDeclaredMethod("readClassDef", String.class, InputStream.class);
+                    return false;
+                } catch (final NoSuchMethodException e) {
+                    // keep looking
+                }
+            }
+            return true;
+        }
+    };
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final String[] ANNOTATION_ATTRIBUTES = {
+            "RuntimeVisibleAnnotations", "RuntimeInvisibleAnnotations",
+            "RuntimeVisibleParameterAnnotations", "RuntimeInvisibleParameterAnnotations"
+    };
+
     private final Set<Class<? extends Annotation>> metaroots = new HashSet<Class<? extends Annotation>>();
 
     protected final Map<String, List<Info>> annotated = newAnnotatedMap();
 
     protected final Map<String, ClassInfo> classInfos = newClassInfoMap();
     protected final Map<String, ClassInfo> originalInfos = newClassInfoMap();
-    private final List<String> classesNotLoaded = new LinkedList<String>();
+    // per thread once frozen, see freeze()
+    private List<String> classesNotLoaded = new LinkedList<String>();
     private final Archive archive;
     private final boolean checkRuntimeAnnotation;
     private volatile boolean linking;
+    // archives not scanned yet, null once everything was read
+    private List<Archive> pending;
+    // composite of each pending child archive, the children are listed through it
+    private final Map<Archive, CompositeArchive> parents = new IdentityHashMap<Archive, CompositeArchive>();
+    private Executor executor;
+    // links requested so far, maintained by update()
+    private boolean subclassesLinked;
+    private boolean implementationsLinked;
+    private boolean metaAnnotationsLinked;
+    // annotation types whose definition was read by resolveAnnotations, they are never visited twice
+    private final Set<String> resolvedAnnotations = new HashSet<String>();
+    // annotation types discovered while resolveAnnotations runs, null otherwise
+    private Deque<String> annotationWorklist;
+    // incremented on each change of classInfos
+    private int modifications;
+    // modifications when the meta annotations were last linked, nothing to do while it doesn't change
+    private int metaLinkedModifications = -1;
+    // subclasses and implementations closures, null until enableHierarchyIndex()
+    private volatile HierarchyIndex hierarchy;
+    private volatile boolean frozen;
+    // loads the classes of the query results in parallel, see enableParallelLoading
+    private Executor loadingExecutor;
+    private int loadingParallelism;
+    // see enableScanListener
+    private volatile ScanListener listener;
+    // cost of the archive being scanned, null when nobody listens
+    private volatile ScanCounters counters;
+    // the names of the model being read, shared by its infos, null once the archive was scanned
+    ConcurrentMap<String, String> names;
 
     private AnnotationFinder(AnnotationFinder parent, Iterable<String> classNames) {
+        parent.scan();
         this.archive = new SubArchive(classNames);
         this.checkRuntimeAnnotation = parent.checkRuntimeAnnotation;
+        this.listener = parent.listener;
         this.metaroots.addAll(parent.metaroots);
 
         for (Class<? extends Annotation> metaroot : metaroots) {
@@ -100,7 +186,7 @@ public class AnnotationFinder implements IAnnotationFinder {
             readClassDef(info);
         }
 
-        resolveAnnotations(parent, new LinkedList<String>());
+        resolveAnnotations(parent);
         for (ClassInfo classInfo : classInfos.values()) {
             if (isMetaRoot(classInfo)) {
                 try {
@@ -138,40 +224,285 @@ public class AnnotationFinder implements IAnnotationFinder {
         return true;
     }
 
+    /**
+     * When true the constant pool of each class is checked before parsing it: a class
+     * without annotation attributes or whose constant pool doesn't reference any
+     * annotation descriptor accepted by {@link #isTracked(String)} can't match any query,
+     * it is only recorded with its superclass and interfaces (enough for {@link #link()}),
+     * its fields and methods are skipped. Such classes are not recorded at all
+     * when {@link #cleanOnNaked()} is true.
+     *
+     * Defaults to the xbean.finder.prefilter system property.
+     *
+     * @return true to parse only the classes which can be annotated with a tracked annotation
+     */
+    protected boolean prefilter() {
+        return PREFILTER;
+    }
+
+    /**
+     * When true {@link #link()} also calls {@link #enableHierarchyIndex()}.
+     *
+     * Defaults to the xbean.finder.hierarchy-index system property.
+     *
+     * @return true to precompute the results of findSubclasses and findImplementations
+     */
+    protected boolean hierarchyIndex() {
+        return HIERARCHY_INDEX;
+    }
+
     /**
      *
      * @param archive
      * @param checkRuntimeAnnotation Has no effect on findMetaAnnotated* methods
      */
     public AnnotationFinder(Archive archive, boolean checkRuntimeAnnotation) {
+        this(archive, checkRuntimeAnnotation, null);
+    }
+
+    /**
+     * Entries of the archive are read and parsed by tasks submitted to the executor,
+     * the resulting class definitions are then merged in archive order on the calling
+     * thread so the finder ends up in the same state as with a sequential scan.
+     * <p/>
+     * Note that a finder overriding {@link #readClassDef(String, InputStream)} ignores the executor and scans
+     * sequentially so each entry still goes through it, and that {@link #isTracked(String)} and {@link #cleanOnNaked()}
+     * get called from the executor threads.
+     *
+     * @param archive
+     * @param checkRuntimeAnnotation Has no effect on findMetaAnnotated* methods
+     * @param executor the executor used to parse the archive entries, null means sequential scanning
+     */
+    public AnnotationFinder(Archive archive, boolean checkRuntimeAnnotation, Executor executor) {
+        this(archive, checkRuntimeAnnotation, executor, false);
+    }
+
+    /**
+     * A lazy finder doesn't read anything until a query needs the scanned model, the
+     * archive is then read once and later queries are served from memory.
+     * <p/>
+     * Composite archives are read child by child and the children already read are
+     * remembered, so a scan interrupted by an error resumes with the remaining ones.
+     * Subclasses reading the annotated or classInfos fields directly should call
+     * {@link #scan()} first.
+     *
+     * @param archive
+     * @param checkRuntimeAnnotation Has no effect on findMetaAnnotated* methods
+     * @param executor the executor used to parse the archive entries, null means sequential scanning
+     * @param lazy if true the archive is read on the first query instead of in the constructor
+     */
+    public AnnotationFinder(Archive archive, boolean checkRuntimeAnnotation, Executor executor, boolean lazy) {
+        this(archive, checkRuntimeAnnotation, executor, lazy, METRICS ? ScanMetrics.getInstance() : null);
+    }
+
+    /**
+     * Same as {@link #AnnotationFinder(Archive, boolean, Executor, boolean)} reporting to the given
+     * listener from the start, including the archives a finder which is not lazy reads in its constructor.
+     *
+     * @param archive
+     * @param checkRuntimeAnnotation Has no effect on findMetaAnnotated* methods
+     * @param executor the executor used to parse the archive entries, null means sequential scanning
+     * @param lazy if true the archive is read on the first query instead of in the constructor
+     * @param listener notified of the archives read, the link phases and the classes loaded, null for none
+     * @see #enableScanListener(ScanListener)
+     */
+    public AnnotationFinder(Archive archive, boolean checkRuntimeAnnotation, Executor executor, boolean lazy, ScanListener listener) {
         this.archive = archive;
         this.checkRuntimeAnnotation = checkRuntimeAnnotation;
+        this.executor = executor;
+        this.listener = listener;
+        this.pending = new LinkedList<Archive>();
+        this.names = new ConcurrentHashMap<String, String>();
+
+        if (lazy) {
+            leaves(archive, pending, parents);
+        } else {
+            if (listener != null) {
+                // reported archive by archive
+                leaves(archive, pending, parents);
+            } else {
+                pending.add(archive);
+            }
+            scan();
+        }
+    }
+
+    /**
+     * Reads the archives which were not read yet, a no-op once the whole archive was scanned.
+     */
+    protected void scan() {
+        if (pending == null) {
+            return;
+        }
+
+        while (!pending.isEmpty()) {
+            final Archive next = pending.get(0);
+            final ScanListener listener = this.listener;
+            final long start = listener == null ? 0 : System.nanoTime();
+            counters = listener == null ? null : new ScanCounters();
+            try {
+                if (executor == null || !DEFAULT_READING.get(getClass())) {
+                    readClassDefs(next);
+                } else {
+                    readClassDefs(next, executor);
+                }
+                if (listener != null) {
+                    listener.archiveScanned(next, counters.entries.get(), counters.bytes.get(), counters.parseNanos.get(), System.nanoTime() - start);
+                }
+            } finally {
+                counters = null;
+            }
+            pending.remove(0);
+        }
+        pending = null;
+        parents.clear();
+        executor = null;
+        // the infos keep the shared instances, the map is only needed while reading
+        names = null;
+
+        // keep track of what was originally from the archives
+        originalInfos.putAll(classInfos);
+    }
+
+    // composites which don't customize their iteration are read child by child
+    private static void leaves(final Archive archive, final List<Archive> leaves, final Map<Archive, CompositeArchive> parents) {
+        if (archive instanceof CompositeArchive) {
+            try {
+                if (archive.getClass().getMethod("iterator").getDeclaringClass() == CompositeArchive.class) {
+                    for (Archive child : ((CompositeArchive) archive).getArchives()) {
+                        parents.put(child, (CompositeArchive) archive);
+                        leaves(child, leaves, parents);
+                    }
+                    return;
+                }
+            } catch (NoSuchMethodException e) {
+                // can't happen, Archive is Iterable
+            }
+        }
+        leaves.add(archive);
+    }
 
-        for (Archive.Entry entry : archive) {
+    // listed through its composite when it has one, the composite can then route its lookups
+    private Iterable<Archive.Entry> entries(final Archive archive) {
+        final CompositeArchive parent = parents.get(archive);
+        if (parent == null) return archive;
+        return () -> parent.iterator(archive);
+    }
+
+    private void readClassDefs(final Archive archive) {
+        final ScanCounters counters = this.counters;
+        // the indexed and mapped entries skip the stream, unless the subclass wants to see it
+        final boolean direct = DEFAULT_READING.get(getClass());
+        for (Archive.Entry entry : entries(archive)) {
             final String className = entry.getName();
+            if (counters != null) {
+                counters.entries.incrementAndGet();
+            }
             try {
-                readClassDef(entry.getName(), entry.getBytecode());
+                if (direct && entry instanceof IndexedArchive.IndexedEntry) {
+                    readClassDef((IndexedArchive.IndexedEntry) entry, new InfoBuildingVisitor());
+                } else if (direct && entry instanceof MappedJarArchive.MappedEntry) {
+                    readClassDef((MappedJarArchive.MappedEntry) entry, new InfoBuildingVisitor());
+                } else {
+                    readClassDef(entry.getName(), entry.getBytecode());
+                }
             } catch (NoClassDefFoundError e) {
                 throw new NoClassDefFoundError("Could not fully load class: " + className + "\n due to:" + e.getMessage());
             } catch (IOException e) {
                 e.printStackTrace();
             }
         }
-
-        // keep track of what was originally from the archives
-        originalInfos.putAll(classInfos);
     }
 
     public AnnotationFinder(Archive archive) {
         this(archive, true);
     }
 
+    private void readClassDefs(final Archive archive, final Executor executor) {
+        final ScanCounters counters = this.counters;
+        final List<FutureTask<ClassDef>> tasks = new ArrayList<FutureTask<ClassDef>>();
+        for (final Archive.Entry entry : entries(archive)) {
+            if (counters != null) {
+                counters.entries.incrementAndGet();
+            }
+            final FutureTask<ClassDef> task = new FutureTask<ClassDef>(new Callable<ClassDef>() {
+                public ClassDef call() throws Exception {
+                    return readClassDef(entry);
+                }
+            });
+            tasks.add(task);
+            executor.execute(task);
+        }
+
+        try {
+            for (final FutureTask<ClassDef> task : tasks) {
+                final ClassDef def;
+                try {
+                    def = task.get();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while scanning " + archive, e);
+                } catch (final ExecutionException e) {
+                    final Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new IllegalStateException(cause);
+                }
+                if (def != null) {
+                    def.merge();
+                }
+            }
+        } finally {
+            for (final FutureTask<ClassDef> task : tasks) {
+                task.cancel(false);
+            }
+        }
+    }
+
+    private ClassDef readClassDef(final Archive.Entry entry) {
+        final String className = entry.getName();
+        final ClassDef def = new ClassDef();
+        try {
+            if (entry instanceof IndexedArchive.IndexedEntry) {
+                readClassDef((IndexedArchive.IndexedEntry) entry, new InfoBuildingVisitor(null, def));
+                return def;
+            }
+            if (entry instanceof MappedJarArchive.MappedEntry) {
+                readClassDef((MappedJarArchive.MappedEntry) entry, new InfoBuildingVisitor(null, def));
+                return def;
+            }
+            final InputStream in = entry.getBytecode();
+            final ScanCounters counters = this.counters;
+            try {
+                final CountingInputStream counted = counters == null ? null : new CountingInputStream(in);
+                ClassReader classReader = new ClassReader(counted == null ? in : counted);
+                accept(classReader, new InfoBuildingVisitor(null, def), counted == null ? 0 : counted.count);
+            } catch (final Exception e) {
+                throw new RuntimeException("Unable to read class definition for " + className, e);
+            } finally {
+                in.close();
+            }
+        } catch (NoClassDefFoundError e) {
+            throw new NoClassDefFoundError("Could not fully load class: " + className + "\n due to:" + e.getMessage());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+        return def;
+    }
+
     public boolean hasMetaAnnotations() {
+        scan();
         return metaroots.size() > 0;
     }
 
     private void readClassDef(ClassInfo info) {
         classInfos.put(info.getName(), info);
+        modifications++;
         index(info);
         index(info.constructors);
         for (MethodInfo ctor : info.constructors) {
@@ -184,24 +515,6 @@ public class AnnotationFinder implements IAnnotationFinder {
         index(info.fields);
     }
 
-    private void resolveAnnotations(AnnotationFinder parent, List<String> scanned) {
-        // Get a list of the annotations that exist before we start
-        final List<String> annotations = new ArrayList<String>(annotated.keySet());
-
-        for (String annotation : annotations) {
-            if (scanned.contains(annotation)) continue;
-            final ClassInfo info = parent.classInfos.get(annotation);
-            if (info == null) continue;
-            readClassDef(info);
-        }
-
-        // If the "annotated" list has grown, then we must scan those
-        if (annotated.keySet().size() != annotations.size()) {
-            resolveAnnotations(parent, annotations);
-        }
-    }
-
-
     private void index(List<? extends Info> infos) {
         for (Info i : infos) {
             index(i);
@@ -214,7 +527,45 @@ public class AnnotationFinder implements IAnnotationFinder {
         }
     }
 
+    /**
+     * Selects the elements annotated with the given annotation using the values recorded
+     * during the scan, no class is loaded so a filter on the annotation values (a path,
+     * a name...) avoids loading the classes which don't match it.
+     *
+     * @param annotation the annotation class name
+     * @param filter test applied to the annotation of each annotated element
+     * @return the ClassInfo, MethodInfo, FieldInfo, ParameterInfo and PackageInfo whose annotation matches
+     * @see AnnotationInfo#getValues()
+     */
+    public List<Info> findAnnotatedInfos(String annotation, Predicate<AnnotationInfo> filter) {
+        final List<Info> found = new ArrayList<Info>();
+        for (Info info : getAnnotationInfos(annotation)) {
+            for (AnnotationInfo annotationInfo : annotationsOf(info)) {
+                if (annotationInfo.getName().equals(annotation) && filter.test(annotationInfo)) {
+                    found.add(info);
+                    break;
+                }
+            }
+        }
+        return found;
+    }
+
+    public List<Info> findAnnotatedInfos(Class<? extends Annotation> annotation, Predicate<AnnotationInfo> filter) {
+        return findAnnotatedInfos(annotation.getName(), filter);
+    }
+
+    private static List<AnnotationInfo> annotationsOf(Info info) {
+        if (info instanceof ParameterInfo && info.getAnnotations().isEmpty()) {
+            // scanned parameters keep their annotations on the method
+            final ParameterInfo parameterInfo = (ParameterInfo) info;
+            final List<List<AnnotationInfo>> annotations = parameterInfo.getDeclaringMethod().parameterAnnotations;
+            return parameterInfo.index < annotations.size() ? annotations.get(parameterInfo.index) : Collections.<AnnotationInfo>emptyList();
+        }
+        return info.getAnnotations();
+    }
+
     public List<String> getAnnotatedClassNames() {
+        scan();
         return new ArrayList<String>(originalInfos.keySet());
     }
 
@@ -236,28 +587,47 @@ public class AnnotationFinder implements IAnnotationFinder {
 
         enableMetaAnnotations();
 
+        if (hierarchyIndex()) {
+            enableHierarchyIndex();
+        }
+
         return this;
     }
 
     public AnnotationFinder enableMetaAnnotations() {
-        // diff new and old lists
-        resolveAnnotations(new LinkedList<String>());
+        if (frozen) return this;
+        scan();
+        if (metaAnnotationsLinked && metaLinkedModifications == modifications) return this;
+
+        final long start = System.nanoTime();
+        resolveAnnotations(null);
 
         linkMetaAnnotations();
+        metaAnnotationsLinked = true;
+        metaLinkedModifications = modifications;
+        linked("meta-annotations", start);
 
         return this;
     }
 
     public AnnotationFinder enableFindImplementations() {
+        if (frozen) return this;
+        scan();
+        final long start = System.nanoTime();
         for (ClassInfo classInfo : classInfos.values().toArray(new ClassInfo[classInfos.size()])) {
 
             linkInterfaces(classInfo);
 
         }
+        implementationsLinked = true;
+        linked("implementations", start);
         return this;
     }
 
     public AnnotationFinder enableFindSubclasses() {
+        if (frozen) return this;
+        scan();
+        final long start = System.nanoTime();
         final boolean originalLinking = linking;
         linking = ALLOW_LAZY_LINKING;
         for (ClassInfo classInfo : classInfos.values().toArray(new ClassInfo[classInfos.size()])) {
@@ -265,51 +635,351 @@ public class AnnotationFinder implements IAnnotationFinder {
             linkParent(classInfo);
         }
         linking = originalLinking;
+        subclassesLinked = true;
+        linked("subclasses", start);
+        return this;
+    }
+
+    /**
+     * Links the subclasses and implementations then computes the transitive subclasses
+     * and implementations of every class and interface once, findSubclasses and
+     * findImplementations become lookups instead of walking the hierarchy on each call.
+     * <p/>
+     * The index is a snapshot of the linked classes, {@link #update(Iterable)} computes it again.
+     *
+     * @return this finder
+     */
+    public AnnotationFinder enableHierarchyIndex() {
+        if (frozen) return this;
+        enableFindSubclasses();
+        enableFindImplementations();
+        final long start = System.nanoTime();
+        hierarchy = new HierarchyIndex();
+        linked("hierarchy-index", start);
+        return this;
+    }
+
+    private void linked(final String phase, final long start) {
+        final ScanListener listener = this.listener;
+        if (listener != null) {
+            listener.linked(phase, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Reports the archives read, the link phases and the classes loaded by this finder
+     * to the listener, {@link ScanMetrics} aggregates them for instance.
+     * <p/>
+     * When listened, composite archives are read child by child so each of them is reported.
+     * A finder which is not lazy reads its archive in the constructor, before this method can be
+     * called: pass the listener to {@link #AnnotationFinder(Archive, boolean, Executor, boolean, ScanListener)}
+     * to have that scan reported. The other constructors use {@link ScanMetrics#getInstance()}
+     * when the xbean.finder.metrics system property is true.
+     *
+     * @param listener the listener replacing the default one, null to stop reporting
+     * @return this finder
+     */
+    public AnnotationFinder enableScanListener(ScanListener listener) {
+        this.listener = listener;
         return this;
     }
 
+    // archive.loadClass reporting to the listener
+    private Class<?> loadClass(final String className) throws ClassNotFoundException {
+        final ScanListener listener = this.listener;
+        if (listener == null) {
+            return archive.loadClass(className);
+        }
+
+        final long start = System.nanoTime();
+        try {
+            final Class<?> clazz = archive.loadClass(className);
+            listener.classLoaded(className, System.nanoTime() - start);
+            return clazz;
+        } catch (ClassNotFoundException | LinkageError e) {
+            listener.classNotLoaded(className, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the whole archive, links it (subclasses, implementations, meta-annotations and
+     * the hierarchy index) and makes the finder read-only: queries no longer modify it
+     * so it can be shared by threads without any synchronization once published.
+     * <p/>
+     * The link methods become no-ops, {@link #update(Iterable)} fails and
+     * {@link #getClassesNotLoaded()} reports the last query of the calling thread.
+     *
+     * @return this finder
+     */
+    public AnnotationFinder freeze() {
+        if (frozen) return this;
+
+        enableMetaAnnotations();
+        enableHierarchyIndex();
+
+        for (Map.Entry<String, List<Info>> entry : annotated.entrySet()) {
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        }
+        classesNotLoaded = new PerThreadList<String>();
+        frozen = true;
+        return this;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Replaces the model of the given classes by their current bytecode, classes which
+     * are no longer in the archive are removed. Only these classes are read again and the
+     * links enabled so far (subclasses, implementations, meta-annotations) are updated for
+     * them, so a redeployment costs the size of the change instead of the size of the
+     * application.
+     * <p/>
+     * The archive has to serve the new bytecode, classes already loaded by the finder
+     * are not loaded again.
+     *
+     * @param classNames the added, changed or removed classes
+     * @return this finder
+     */
+    public AnnotationFinder update(Iterable<String> classNames) {
+        if (frozen) {
+            throw new IllegalStateException("A frozen finder can't be updated");
+        }
+        if (pending != null) {
+            // not read yet, the first query will see the current archive
+            return this;
+        }
+
+        final Set<String> names = new HashSet<String>();
+        for (String name : classNames) {
+            names.add(name);
+        }
+        if (names.isEmpty()) {
+            return this;
+        }
+
+        // the updated classes share the names of the model again
+        this.names = modelNames();
+        try {
+            reread(names);
+        } finally {
+            this.names = null;
+        }
+        return this;
+    }
+
+    private ConcurrentMap<String, String> modelNames() {
+        final ConcurrentMap<String, String> names = new ConcurrentHashMap<String, String>();
+        for (ClassInfo classInfo : classInfos.values()) {
+            names.putIfAbsent(classInfo.getName(), classInfo.getName());
+            if (classInfo.superType != null) {
+                names.putIfAbsent(classInfo.superType, classInfo.superType);
+            }
+        }
+        for (String annotation : annotated.keySet()) {
+            names.putIfAbsent(annotation, annotation);
+        }
+        return names;
+    }
+
+    private void reread(Set<String> names) {
+        // forget the previous definitions
+        final List<ClassInfo> orphans = new ArrayList<ClassInfo>();
+        for (String name : names) {
+            originalInfos.remove(name);
+            final ClassInfo old = classInfos.remove(name);
+            if (old == null) continue;
+            modifications++;
+
+            final ClassInfo parentInfo = old.superclassInfo;
+            if (parentInfo != null) {
+                synchronized (parentInfo.subclassInfos) {
+                    retain(parentInfo.subclassInfos, names);
+                }
+            }
+            for (ClassInfo subclassInfo : old.subclassInfos) {
+                subclassInfo.superclassInfo = null;
+                if (!names.contains(subclassInfo.getName())) {
+                    orphans.add(subclassInfo);
+                }
+            }
+        }
+        classesNotLoaded.removeAll(names);
+        for (Iterator<Class<? extends Annotation>> roots = metaroots.iterator(); roots.hasNext();) {
+            if (names.contains(roots.next().getName())) {
+                roots.remove();
+            }
+        }
+        final List<String> unused = new ArrayList<String>();
+        for (Map.Entry<String, List<Info>> entry : annotated.entrySet()) {
+            if (retain(entry.getValue(), names) && entry.getValue().isEmpty()) {
+                unused.add(entry.getKey());
+            }
+        }
+        for (String annotation : unused) {
+            annotated.remove(annotation);
+            resolvedAnnotations.remove(annotation);
+        }
+
+        final Set<String> known = metaAnnotationsLinked ? new HashSet<String>(classInfos.keySet()) : null;
+
+        // read the current definitions
+        final List<ClassInfo> updated = new ArrayList<ClassInfo>();
+        for (String name : names) {
+            try {
+                final InputStream in = archive.findBytecode(name);
+                if (in == null) continue; // removed
+                readClassDef(name, in);
+            } catch (IOException e) {
+                classesNotLoaded.add(name);
+                continue;
+            }
+            final ClassInfo info = classInfos.get(name);
+            if (info != null) {
+                originalInfos.put(name, info);
+                updated.add(info);
+            }
+        }
+
+        if (subclassesLinked) {
+            // classes extending a class which was not there before
+            for (ClassInfo classInfo : classInfos.values()) {
+                if (classInfo.superclassInfo == null && classInfo.superType != null
+                        && names.contains(classInfo.superType) && !names.contains(classInfo.getName())) {
+                    orphans.add(classInfo);
+                }
+            }
+
+            final boolean originalLinking = linking;
+            linking = ALLOW_LAZY_LINKING;
+            for (ClassInfo classInfo : updated) {
+                linkParent(classInfo);
+            }
+            for (ClassInfo classInfo : orphans) {
+                linkParent(classInfo);
+            }
+            linking = originalLinking;
+        }
+
+        if (implementationsLinked) {
+            for (ClassInfo classInfo : updated) {
+                linkInterfaces(classInfo);
+            }
+        }
+
+        if (metaAnnotationsLinked) {
+            resolveAnnotations(null);
+
+            final Set<String> roots = new HashSet<String>();
+            for (ClassInfo classInfo : classInfos.values().toArray(new ClassInfo[classInfos.size()])) {
+                if (known.contains(classInfo.getName()) || !isMetaRoot(classInfo)) continue;
+                try {
+                    metaroots.add((Class<? extends Annotation>) classInfo.get());
+                    roots.add(classInfo.getName());
+                } catch (ClassNotFoundException e) {
+                    classesNotLoaded.add(classInfo.getName());
+                }
+            }
+
+            for (Class<? extends Annotation> metaroot : metaroots) {
+                final List<Info> infoList = annotated.get(metaroot.getName());
+                if (infoList == null) continue;
+                final boolean root = roots.contains(metaroot.getName());
+                for (Info info : infoList) {
+                    if (root || names.contains(declaringClassName(info))) {
+                        readClassDef(info.getName() + "$$");
+                    }
+                }
+            }
+            metaLinkedModifications = modifications;
+        }
+
+        if (hierarchy != null) {
+            hierarchy = new HierarchyIndex();
+        }
+    }
+
+    /**
+     * Drops the infos declared by the given classes, the lists of the model
+     * do not support removal so the remaining infos are added back in order.
+     *
+     * @return true if the list changed
+     */
+    private static <T> boolean retain(List<T> infos, Set<String> removed) {
+        final List<T> kept = new ArrayList<T>(infos.size());
+        for (int i = 0; i < infos.size(); i++) {
+            final T info = infos.get(i);
+            if (!removed.contains(declaringClassName((Info) info))) {
+                kept.add(info);
+            }
+        }
+        if (kept.size() == infos.size()) {
+            return false;
+        }
+
+        infos.clear();
+        for (T info : kept) {
+            infos.add(info);
+        }
+        return true;
+    }
+
+    private static String declaringClassName(Info info) {
+        if (info instanceof MethodInfo) {
+            return ((MethodInfo) info).getDeclaringClass().getName();
+        }
+        if (info instanceof FieldInfo) {
+            return ((FieldInfo) info).getDeclaringClass().getName();
+        }
+        if (info instanceof ParameterInfo) {
+            return ((ParameterInfo) info).getDeclaringMethod().getDeclaringClass().getName();
+        }
+        // classes and packages
+        return info.getName();
+    }
+
     /**
      * Used to support meta annotations
      * <p/>
      * Once the list of classes has been read from the Archive, we
      * iterate over all the annotations that are used by those classes
      * and recursively resolve any annotations those annotations use.
+     * <p/>
+     * Annotation types are processed as a worklist: reading a definition queues the
+     * annotation types it introduces (see initAnnotationInfos) and each type is read once
+     * for the life of the finder, so later calls only visit the types found since.
      *
-     * @param scanned
-     * @throws ClassNotFoundException
-     * @throws IOException
+     * @param parent the finder to take the definitions from, null to read them from the archive
      */
-    private void resolveAnnotations(List<String> scanned) {
-        // Get a list of the annotations that exist before we start
-        final List<String> annotations = new ArrayList<String>(annotated.keySet());
-
-        for (String annotation : annotations) {
-            if (scanned.contains(annotation)) continue;
-            readClassDef(annotation);
+    private void resolveAnnotations(AnnotationFinder parent) {
+        final Deque<String> worklist = new ArrayDeque<String>();
+        for (String annotation : annotated.keySet()) {
+            if (resolvedAnnotations.add(annotation)) worklist.add(annotation);
         }
 
-        // If the "annotated" list has grown, then we must scan those
-        if (annotated.keySet().size() != annotations.size()) {
-            resolveAnnotations(annotations);
+        annotationWorklist = worklist;
+        try {
+            String annotation;
+            while ((annotation = worklist.poll()) != null) {
+                if (parent == null) {
+                    readClassDef(annotation);
+                } else {
+                    final ClassInfo info = parent.classInfos.get(annotation);
+                    if (info != null && !classInfos.containsKey(annotation)) readClassDef(info);
+                }
+            }
+        } finally {
+            annotationWorklist = null;
         }
-
-
-//        for (ClassInfo classInfo : classInfos.values()) {
-//            for (AnnotationInfo annotationInfo : classInfo.getAnnotations()) {
-//                for (AnnotationInfo info : annotationInfo.getAnnotations()) {
-//                    final String annotation = info.getName();
-//
-//                    if (hasName(annotation, "Metaroot") && !scanned.contains(annotation)) {
-//                        readClassDef(annotation);
-//                    }
-//                }
-//            }
-//        }
     }
 
     private void linkMetaAnnotations() {
-        for (ClassInfo classInfo : classInfos.values().toArray(new ClassInfo[classInfos.size()])) {
-            if (isMetaRoot(classInfo)) {
+        // a meta root is an annotation type used somewhere, no need to look at the other classes
+        for (String annotation : annotated.keySet().toArray(new String[annotated.size()])) {
+            final ClassInfo classInfo = classInfos.get(annotation);
+            if (classInfo != null && isMetaRoot(classInfo)) {
                 try {
                     metaroots.add((Class<? extends Annotation>) classInfo.get());
                 } catch (ClassNotFoundException e) {
@@ -471,6 +1141,7 @@ public class AnnotationFinder implements IAnnotationFinder {
     }
 
     public boolean isAnnotationPresent(Class<? extends Annotation> annotation) {
+        scan();
         List<Info> infos = annotated.get(annotation.getName());
         return infos != null && !infos.isEmpty();
     }
@@ -482,9 +1153,11 @@ public class AnnotationFinder implements IAnnotationFinder {
      * of last invoked find* method, but were unable to be loaded and included in the results.
      * <p/>
      * The list returned is unmodifiable.  Once obtained, the returned list will be a live view of the
-     * results from the last findAnnotated* method call.
+     * results from the last findAnnotated* method call. The stream* methods don't clear it, the classes
+     * they fail to load are added as the streams are consumed.
      * <p/>
-     * This method is not thread safe.
+     * This method is not thread safe unless the finder is frozen, the classes not loaded
+     * are then tracked per thread.
      *
      * @return an unmodifiable live view of classes that could not be loaded in previous findAnnotated* call.
      */
@@ -517,6 +1190,7 @@ public class AnnotationFinder implements IAnnotationFinder {
         classesNotLoaded.clear();
         List<Class<?>> classes = new LinkedList<Class<?>>();
         List<Info> infos = getAnnotationInfos(annotation.getName());
+        preload(infos, ClassInfo.class);
         for (Info info : infos) {
             if (info instanceof ClassInfo) {
                 ClassInfo classInfo = (ClassInfo) info;
@@ -531,7 +1205,174 @@ public class AnnotationFinder implements IAnnotationFinder {
                 }
             }
         }
-        return classes;
+        return classes;
+    }
+
+    /**
+     * The scanned elements annotated with the given annotation, nothing is loaded:
+     * consumers only needing names or the annotation values don't pay for the class loading.
+     * <p/>
+     * The stream covers the infos known when it is created, an {@link #update(Iterable)} done afterwards doesn't affect it.
+     *
+     * @return the ClassInfo, MethodInfo, FieldInfo, ParameterInfo and PackageInfo annotated with the annotation
+     */
+    public Stream<Info> streamAnnotatedInfos(Class<? extends Annotation> annotation) {
+        return new ArrayList<Info>(getAnnotationInfos(annotation.getName())).stream();
+    }
+
+    /**
+     * Same classes as {@link #findAnnotatedClasses(Class)}, each one is loaded when the stream reaches it.
+     * <p/>
+     * The classes failing to load are added to {@link #getClassesNotLoaded()} as the stream is consumed,
+     * the stream methods don't clear it so streams consumed side by side all report their failures.
+     */
+    @Override
+    public Stream<Class<?>> streamAnnotatedClasses(final Class<? extends Annotation> annotation) {
+        return streamAnnotatedInfos(annotation)
+                .filter(info -> info instanceof ClassInfo)
+                .<Class<?>>map(info -> load((ClassInfo) info))
+                .filter(clazz -> clazz != null && (!checkRuntimeAnnotation || clazz.isAnnotationPresent(annotation)));
+    }
+
+    /**
+     * Same methods as {@link #findAnnotatedMethods(Class)}, their classes are loaded when the stream reaches them.
+     */
+    @Override
+    public Stream<Method> streamAnnotatedMethods(final Class<? extends Annotation> annotation) {
+        final Stream<MethodInfo> methodInfos = streamAnnotatedInfos(annotation)
+                .filter(info -> info instanceof MethodInfo && !info.getName().equals("<init>"))
+                .map(info -> (MethodInfo) info);
+        if (checkRuntimeAnnotation) {
+            return methodInfos
+                    .map(MethodInfo::getDeclaringClass)
+                    .distinct()
+                    .map(this::load)
+                    .filter(clazz -> clazz != null)
+                    .flatMap(clazz -> Arrays.stream(clazz.getDeclaredMethods()))
+                    .filter(method -> method.isAnnotationPresent(annotation));
+        }
+        return methodInfos.map(this::load).filter(member -> member != null).map(member -> (Method) member);
+    }
+
+    /**
+     * Same constructors as {@link #findAnnotatedConstructors(Class)}, their classes are loaded when the stream reaches them.
+     */
+    @Override
+    public Stream<Constructor> streamAnnotatedConstructors(final Class<? extends Annotation> annotation) {
+        final Stream<MethodInfo> methodInfos = streamAnnotatedInfos(annotation)
+                .filter(info -> info instanceof MethodInfo && info.getName().equals("<init>"))
+                .map(info -> (MethodInfo) info);
+        if (checkRuntimeAnnotation) {
+            return methodInfos
+                    .map(MethodInfo::getDeclaringClass)
+                    .distinct()
+                    .map(this::load)
+                    .filter(clazz -> clazz != null)
+                    .flatMap(clazz -> Arrays.stream((Constructor[]) clazz.getConstructors()))
+                    .filter(constructor -> constructor.isAnnotationPresent(annotation));
+        }
+        return methodInfos.map(this::load).filter(member -> member != null).map(member -> (Constructor) member);
+    }
+
+    /**
+     * Same fields as {@link #findAnnotatedFields(Class)}, their classes are loaded when the stream reaches them.
+     */
+    @Override
+    public Stream<Field> streamAnnotatedFields(final Class<? extends Annotation> annotation) {
+        final Stream<FieldInfo> fieldInfos = streamAnnotatedInfos(annotation)
+                .filter(info -> info instanceof FieldInfo)
+                .map(info -> (FieldInfo) info);
+        if (checkRuntimeAnnotation) {
+            return fieldInfos
+                    .map(FieldInfo::getDeclaringClass)
+                    .distinct()
+                    .map(this::load)
+                    .filter(clazz -> clazz != null)
+                    .flatMap(clazz -> Arrays.stream(clazz.getDeclaredFields()))
+                    .filter(field -> field.isAnnotationPresent(annotation));
+        }
+        return fieldInfos.map(this::load).filter(member -> member != null).map(member -> (Field) member);
+    }
+
+    /**
+     * The classes matched by the find methods (annotated classes and declaring classes of
+     * annotated methods and fields, meta-annotated ones included) are loaded by up to
+     * parallelism threads, the calling one included, before the results are built.
+     * Classes failing to load are reported in {@link #getClassesNotLoaded()} as usual.
+     * <p/>
+     * The archive classloader should be parallel capable (URLClassLoader is), threads
+     * otherwise wait for each other on its lock.
+     *
+     * @param executor runs the loading tasks, a rejected task is run by the calling thread
+     * @param parallelism the maximum number of classes loaded at the same time
+     * @return this finder
+     */
+    public AnnotationFinder enableParallelLoading(Executor executor, int parallelism) {
+        if (parallelism < 1) throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        this.loadingExecutor = executor;
+        this.loadingParallelism = parallelism;
+        return this;
+    }
+
+    private void preload(List<Info> infos, Class<? extends Info> kind) {
+        final Executor executor = loadingExecutor;
+        if (executor == null || loadingParallelism < 2) return;
+
+        final Set<ClassInfo> unique = new LinkedHashSet<ClassInfo>();
+        for (Info info : infos) {
+            if (!kind.isInstance(info)) continue;
+            final ClassInfo classInfo;
+            if (info instanceof MethodInfo) {
+                classInfo = ((MethodInfo) info).getDeclaringClass();
+            } else if (info instanceof FieldInfo) {
+                classInfo = ((FieldInfo) info).getDeclaringClass();
+            } else {
+                classInfo = (ClassInfo) info;
+            }
+            if (classInfo.clazz == null) {
+                unique.add(classInfo);
+            }
+        }
+        if (unique.size() < 2) return;
+
+        final ClassInfo[] classInfos = unique.toArray(new ClassInfo[unique.size()]);
+        Workers.run(executor, loadingParallelism, classInfos.length, new Workers.Work() {
+            public void run(int index) {
+                try {
+                    classInfos[index].load();
+                } catch (RuntimeException e) {
+                    // the query loads the class again and reports it
+                }
+            }
+        });
+    }
+
+    // null when the class can't be loaded, as the find methods it is then recorded in classesNotLoaded
+    private Class<?> load(ClassInfo classInfo) {
+        try {
+            return classInfo.get();
+        } catch (ClassNotFoundException | NoClassDefFoundError | ClassCircularityError e) {
+            classesNotLoaded.add(classInfo.getName());
+            return null;
+        }
+    }
+
+    private Member load(MethodInfo methodInfo) {
+        try {
+            return methodInfo.get();
+        } catch (ClassNotFoundException | NoClassDefFoundError e) {
+            classesNotLoaded.add(methodInfo.getDeclaringClass().getName());
+            return null;
+        }
+    }
+
+    private Member load(FieldInfo fieldInfo) {
+        try {
+            return fieldInfo.get();
+        } catch (ClassNotFoundException | NoClassDefFoundError e) {
+            classesNotLoaded.add(fieldInfo.getDeclaringClass().getName());
+            return null;
+        }
     }
 
     public List<Annotated<Class<?>>> findMetaAnnotatedClasses(Class<? extends Annotation> annotation) {
@@ -583,6 +1424,7 @@ public class AnnotationFinder implements IAnnotationFinder {
 
     private Set<Class<?>> findMetaAnnotatedClasses(Class<? extends Annotation> annotation, Set<Class<?>> classes) {
         List<Info> infos = getAnnotationInfos(annotation.getName());
+        preload(infos, ClassInfo.class);
         for (Info info : infos) {
             if (info instanceof ClassInfo) {
                 ClassInfo classInfo = (ClassInfo) info;
@@ -669,6 +1511,7 @@ public class AnnotationFinder implements IAnnotationFinder {
         List<ClassInfo> seen = new LinkedList<ClassInfo>();
         List<Method> methods = new LinkedList<Method>();
         List<Info> infos = getAnnotationInfos(annotation.getName());
+        preload(infos, MethodInfo.class);
         for (Info info : infos) {
             if (info instanceof MethodInfo && !info.getName().equals("<init>")) {
                 final MethodInfo methodInfo = (MethodInfo) info;
@@ -767,6 +1610,7 @@ public class AnnotationFinder implements IAnnotationFinder {
 
     private Set<Method> findMetaAnnotatedMethods(Class<? extends Annotation> annotation, Set<Method> methods, Set<String> seen) {
         List<Info> infos = getAnnotationInfos(annotation.getName());
+        preload(infos, MethodInfo.class);
 
         for (Info info : infos) {
 
@@ -826,6 +1670,7 @@ public class AnnotationFinder implements IAnnotationFinder {
 
     private Set<Field> findMetaAnnotatedFields(Class<? extends Annotation> annotation, Set<Field> fields, Set<String> seen) {
         List<Info> infos = getAnnotationInfos(annotation.getName());
+        preload(infos, FieldInfo.class);
 
         for (Info info : infos) {
 
@@ -874,6 +1719,7 @@ public class AnnotationFinder implements IAnnotationFinder {
         List<ClassInfo> seen = new LinkedList<ClassInfo>();
         List<Constructor> constructors = new LinkedList<Constructor>();
         List<Info> infos = getAnnotationInfos(annotation.getName());
+        preload(infos, MethodInfo.class);
         for (Info info : infos) {
             if (info instanceof MethodInfo && info.getName().equals("<init>")) {
                 MethodInfo methodInfo = (MethodInfo) info;
@@ -960,6 +1806,7 @@ public class AnnotationFinder implements IAnnotationFinder {
         List<ClassInfo> seen = new LinkedList<ClassInfo>();
         List<Field> fields = new LinkedList<Field>();
         List<Info> infos = getAnnotationInfos(annotation.getName());
+        preload(infos, FieldInfo.class);
         for (Info info : infos) {
             if (info instanceof FieldInfo) {
                 FieldInfo fieldInfo = (FieldInfo) info;
@@ -994,6 +1841,7 @@ public class AnnotationFinder implements IAnnotationFinder {
     }
 
     public List<Class<?>> findClassesInPackage(String packageName, boolean recursive) {
+        scan();
         classesNotLoaded.clear();
         List<Class<?>> classes = new LinkedList<Class<?>>();
         for (ClassInfo classInfo : classInfos.values()) {
@@ -1011,10 +1859,25 @@ public class AnnotationFinder implements IAnnotationFinder {
     }
 
     public <T> List<Class<? extends T>> findSubclasses(Class<T> clazz) {
+        scan();
         if (clazz == null) throw new NullPointerException("class cannot be null");
 
         classesNotLoaded.clear();
 
+        final HierarchyIndex index = hierarchy;
+        if (index != null) {
+            final ClassInfo[] subclassInfos = index.subclasses(clazz.getName());
+            final List<Class<? extends T>> found = new ArrayList<Class<? extends T>>(subclassInfos.length);
+            for (ClassInfo subclassInfo : subclassInfos) {
+                try {
+                    found.add(subclassInfo.get().asSubclass(clazz));
+                } catch (ClassNotFoundException | NoClassDefFoundError e) {
+                    classesNotLoaded.add(subclassInfo.getName());
+                }
+            }
+            return found;
+        }
+
         final ClassInfo classInfo = classInfos.get(clazz.getName());
 
         List<Class<? extends T>> found = new LinkedList<Class<? extends T>>();
@@ -1070,12 +1933,30 @@ public class AnnotationFinder implements IAnnotationFinder {
     }
 
     public <T> List<Class<? extends T>> findImplementations(Class<T> clazz) {
+        scan();
         if (clazz == null) throw new NullPointerException("class cannot be null");
         if (!clazz.isInterface()) new IllegalArgumentException("class must be an interface");
         classesNotLoaded.clear();
 
         final String interfaceName = clazz.getName();
 
+        final HierarchyIndex index = hierarchy;
+        if (index != null) {
+            final ClassInfo[] implementationInfos = index.implementations(interfaceName);
+            final List<Class<? extends T>> classes = new ArrayList<Class<? extends T>>(implementationInfos.length);
+            for (ClassInfo info : implementationInfos) {
+                try {
+                    final Class<? extends T> impl = (Class<? extends T>) info.get();
+                    if (clazz.isAssignableFrom(impl)) {
+                        classes.add(impl);
+                    }
+                } catch (final ClassNotFoundException | NoClassDefFoundError e) {
+                    classesNotLoaded.add(info.getName());
+                }
+            }
+            return classes;
+        }
+
         // Collect all interfaces extending the main interface (recursively)
         // Collect all implementations of interfaces
         // i.e. all *directly* implementing classes
@@ -1136,6 +2017,7 @@ public class AnnotationFinder implements IAnnotationFinder {
     }
 
     protected List<Info> getAnnotationInfos(String name) {
+        scan();
         final List<Info> infos = annotated.get(name);
         if (infos != null) return infos;
         return Collections.EMPTY_LIST;
@@ -1146,6 +2028,9 @@ public class AnnotationFinder implements IAnnotationFinder {
         if (infos == null) {
             infos = new SingleLinkedList<Info>();
             annotated.put(name, infos);
+            if (annotationWorklist != null && resolvedAnnotations.add(name)) {
+                annotationWorklist.add(name);
+            }
         }
         return infos;
     }
@@ -1153,18 +2038,25 @@ public class AnnotationFinder implements IAnnotationFinder {
     protected void readClassDef(final String className) {
         if (classInfos.containsKey(className)) return;
         try {
-            readClassDef(className, archive.getBytecode(className));
-
+            final InputStream in = archive.findBytecode(className);
+            if (in != null) {
+                readClassDef(className, in);
+                return;
+            }
         } catch (Exception e) {
-            if (className.endsWith("$$")) return;
+            // not loaded
+        }
+        if (!className.endsWith("$$")) {
             classesNotLoaded.add(className);
         }
     }
 
     protected void readClassDef(final String className, InputStream in) throws IOException {
+        final ScanCounters counters = this.counters;
         try {
-            ClassReader classReader = new ClassReader(in);
-            classReader.accept(new InfoBuildingVisitor(), ASM_FLAGS);
+            final CountingInputStream counted = counters == null ? null : new CountingInputStream(in);
+            ClassReader classReader = new ClassReader(counted == null ? in : counted);
+            accept(classReader, new InfoBuildingVisitor(), counted == null ? 0 : counted.count);
         } catch (final Exception e) {
             throw new RuntimeException("Unable to read class definition for " + className, e);
         } finally {
@@ -1172,6 +2064,90 @@ public class AnnotationFinder implements IAnnotationFinder {
         }
     }
 
+    private void accept(final ClassReader reader, final InfoBuildingVisitor visitor, final long bytes) {
+        final ScanCounters counters = this.counters;
+        final long start = counters == null ? 0 : System.nanoTime();
+        if (prefilter() && !mayBeAnnotated(reader)) {
+            visitor.visit(0, reader.getAccess(), reader.getClassName(), null, reader.getSuperName(), reader.getInterfaces());
+            visitor.visitEnd();
+        } else {
+            reader.accept(visitor, ASM_FLAGS);
+        }
+        if (counters != null) {
+            counters.bytes.addAndGet(bytes);
+            counters.parseNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Looks for annotation attribute names and tracked annotation descriptors
+     * in the constant pool without parsing the class.
+     */
+    private boolean mayBeAnnotated(final ClassReader reader) {
+        boolean attributes = false;
+        boolean tracked = false;
+        for (int i = 1; i < reader.getItemCount() && !(attributes && tracked); i++) {
+            final int offset = reader.getItem(i);
+            // second slot of long and double constants
+            if (offset == 0 || reader.readByte(offset - 1) != CONSTANT_UTF8) {
+                continue;
+            }
+
+            final int length = reader.readUnsignedShort(offset);
+            final int start = offset + 2;
+            if (!tracked && length > 2 && reader.readByte(start) == 'L' && reader.readByte(start + length - 1) == ';') {
+                tracked = isTracked(readUtf(reader, start, length));
+            } else if (!attributes && length >= 25 && reader.readByte(start) == 'R') {
+                final String name = readUtf(reader, start, length);
+                for (String attribute : ANNOTATION_ATTRIBUTES) {
+                    attributes |= attribute.equals(name);
+                }
+            }
+        }
+        return attributes && tracked;
+    }
+
+    // modified UTF-8 as stored in class files
+    private static String readUtf(final ClassReader reader, final int start, final int length) {
+        final char[] chars = new char[length];
+        int count = 0;
+        int offset = start;
+        final int end = start + length;
+        while (offset < end) {
+            final int c = reader.readByte(offset++);
+            if ((c & 0x80) == 0) {
+                chars[count++] = (char) (c & 0x7F);
+            } else if ((c & 0xE0) == 0xC0) {
+                chars[count++] = (char) (((c & 0x1F) << 6) + (reader.readByte(offset++) & 0x3F));
+            } else {
+                chars[count++] = (char) (((c & 0xF) << 12) + ((reader.readByte(offset++) & 0x3F) << 6) + (reader.readByte(offset++) & 0x3F));
+            }
+        }
+        return new String(chars, 0, count);
+    }
+
+    private void readClassDef(final MappedJarArchive.MappedEntry entry, final InfoBuildingVisitor visitor) throws IOException {
+        final byte[] bytecode = entry.getBytes();
+        try {
+            accept(new ClassReader(bytecode), visitor, bytecode.length);
+        } catch (final Exception e) {
+            throw new RuntimeException("Unable to read class definition for " + entry.getName(), e);
+        }
+    }
+
+    private void readClassDef(final IndexedArchive.IndexedEntry entry, final InfoBuildingVisitor visitor) {
+        final ScanCounters counters = this.counters;
+        final long start = counters == null ? 0 : System.nanoTime();
+        try {
+            entry.accept(visitor);
+        } catch (final RuntimeException e) {
+            throw new RuntimeException("Unable to read class definition for " + entry.getName(), e);
+        }
+        if (counters != null) {
+            counters.parseNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
     protected void readClassDef(Class clazz) {
         List<Info> infos = new LinkedList<Info>();
 
@@ -1231,6 +2207,7 @@ public class AnnotationFinder implements IAnnotationFinder {
 
         if (linking) {
             classInfos.put(classInfo.name, classInfo);
+            modifications++;
         }
     }
 
@@ -1271,6 +2248,11 @@ public class AnnotationFinder implements IAnnotationFinder {
             return archive.getBytecode(className);
         }
 
+        @Override
+        public InputStream findBytecode(String className) throws IOException {
+            return archive.findBytecode(className);
+        }
+
         public Class<?> loadClass(String className) throws ClassNotFoundException {
             return archive.loadClass(className);
         }
@@ -1297,11 +2279,12 @@ public class AnnotationFinder implements IAnnotationFinder {
     }
 
     public class Annotatable {
-        private final List<AnnotationInfo> annotations = new LinkedList<AnnotationInfo>();
+        // most elements have no or a single annotation
+        private final List<AnnotationInfo> annotations = new ArrayList<AnnotationInfo>(0);
 
         public Annotatable(AnnotatedElement element) {
             for (Annotation annotation : getAnnotations(element)) {
-                annotations.add(new AnnotationInfo(Type.getType(annotation.annotationType()).getDescriptor()));
+                annotations.add(new AnnotationInfo(annotation));
             }
         }
 
@@ -1372,7 +2355,7 @@ public class AnnotationFinder implements IAnnotationFinder {
 
         public PackageInfo(String name) {
             info = new ClassInfo(name, null);
-            this.name = name;
+            this.name = info.getName();
             this.pkg = null;
         }
 
@@ -1411,7 +2394,7 @@ public class AnnotationFinder implements IAnnotationFinder {
         private final List<ClassInfo> subclassInfos = new SingleLinkedList<ClassInfo>();
         private final List<String> interfaces = new SingleLinkedList<String>();
         private final List<FieldInfo> fields = new SingleLinkedList<FieldInfo>();
-        private Class<?> clazz;
+        private volatile Class<?> clazz;
 
 
         public ClassInfo(Class clazz) {
@@ -1426,8 +2409,8 @@ public class AnnotationFinder implements IAnnotationFinder {
         }
 
         public ClassInfo(final String name, final String superType) {
-            this.name = name;
-            this.superType = superType;
+            this.name = shared(name);
+            this.superType = shared(superType);
         }
 
         @Override
@@ -1480,11 +2463,21 @@ public class AnnotationFinder implements IAnnotationFinder {
             return "java.lang.Object".equals(superType) && interfaces.size() == 1 && "java.lang.annotation.Annotation".equals(interfaces.get(0));
         }
 
+        // loads the class without reporting a failure, get() will
+        private void load() {
+            if (clazz != null) return;
+            try {
+                clazz = loadClass(name.replaceFirst("<.*>", ""));
+            } catch (ClassNotFoundException | LinkageError e) {
+                // reported by get()
+            }
+        }
+
         public Class<?> get() throws ClassNotFoundException {
             if (clazz != null) return clazz;
             try {
                 String fixedName = name.replaceFirst("<.*>", "");
-                this.clazz = archive.loadClass(fixedName);
+                this.clazz = loadClass(fixedName);
                 return clazz;
             } catch (ClassNotFoundException notFound) {
                 classesNotLoaded.add(name);
@@ -1501,9 +2494,9 @@ public class AnnotationFinder implements IAnnotationFinder {
         private final ClassInfo declaringClass;
         private final String descriptor;
         private final String name;
-        private final List<List<AnnotationInfo>> parameterAnnotations = new LinkedList<List<AnnotationInfo>>();
+        private final List<List<AnnotationInfo>> parameterAnnotations = new ArrayList<List<AnnotationInfo>>(0);
         private final List<ParameterInfo> parameters = new SingleLinkedList<ParameterInfo>();
-        private Member method;
+        private volatile Member method;
 
         public MethodInfo(ClassInfo info, Constructor constructor) {
             super(constructor);
@@ -1522,8 +2515,8 @@ public class AnnotationFinder implements IAnnotationFinder {
 
         public MethodInfo(ClassInfo declarignClass, String name, String descriptor) {
             this.declaringClass = declarignClass;
-            this.name = name;
-            this.descriptor = descriptor;
+            this.name = shared(name);
+            this.descriptor = shared(descriptor);
         }
 
         public String getDescriptor() {
@@ -1556,7 +2549,7 @@ public class AnnotationFinder implements IAnnotationFinder {
         public List<AnnotationInfo> getParameterAnnotations(int index) {
             if (index >= parameterAnnotations.size()) {
                 for (int i = parameterAnnotations.size(); i <= index; i++) {
-                    List<AnnotationInfo> annotationInfos = new LinkedList<AnnotationInfo>();
+                    List<AnnotationInfo> annotationInfos = new ArrayList<AnnotationInfo>(0);
                     parameterAnnotations.add(i, annotationInfos);
                 }
             }
@@ -1628,7 +2621,6 @@ public class AnnotationFinder implements IAnnotationFinder {
     public class ParameterInfo extends Annotatable implements Info {
         private final MethodInfo declaringMethod;
         private final int index;
-        private final List<AnnotationInfo> annotations = new LinkedList<AnnotationInfo>();
         private Parameter<?> parameter;
 
         public ParameterInfo(MethodInfo parent, int index) {
@@ -1683,7 +2675,7 @@ public class AnnotationFinder implements IAnnotationFinder {
         private final String name;
         private final String type;
         private final ClassInfo declaringClass;
-        private Field field;
+        private volatile Field field;
 
         public FieldInfo(ClassInfo info, Field field) {
             super(field);
@@ -1695,8 +2687,8 @@ public class AnnotationFinder implements IAnnotationFinder {
 
         public FieldInfo(ClassInfo declaringClass, String name, String type) {
             this.declaringClass = declaringClass;
-            this.name = name;
-            this.type = type;
+            this.name = shared(name);
+            this.type = shared(type);
         }
 
         public String getName() {
@@ -1757,13 +2749,28 @@ public class AnnotationFinder implements IAnnotationFinder {
 
     public class AnnotationInfo extends Annotatable implements Info {
         private final String name;
+        // element names followed by their values, null if none
+        private Object[] values;
 
         public AnnotationInfo(Annotation annotation) {
             this(Type.getType(annotation.annotationType()).getDescriptor());
+            for (Method element : annotation.annotationType().getDeclaredMethods()) {
+                if (element.getParameterTypes().length != 0) continue;
+                try {
+                    element.setAccessible(true);
+                    final Object value = element.invoke(annotation);
+                    // as in the bytecode only the elements which are set
+                    if (!Objects.deepEquals(value, element.getDefaultValue())) {
+                        addValue(element.getName(), toValue(value));
+                    }
+                } catch (final Exception e) {
+                    // not readable, the element is not recorded
+                }
+            }
         }
 
         public AnnotationInfo(Class<? extends Annotation> annotation) {
-            this.name = annotation.getName().intern();
+            this.name = shared(annotation.getName());
         }
 
         public AnnotationInfo(String name) {
@@ -1772,30 +2779,408 @@ public class AnnotationFinder implements IAnnotationFinder {
             if (name == null) {
                 name = type.getDescriptor(); // name was already a class name
             }
-            this.name = name;
+            this.name = shared(name);
         }
 
         public String getName() {
             return name;
         }
 
+        /**
+         * The values of the elements set on the annotation, elements using their
+         * default value are not part of the bytecode so they are not listed.
+         * <p/>
+         * Values are read without loading any class: primitives and strings are
+         * boxed, classes are {@link Type}s, enum constants {@link EnumValue}s,
+         * nested annotations AnnotationInfos and arrays unmodifiable lists.
+         *
+         * @return the element values by element name
+         */
+        public Map<String, Object> getValues() {
+            if (values == null) return Collections.emptyMap();
+
+            final Map<String, Object> map = new LinkedHashMap<String, Object>();
+            for (int i = 0; i < values.length; i += 2) {
+                map.put((String) values[i], values[i + 1]);
+            }
+            return Collections.unmodifiableMap(map);
+        }
+
+        /**
+         * @param element the element name, "value" for single element annotations
+         * @return the value of the element or null if it is not set, see {@link #getValues()}
+         */
+        public Object getValue(String element) {
+            if (values == null) return null;
+
+            for (int i = 0; i < values.length; i += 2) {
+                if (values[i].equals(element)) return values[i + 1];
+            }
+            return null;
+        }
+
+        private void addValue(String element, Object value) {
+            if (values == null) {
+                values = new Object[]{shared(element), value};
+            } else {
+                values = Arrays.copyOf(values, values.length + 2);
+                values[values.length - 2] = shared(element);
+                values[values.length - 1] = value;
+            }
+        }
+
+        private Object toValue(Object value) {
+            if (value instanceof Class) {
+                return Type.getType((Class<?>) value);
+            }
+            if (value instanceof Enum) {
+                final Enum<?> constant = (Enum<?>) value;
+                return new EnumValue(shared(constant.getDeclaringClass().getName()), shared(constant.name()));
+            }
+            if (value instanceof Annotation) {
+                return new AnnotationInfo((Annotation) value);
+            }
+            if (value.getClass().isArray()) {
+                final List<Object> list = new ArrayList<Object>(Array.getLength(value));
+                for (int i = 0; i < Array.getLength(value); i++) {
+                    list.add(toValue(Array.get(value, i)));
+                }
+                return Collections.unmodifiableList(list);
+            }
+            return value;
+        }
+
         public String toString() {
             return name;
         }
     }
 
+    /**
+     * An enum constant used as annotation value, described by names so the enum is not loaded.
+     */
+    public static final class EnumValue {
+        private final String type;
+        private final String name;
+
+        public EnumValue(String type, String name) {
+            this.type = type;
+            this.name = name;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean is(Enum<?> constant) {
+            return constant.name().equals(name) && constant.getDeclaringClass().getName().equals(type);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            final EnumValue that = (EnumValue) o;
+            return type.equals(that.type) && name.equals(that.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * type.hashCode() + name.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return type + "." + name;
+        }
+    }
+
+    /**
+     * Records the element values of a scanned annotation, or the items of an array value.
+     */
+    private final class AnnotationValuesVisitor extends AnnotationVisitor {
+        private final AnnotationInfo annotation;
+        private final List<Object> items;
+
+        private AnnotationValuesVisitor(AnnotationInfo annotation) {
+            this(annotation, null);
+        }
+
+        private AnnotationValuesVisitor(AnnotationInfo annotation, List<Object> items) {
+            super(AsmConstants.ASM_VERSION);
+            this.annotation = annotation;
+            this.items = items;
+        }
+
+        @Override
+        public void visit(String name, Object value) {
+            if (value.getClass().isArray()) {
+                // primitive arrays are reported at once
+                final List<Object> list = new ArrayList<Object>(Array.getLength(value));
+                for (int i = 0; i < Array.getLength(value); i++) {
+                    list.add(Array.get(value, i));
+                }
+                add(name, Collections.unmodifiableList(list));
+            } else {
+                add(name, value);
+            }
+        }
+
+        @Override
+        public void visitEnum(String name, String desc, String value) {
+            add(name, new EnumValue(shared(Type.getType(desc).getClassName()), shared(value)));
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String name, String desc) {
+            final AnnotationInfo nested = new AnnotationInfo(desc);
+            add(name, nested);
+            return new AnnotationValuesVisitor(nested);
+        }
+
+        @Override
+        public AnnotationVisitor visitArray(String name) {
+            final List<Object> list = new ArrayList<Object>();
+            add(name, Collections.unmodifiableList(list));
+            return new AnnotationValuesVisitor(null, list);
+        }
+
+        private void add(String name, Object value) {
+            if (items != null) {
+                items.add(value);
+            } else {
+                annotation.addValue(name, value);
+            }
+        }
+    }
+
     private void index(AnnotationInfo annotationInfo, Info info) {
         initAnnotationInfos(annotationInfo.getName()).add(info);
     }
 
+    /**
+     * Names and descriptors are repeated across classes (super types, annotation names,
+     * common method signatures...), the scanned model shares a single instance of each.
+     * Classes read lazily once the archive was scanned keep their own copies.
+     */
+    private String shared(String value) {
+        final ConcurrentMap<String, String> names = this.names;
+        if (value == null || names == null) return value;
+        final String existing = names.putIfAbsent(value, value);
+        return existing == null ? value : existing;
+    }
+
+    // what reading an archive cost, updated by the scanning threads
+    private static final class ScanCounters {
+        private final AtomicInteger entries = new AtomicInteger();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong parseNanos = new AtomicLong();
+    }
+
+    // size of the bytecode read through a stream, only used when somebody listens
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        private CountingInputStream(final InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int read = super.read();
+            if (read >= 0) {
+                count++;
+            }
+            return read;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    /**
+     * A class definition read without touching the finder state,
+     * used by the parallel scanning to merge the results in archive order.
+     */
+    private final class ClassDef {
+        private final List<AnnotationInfo> annotations = new ArrayList<AnnotationInfo>();
+        private final List<Info> annotatedInfos = new ArrayList<Info>();
+        private Info info;
+        private boolean naked;
+
+        private void index(AnnotationInfo annotationInfo, Info info) {
+            annotations.add(annotationInfo);
+            annotatedInfos.add(info);
+        }
+
+        private void merge() {
+            if (info instanceof ClassInfo) {
+                classInfos.put(info.getName(), (ClassInfo) info);
+                modifications++;
+            }
+            for (int i = 0; i < annotations.size(); i++) {
+                AnnotationFinder.this.index(annotations.get(i), annotatedInfos.get(i));
+            }
+            if (naked) {
+                classInfos.remove(info.getName());
+                modifications++;
+            }
+        }
+    }
+
+    /**
+     * Transitive subclasses and implementations of the linked classes, in the order
+     * the walk of findSubclasses and findImplementations would find them.
+     */
+    private final class HierarchyIndex {
+        private final ClassInfo[] none = new ClassInfo[0];
+        private final Map<String, ClassInfo[]> subclasses = new HashMap<String, ClassInfo[]>();
+        private final Map<String, ClassInfo[]> implementations = new HashMap<String, ClassInfo[]>();
+
+        private HierarchyIndex() {
+            final Map<String, List<ClassInfo>> implementors = new HashMap<String, List<ClassInfo>>();
+            for (ClassInfo classInfo : classInfos.values().toArray(new ClassInfo[classInfos.size()])) {
+                subclasses(classInfo);
+                for (String interfaceName : classInfo.interfaces) {
+                    List<ClassInfo> infos = implementors.get(interfaceName);
+                    if (infos == null) {
+                        infos = new ArrayList<ClassInfo>();
+                        implementors.put(interfaceName, infos);
+                    }
+                    infos.add(classInfo);
+                }
+            }
+
+            for (String interfaceName : implementors.keySet()) {
+                final Set<ClassInfo> found = new LinkedHashSet<ClassInfo>();
+                for (ClassInfo info : implementations(interfaceName, implementors, new HashSet<String>())) {
+                    found.add(info);
+                    found.addAll(Arrays.asList(subclasses(info.getName())));
+                }
+                implementations.put(interfaceName, found.toArray(new ClassInfo[found.size()]));
+            }
+        }
+
+        private ClassInfo[] subclasses(String name) {
+            final ClassInfo[] infos = subclasses.get(name);
+            return infos == null ? none : infos;
+        }
+
+        private ClassInfo[] implementations(String name) {
+            final ClassInfo[] infos = implementations.get(name);
+            return infos == null ? none : infos;
+        }
+
+        private ClassInfo[] subclasses(ClassInfo classInfo) {
+            ClassInfo[] infos = subclasses.get(classInfo.getName());
+            if (infos != null) return infos;
+            if (classInfo.subclassInfos.isEmpty()) return none;
+
+            final List<ClassInfo> found = new ArrayList<ClassInfo>();
+            for (ClassInfo subclassInfo : classInfo.subclassInfos) {
+                found.add(subclassInfo);
+                found.addAll(Arrays.asList(subclasses(subclassInfo)));
+            }
+            infos = found.toArray(new ClassInfo[found.size()]);
+            subclasses.put(classInfo.getName(), infos);
+            return infos;
+        }
+
+        // direct implementations and the ones of the extending interfaces
+        private Set<ClassInfo> implementations(String interfaceName, Map<String, List<ClassInfo>> implementors, Set<String> visited) {
+            final Set<ClassInfo> found = new LinkedHashSet<ClassInfo>();
+            final List<ClassInfo> infos = implementors.get(interfaceName);
+            if (infos == null || !visited.add(interfaceName)) return found;
+
+            for (ClassInfo info : infos) {
+                found.add(info);
+                if (!info.isAnnotation()) {
+                    found.addAll(implementations(info.getName(), implementors, visited));
+                }
+            }
+            return found;
+        }
+    }
+
+    /**
+     * List of the calling thread, used by frozen finders for the classes not loaded.
+     */
+    private static final class PerThreadList<E> extends AbstractList<E> {
+        private final ThreadLocal<List<E>> lists = new ThreadLocal<List<E>>() {
+            @Override
+            protected List<E> initialValue() {
+                return new LinkedList<E>();
+            }
+        };
+
+        @Override
+        public E get(int index) {
+            return lists.get().get(index);
+        }
+
+        @Override
+        public int size() {
+            return lists.get().size();
+        }
+
+        @Override
+        public E set(int index, E element) {
+            return lists.get().set(index, element);
+        }
+
+        @Override
+        public void add(int index, E element) {
+            lists.get().add(index, element);
+        }
+
+        @Override
+        public E remove(int index) {
+            return lists.get().remove(index);
+        }
+
+        @Override
+        public void clear() {
+            lists.get().clear();
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+            return lists.get().iterator();
+        }
+    }
+
     public class InfoBuildingVisitor extends EmptyVisitor {
+        private final ClassDef def;
         private Info info;
 
         public InfoBuildingVisitor() {
+            this.def = null;
         }
 
         public InfoBuildingVisitor(Info info) {
+            this(info, null);
+        }
+
+        private InfoBuildingVisitor(Info info, ClassDef def) {
             this.info = info;
+            this.def = def;
         }
 
         public Info getInfo() {
@@ -1812,14 +3197,20 @@ public class AnnotationFinder implements IAnnotationFinder {
 
 //                if (signature == null) {
                 for (final String interfce : interfaces) {
-                    classInfo.interfaces.add(javaName(interfce));
+                    classInfo.interfaces.add(shared(javaName(interfce)));
                 }
 //                } else {
 //                    // the class uses generics
 //                    new SignatureReader(signature).accept(new GenericAwareInfoBuildingVisitor(GenericAwareInfoBuildingVisitor.TYPE.CLASS, classInfo));
 //                }
                 info = classInfo;
-                classInfos.put(classInfo.getName(), classInfo);
+                if (def == null) {
+                    classInfos.put(classInfo.getName(), classInfo);
+                    modifications++;
+                }
+            }
+            if (def != null) {
+                def.info = info;
             }
         }
 
@@ -1828,13 +3219,30 @@ public class AnnotationFinder implements IAnnotationFinder {
             super.visitEnd();
             if (cleanOnNaked()) {
                 if (ClassInfo.class.isInstance(info) && isNaked(ClassInfo.class.cast(info))) {
-                    classInfos.remove(info.getName());
+                    removeNaked();
                 } else if (PackageInfo.class.isInstance(info) && isNaked(PackageInfo.class.cast(info))) {
-                    classInfos.remove(info.getName());
+                    removeNaked();
                 }
             }
         }
 
+        private void removeNaked() {
+            if (def == null) {
+                classInfos.remove(info.getName());
+                modifications++;
+            } else {
+                def.naked = true;
+            }
+        }
+
+        private void index(AnnotationInfo annotationInfo, Info info) {
+            if (def == null) {
+                AnnotationFinder.this.index(annotationInfo, info);
+            } else {
+                def.index(annotationInfo, info);
+            }
+        }
+
         private boolean isNaked(final PackageInfo info) {
             return info.getAnnotations().isEmpty();
         }
@@ -1876,7 +3284,7 @@ public class AnnotationFinder implements IAnnotationFinder {
                 AnnotationInfo annotationInfo = new AnnotationInfo(desc);
                 info.getAnnotations().add(annotationInfo);
                 index(annotationInfo, info);
-                return new InfoBuildingVisitor(annotationInfo).annotationVisitor();
+                return new AnnotationValuesVisitor(annotationInfo);
             }
             return super.visitAnnotation(desc, visible);
         }
@@ -1886,7 +3294,7 @@ public class AnnotationFinder implements IAnnotationFinder {
             ClassInfo classInfo = ((ClassInfo) info);
             FieldInfo fieldInfo = new FieldInfo(classInfo, name, desc);
             classInfo.getFields().add(fieldInfo);
-            return new InfoBuildingVisitor(fieldInfo).fieldVisitor();
+            return new InfoBuildingVisitor(fieldInfo, def).fieldVisitor();
         }
 
         @Override
@@ -1895,7 +3303,7 @@ public class AnnotationFinder implements IAnnotationFinder {
             MethodInfo methodInfo = new MethodInfo(classInfo, name, desc);
 
             classInfo.getMethods().add(methodInfo);
-            return new InfoBuildingVisitor(methodInfo).methodVisitor();
+            return new InfoBuildingVisitor(methodInfo, def).methodVisitor();
         }
 
 
@@ -1910,7 +3318,7 @@ public class AnnotationFinder implements IAnnotationFinder {
                 ParameterInfo parameterInfo = new ParameterInfo(methodInfo, param);
                 methodInfo.getParameters().add(parameterInfo);
                 index(annotationInfo, parameterInfo);
-                return new InfoBuildingVisitor(annotationInfo).annotationVisitor();
+                return new AnnotationValuesVisitor(annotationInfo);
             }
             return super.visitMethodParameterAnnotation(param, desc, visible);
         }
@@ -21,6 +21,7 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * Temporary interface to bridge the gap between the two finder impls
@@ -56,4 +57,33 @@ public interface IAnnotationFinder {
     List<Annotated<Class<?>>> findMetaAnnotatedClasses(Class<? extends Annotation> annotation);
 
     List<String> getAnnotatedClassNames();
+
+    /**
+     * Lazy variant of {@link #findAnnotatedClasses(Class)}, the default implementation
+     * streams the list, implementations can load the classes as they are consumed.
+     */
+    default Stream<Class<?>> streamAnnotatedClasses(Class<? extends Annotation> annotation) {
+        return findAnnotatedClasses(annotation).stream();
+    }
+
+    /**
+     * Lazy variant of {@link #findAnnotatedMethods(Class)}.
+     */
+    default Stream<Method> streamAnnotatedMethods(Class<? extends Annotation> annotation) {
+        return findAnnotatedMethods(annotation).stream();
+    }
+
+    /**
+     * Lazy variant of {@link #findAnnotatedConstructors(Class)}.
+     */
+    default Stream<Constructor> streamAnnotatedConstructors(Class<? extends Annotation> annotation) {
+        return findAnnotatedConstructors(annotation).stream();
+    }
+
+    /**
+     * Lazy variant of {@link #findAnnotatedFields(Class)}.
+     */
+    default Stream<Field> streamAnnotatedFields(Class<? extends Annotation> annotation) {
+        return findAnnotatedFields(annotation).stream();
+    }
 }
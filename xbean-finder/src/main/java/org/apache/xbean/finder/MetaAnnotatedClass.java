@@ -32,7 +32,7 @@ import java.security.ProtectionDomain;
 public class MetaAnnotatedClass<T> extends MetaAnnotatedElement<Class<T>> {
 
     public MetaAnnotatedClass(Class<T> clazz) {
-        super(clazz, unroll(clazz));
+        super(clazz, unrolled(clazz));
     }
 
     public MetaAnnotatedClass<?> forName(String className) throws ClassNotFoundException {
@@ -27,8 +27,8 @@ public class MetaAnnotatedConstructor<T> extends MetaAnnotatedElement<Constructo
     private Annotation[][] parameterAnnotations;
 
     public MetaAnnotatedConstructor(Constructor<T> target) {
-        super(target, unroll(target));
-        this.parameterAnnotations = unrollParameters(target.getParameterAnnotations());
+        super(target, unrolled(target));
+        this.parameterAnnotations = unrolledParameters(target);
     }
 
     public Annotation[][] getParameterAnnotations() {
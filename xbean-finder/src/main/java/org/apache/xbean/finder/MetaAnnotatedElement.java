@@ -23,6 +23,8 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.Target;
 import java.lang.reflect.AnnotatedElement;
 import java.lang.reflect.Constructor;
+import java.lang.reflect.Executable;
+import java.lang.reflect.Member;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -30,6 +32,8 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static java.util.Arrays.asList;
 
@@ -37,11 +41,34 @@ import static java.util.Arrays.asList;
 * @version $Rev$ $Date$
 */
 public class MetaAnnotatedElement<T extends AnnotatedElement> implements  AnnotatedElement, MetaAnnotated<T> {
+    // unrolled annotations of classes and their members, dropped with the class when it is unloaded
+    private static final ClassValue<Unrolled> UNROLLED = new ClassValue<Unrolled>() {
+        @Override
+        protected Unrolled computeValue(Class<?> type) {
+            return new Unrolled();
+        }
+    };
+    // whether the parameters of the subclass are unrolled by the default unrollParameters, and can be shared
+    private static final ClassValue<Boolean> SHARED_PARAMETERS = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            for (Class<?> current = type; current != MetaAnnotatedElement.class; current = current.getSuperclass()) {
+                try {
+                    current.getDeclaredMethod("unrollParameters", Annotation[][].class);
+                    return false;
+                } catch (NoSuchMethodException e) {
+                    // keep looking
+                }
+            }
+            return true;
+        }
+    };
+
     protected final Map<Class<? extends Annotation>, MetaAnnotation<?>> annotations = new HashMap<Class<? extends Annotation>, MetaAnnotation<?>>();
     protected final T target;
 
     public MetaAnnotatedElement(T element) {
-        this(element, unroll(element));
+        this(element, unrolled(element));
     }
 
     MetaAnnotatedElement(T target, Map<Class<? extends Annotation>, MetaAnnotation<?>> annotations) {
@@ -126,7 +153,7 @@ public class MetaAnnotatedElement<T extends AnnotatedElement> implements  Annota
                     // CONFLICT
 
                     // They are the same depth and therefore conflicting
-                    existing.getConflicts().add(new MetaAnnotation(annotation, depth));
+                    existing.conflicts.add(new MetaAnnotation(annotation, depth));
 
                 }
 
@@ -271,6 +298,58 @@ public class MetaAnnotatedElement<T extends AnnotatedElement> implements  Annota
         return map;
     }
 
+    /**
+     * Same as {@link #unroll(AnnotatedElement)} for classes, methods, constructors and fields
+     * but the meta annotation graph of an element is only walked once, the map is shared
+     * and must not be modified.
+     */
+    static Map<Class<? extends Annotation>, MetaAnnotation<?>> unrolled(AnnotatedElement element) {
+        if (element instanceof Class) {
+            final Unrolled unrolled = UNROLLED.get((Class<?>) element);
+            Map<Class<? extends Annotation>, MetaAnnotation<?>> annotations = unrolled.annotations;
+            if (annotations == null) {
+                unrolled.annotations = annotations = unroll(element);
+            }
+            return annotations;
+        }
+        if (element instanceof Member) {
+            final ConcurrentMap<AnnotatedElement, Map<Class<? extends Annotation>, MetaAnnotation<?>>> members = UNROLLED.get(((Member) element).getDeclaringClass()).members;
+            Map<Class<? extends Annotation>, MetaAnnotation<?>> annotations = members.get(element);
+            if (annotations == null) {
+                annotations = unroll(element);
+                final Map<Class<? extends Annotation>, MetaAnnotation<?>> existing = members.putIfAbsent(element, annotations);
+                if (existing != null) annotations = existing;
+            }
+            return annotations;
+        }
+        return unroll(element);
+    }
+
+    /**
+     * @return the unrolled parameter annotations of the method or constructor, computed once per executable
+     * unless a subclass unrolls them its own way
+     */
+    Annotation[][] unrolledParameters(Executable executable) {
+        if (!SHARED_PARAMETERS.get(getClass())) {
+            return unrollParameters(executable.getParameterAnnotations());
+        }
+
+        final ConcurrentMap<Executable, Annotation[][]> parameters = UNROLLED.get(executable.getDeclaringClass()).parameters;
+        Annotation[][] unrolled = parameters.get(executable);
+        if (unrolled == null) {
+            unrolled = unrollParameters(executable.getParameterAnnotations());
+            final Annotation[][] existing = parameters.putIfAbsent(executable, unrolled);
+            if (existing != null) unrolled = existing;
+        }
+
+        // callers get their own arrays, as when they were computed for each instance
+        final Annotation[][] copy = new Annotation[unrolled.length][];
+        for (int i = 0; i < unrolled.length; i++) {
+            copy[i] = unrolled[i].clone();
+        }
+        return copy;
+    }
+
     protected Annotation[][] unrollParameters(Annotation[][] parameterAnnotations) {
         final Annotation[][] unrolledParameters = new Annotation[parameterAnnotations.length][];
 
@@ -289,4 +368,10 @@ public class MetaAnnotatedElement<T extends AnnotatedElement> implements  Annota
         }
         return unrolledParameters;
     }
+
+    private static final class Unrolled {
+        private volatile Map<Class<? extends Annotation>, MetaAnnotation<?>> annotations;
+        private final ConcurrentMap<AnnotatedElement, Map<Class<? extends Annotation>, MetaAnnotation<?>>> members = new ConcurrentHashMap<AnnotatedElement, Map<Class<? extends Annotation>, MetaAnnotation<?>>>();
+        private final ConcurrentMap<Executable, Annotation[][]> parameters = new ConcurrentHashMap<Executable, Annotation[][]>();
+    }
 }
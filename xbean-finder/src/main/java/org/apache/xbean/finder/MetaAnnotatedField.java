@@ -25,7 +25,7 @@ import java.lang.reflect.Field;
 public class MetaAnnotatedField extends MetaAnnotatedElement<Field> implements AnnotatedMember<Field> {
 
     public MetaAnnotatedField(Field field) {
-        super(field, unroll(field));
+        super(field, unrolled(field));
     }
 
     public Class<?> getDeclaringClass() {
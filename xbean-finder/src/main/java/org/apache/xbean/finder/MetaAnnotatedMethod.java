@@ -27,9 +27,9 @@ public class MetaAnnotatedMethod extends MetaAnnotatedElement<Method> implements
     private final Annotation[][] parameterAnnotations;
 
     public MetaAnnotatedMethod(Method method) {
-        super(method, unroll(method));
+        super(method, unrolled(method));
 
-        this.parameterAnnotations = unrollParameters(method.getParameterAnnotations());
+        this.parameterAnnotations = unrolledParameters(method);
     }
 
     public Annotation[][] getParameterAnnotations() {
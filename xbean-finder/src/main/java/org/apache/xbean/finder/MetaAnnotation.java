@@ -18,6 +18,7 @@ package org.apache.xbean.finder;
 
 import java.lang.annotation.Annotation;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -27,7 +28,8 @@ public class MetaAnnotation<T extends Annotation> {
     private final T annotation;
     private final int depth;
 
-    private final List<MetaAnnotation<T>> conflicts = new ArrayList<MetaAnnotation<T>>();
+    // the unrolled annotations are shared between the elements, only the unrolling adds to it
+    final List<MetaAnnotation<T>> conflicts = new ArrayList<MetaAnnotation<T>>();
 
     MetaAnnotation(T annotation, int depth) {
         this.annotation = annotation;
@@ -43,6 +45,6 @@ public class MetaAnnotation<T extends Annotation> {
     }
 
     public List<MetaAnnotation<T>> getConflicts() {
-        return conflicts;
+        return Collections.unmodifiableList(conflicts);
     }
 }
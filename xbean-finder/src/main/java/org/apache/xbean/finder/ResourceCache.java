@@ -0,0 +1,237 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.apache.xbean.finder.util.CacheFiles;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cache of the lookups done by a {@link ResourceFinder}.
+ * <p/>
+ * The resources found for a name are memoized per set of urls, or per classloader,
+ * and per name. The content of the resources is kept in memory and, when a directory
+ * is given, stored on disk for the next runs. Content is only cached for resources of
+ * a local jar or directory and is read again as soon as the size or the last modification
+ * date of the jar or file changed.
+ * <p/>
+ * Found resources are not checked again, {@link #clear()} the cache when the classpath changed.
+ * <p/>
+ * Usage:
+ * <pre>
+ * final ResourceCache cache = new ResourceCache(new File("work/resources"));
+ * final ResourceFinder finder = new ResourceFinder("META-INF/services/", loader).enableCache(cache);
+ * </pre>
+ *
+ * @version $Rev$ $Date$
+ */
+public class ResourceCache {
+
+    private final File directory;
+
+    // urls of a ResourceFinder -> name -> found resources
+    private final ConcurrentMap<String, Scope> urlScopes = new ConcurrentHashMap<String, Scope>();
+    private final Map<ClassLoader, Scope> loaderScopes = new WeakHashMap<ClassLoader, Scope>();
+
+    // resource url -> content
+    private final Map<String, Content> contents = new ConcurrentHashMap<String, Content>();
+
+    /**
+     * Keeps everything in memory.
+     */
+    public ResourceCache() {
+        this(null);
+    }
+
+    /**
+     * @param directory where the content of the resources is stored, null to keep it in memory only
+     */
+    public ResourceCache(File directory) {
+        this.directory = directory;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public void clear() {
+        urlScopes.clear();
+        synchronized (loaderScopes) {
+            loaderScopes.clear();
+        }
+        contents.clear();
+    }
+
+    /**
+     * @param scope the urls or the classloader the name was looked up in
+     * @param name the full name of the resources
+     * @return the resources found the last time or null
+     */
+    public List<URL> getResources(Object scope, String name) {
+        return scope(scope).resources.get(name);
+    }
+
+    public void putResources(Object scope, String name, List<URL> resources) {
+        scope(scope).resources.put(name, resources);
+    }
+
+    /**
+     * @param scope the urls or the classloader the directory was listed in
+     * @param directory the full name of the directory
+     * @return the files found in the directory the last time or null
+     */
+    public Map<String, URL> getResourcesMap(Object scope, String directory) {
+        return scope(scope).directories.get(directory);
+    }
+
+    public void putResourcesMap(Object scope, String directory, Map<String, URL> resources) {
+        scope(scope).directories.put(directory, resources);
+    }
+
+    private Scope scope(Object owner) {
+        if (owner instanceof ClassLoader) {
+            synchronized (loaderScopes) {
+                Scope cached = loaderScopes.get(owner);
+                if (cached == null) {
+                    cached = new Scope();
+                    loaderScopes.put((ClassLoader) owner, cached);
+                }
+                return cached;
+            }
+        }
+
+        final String key = String.valueOf(owner);
+        Scope cached = urlScopes.get(key);
+        if (cached == null) {
+            cached = new Scope();
+            final Scope existing = urlScopes.putIfAbsent(key, cached);
+            if (existing != null) {
+                cached = existing;
+            }
+        }
+        return cached;
+    }
+
+    /**
+     * @param resource the url to read
+     * @return the content of the resource, from the cache when its jar or file did not change
+     * @throws IOException if the resource cannot be read
+     */
+    public byte[] read(URL resource) throws IOException {
+        final File source = source(resource);
+        if (source == null) {
+            return ResourceFinder.readBytes(resource);
+        }
+
+        final String url = resource.toExternalForm();
+        final String stamp = source.length() + "/" + source.lastModified();
+
+        Content content = contents.get(url);
+        if (content != null && content.stamp.equals(stamp)) {
+            return content.bytes;
+        }
+
+        final File file = directory == null ? null : new File(directory, CacheFiles.digest(url) + ".resource");
+        byte[] bytes = load(file, url, stamp);
+        if (bytes == null) {
+            bytes = ResourceFinder.readBytes(resource);
+            store(file, url, stamp, bytes);
+        }
+        contents.put(url, new Content(stamp, bytes));
+        return bytes;
+    }
+
+    // the local jar or file holding the resource, null if it cannot be checked for changes
+    private static File source(URL resource) {
+        String url = resource.toExternalForm();
+        if (url.startsWith("jar:")) {
+            final int separator = url.indexOf("!/");
+            if (separator < 0) {
+                return null;
+            }
+            url = url.substring("jar:".length(), separator);
+        }
+        if (!url.startsWith("file:")) {
+            return null;
+        }
+
+        final File file = new File(ResourceFinder.decode(url.substring("file:".length())));
+        return file.isFile() ? file : null;
+    }
+
+    private static byte[] load(File file, String url, String stamp) {
+        if (file == null || !file.isFile()) {
+            return null;
+        }
+        try {
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (!in.readUTF().equals(url) || !in.readUTF().equals(stamp)) {
+                    return null;
+                }
+                final byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                return bytes;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // corrupted or from another version, read the resource again
+            return null;
+        }
+    }
+
+    private void store(File file, final String url, final String stamp, final byte[] bytes) {
+        if (file == null) {
+            return;
+        }
+        CacheFiles.store(directory, file, new CacheFiles.Content() {
+            public void write(DataOutputStream out) throws IOException {
+                out.writeUTF(url);
+                out.writeUTF(stamp);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        });
+    }
+
+    private static final class Scope {
+        private final Map<String, List<URL>> resources = new ConcurrentHashMap<String, List<URL>>();
+        private final Map<String, Map<String, URL>> directories = new ConcurrentHashMap<String, Map<String, URL>>();
+    }
+
+    private static final class Content {
+        private final String stamp;
+        private final byte[] bytes;
+
+        private Content(String stamp, byte[] bytes) {
+            this.stamp = stamp;
+            this.bytes = bytes;
+        }
+    }
+}
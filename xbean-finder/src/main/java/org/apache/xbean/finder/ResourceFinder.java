@@ -16,7 +16,7 @@
  */
 package org.apache.xbean.finder;
 
-import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
@@ -26,15 +26,21 @@ import java.net.JarURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
@@ -43,10 +49,21 @@ import java.util.jar.JarFile;
  * @version $Rev$ $Date$
  */
 public class ResourceFinder {
+    // the find and map methods read resources as ISO-8859-1, one char per byte
+    private static final Charset CONTENT_CHARSET = StandardCharsets.ISO_8859_1;
+    private static final long MAX_SIZED_READ = 64 * 1024 * 1024;
+
     private final URL[] urls;
     private final String path;
     private final ClassLoader classLoader;
     private final List<String> resourcesNotLoaded = new ArrayList<String>();
+    // jar file url -> entries of the jar, read once per jar
+    private final Map<String, JarIndex> jarIndexes = new ConcurrentHashMap<String, JarIndex>();
+    private ResourceCache cache;
+    private Object cacheScope;
+    // reads the resources in parallel, see enableParallelReads
+    private Executor readingExecutor;
+    private int readingParallelism;
 
     public ResourceFinder(URL... urls) {
         this(null, Thread.currentThread().getContextClassLoader(), urls);
@@ -91,6 +108,20 @@ public class ResourceFinder {
         this.urls = (urls == null || urls.length == 0)? null : urls;
     }
 
+    /**
+     * Reuses the resources found and their content across calls and, when the cache
+     * is shared or stored on disk, across finders and runs.
+     *
+     * @param cache where lookups are memoized, null to disable caching
+     * @return this
+     */
+    public ResourceFinder enableCache(ResourceCache cache) {
+        this.cache = cache;
+        // urls are rewritten when they cannot be read, the scope is the initial set
+        this.cacheScope = urls == null ? classLoader : path + Arrays.toString(urls);
+        return this;
+    }
+
     private static boolean isDirectory(URL url) {
         String file = url.getFile();
         return (file.length() > 0 && file.charAt(file.length() - 1) == '/') || new File(file).isDirectory(); // with surefire first test can easily fail
@@ -178,15 +209,7 @@ public class ResourceFinder {
     public List<String> findAllStrings(String uri) throws IOException {
         String fulluri = path + uri;
 
-        List<String> strings = new ArrayList<String>();
-
-        Enumeration<URL> resources = getResources(fulluri);
-        while (resources.hasMoreElements()) {
-            URL url = resources.nextElement();
-            String string = readContents(url);
-            strings.add(string);
-        }
-        return strings;
+        return readStrings(Collections.list(getResources(fulluri)), CONTENT_CHARSET);
     }
 
     /**
@@ -204,14 +227,13 @@ public class ResourceFinder {
 
         List<String> strings = new ArrayList<String>();
 
-        Enumeration<URL> resources = getResources(fulluri);
-        while (resources.hasMoreElements()) {
-            URL url = resources.nextElement();
+        List<URL> resources = Collections.list(getResources(fulluri));
+        Object[] contents = readAll(resources);
+        for (int i = 0; i < contents.length; i++) {
             try {
-                String string = readContents(url);
-                strings.add(string);
+                strings.add(string(contents[i], CONTENT_CHARSET));
             } catch (IOException notAvailable) {
-                resourcesNotLoaded.add(url.toExternalForm());
+                resourcesNotLoaded.add(resources.get(i).toExternalForm());
             }
         }
         return strings;
@@ -243,13 +265,10 @@ public class ResourceFinder {
      */
     public Map<String, String> mapAllStrings(String uri) throws IOException {
         Map<String, String> strings = new HashMap<String, String>();
-        Map<String, URL> resourcesMap = getResourcesMap(uri);
-        for (Iterator iterator = resourcesMap.entrySet().iterator(); iterator.hasNext();) {
-            Map.Entry entry = (Map.Entry) iterator.next();
-            String name = (String) entry.getKey();
-            URL url = (URL) entry.getValue();
-            String value = readContents(url);
-            strings.put(name, value);
+        List<Map.Entry<String, URL>> resources = new ArrayList<Map.Entry<String, URL>>(getResourcesMap(uri).entrySet());
+        Object[] contents = readAll(urls(resources));
+        for (int i = 0; i < contents.length; i++) {
+            strings.put(resources.get(i).getKey(), string(contents[i], CONTENT_CHARSET));
         }
         return strings;
     }
@@ -282,16 +301,13 @@ public class ResourceFinder {
     public Map<String, String> mapAvailableStrings(String uri) throws IOException {
         resourcesNotLoaded.clear();
         Map<String, String> strings = new HashMap<String, String>();
-        Map<String, URL> resourcesMap = getResourcesMap(uri);
-        for (Iterator iterator = resourcesMap.entrySet().iterator(); iterator.hasNext();) {
-            Map.Entry entry = (Map.Entry) iterator.next();
-            String name = (String) entry.getKey();
-            URL url = (URL) entry.getValue();
+        List<Map.Entry<String, URL>> resources = new ArrayList<Map.Entry<String, URL>>(getResourcesMap(uri).entrySet());
+        Object[] contents = readAll(urls(resources));
+        for (int i = 0; i < contents.length; i++) {
             try {
-                String value = readContents(url);
-                strings.put(name, value);
+                strings.put(resources.get(i).getKey(), string(contents[i], CONTENT_CHARSET));
             } catch (IOException notAvailable) {
-                resourcesNotLoaded.add(url.toExternalForm());
+                resourcesNotLoaded.add(resources.get(i).getValue().toExternalForm());
             }
         }
         return strings;
@@ -687,11 +703,9 @@ public class ResourceFinder {
 
         List<Properties> properties = new ArrayList<Properties>();
 
-        Enumeration<URL> resources = getResources(fulluri);
-        while (resources.hasMoreElements()) {
-            URL url = resources.nextElement();
-            Properties props = loadProperties(url);
-            properties.add(props);
+        Object[] contents = readAll(Collections.list(getResources(fulluri)));
+        for (Object content : contents) {
+            properties.add(properties(content));
         }
         return properties;
     }
@@ -721,14 +735,13 @@ public class ResourceFinder {
 
         List<Properties> properties = new ArrayList<Properties>();
 
-        Enumeration<URL> resources = getResources(fulluri);
-        while (resources.hasMoreElements()) {
-            URL url = resources.nextElement();
+        List<URL> resources = Collections.list(getResources(fulluri));
+        Object[] contents = readAll(resources);
+        for (int i = 0; i < contents.length; i++) {
             try {
-                Properties props = loadProperties(url);
-                properties.add(props);
+                properties.add(properties(contents[i]));
             } catch (Exception notAvailable) {
-                resourcesNotLoaded.add(url.toExternalForm());
+                resourcesNotLoaded.add(resources.get(i).toExternalForm());
             }
         }
         return properties;
@@ -757,13 +770,10 @@ public class ResourceFinder {
      */
     public Map<String, Properties> mapAllProperties(String uri) throws IOException {
         Map<String, Properties> propertiesMap = new HashMap<String, Properties>();
-        Map<String, URL> map = getResourcesMap(uri);
-        for (Iterator iterator = map.entrySet().iterator(); iterator.hasNext();) {
-            Map.Entry entry = (Map.Entry) iterator.next();
-            String string = (String) entry.getKey();
-            URL url = (URL) entry.getValue();
-            Properties properties = loadProperties(url);
-            propertiesMap.put(string, properties);
+        List<Map.Entry<String, URL>> resources = new ArrayList<Map.Entry<String, URL>>(getResourcesMap(uri).entrySet());
+        Object[] contents = readAll(urls(resources));
+        for (int i = 0; i < contents.length; i++) {
+            propertiesMap.put(resources.get(i).getKey(), properties(contents[i]));
         }
         return propertiesMap;
     }
@@ -793,16 +803,13 @@ public class ResourceFinder {
     public Map<String, Properties> mapAvailableProperties(String uri) throws IOException {
         resourcesNotLoaded.clear();
         Map<String, Properties> propertiesMap = new HashMap<String, Properties>();
-        Map<String, URL> map = getResourcesMap(uri);
-        for (Iterator iterator = map.entrySet().iterator(); iterator.hasNext();) {
-            Map.Entry entry = (Map.Entry) iterator.next();
-            String string = (String) entry.getKey();
-            URL url = (URL) entry.getValue();
+        List<Map.Entry<String, URL>> resources = new ArrayList<Map.Entry<String, URL>>(getResourcesMap(uri).entrySet());
+        Object[] contents = readAll(urls(resources));
+        for (int i = 0; i < contents.length; i++) {
             try {
-                Properties properties = loadProperties(url);
-                propertiesMap.put(string, properties);
+                propertiesMap.put(resources.get(i).getKey(), properties(contents[i]));
             } catch (Exception notAvailable) {
-                resourcesNotLoaded.add(url.toExternalForm());
+                resourcesNotLoaded.add(resources.get(i).getValue().toExternalForm());
             }
         }
         return propertiesMap;
@@ -817,10 +824,25 @@ public class ResourceFinder {
     public Map<String, URL> getResourcesMap(String uri) throws IOException {
         String basePath = path + uri;
 
-        Map<String, URL> resources = new HashMap<String, URL>();
         if (!basePath.endsWith("/")) {
             basePath += "/";
         }
+
+        if (cache == null) {
+            return readResourcesMap(basePath);
+        }
+
+        Map<String, URL> resources = cache.getResourcesMap(cacheScope, basePath);
+        if (resources == null) {
+            resources = readResourcesMap(basePath);
+            cache.putResourcesMap(cacheScope, basePath, new HashMap<String, URL>(resources));
+            return resources;
+        }
+        return new HashMap<String, URL>(resources);
+    }
+
+    private Map<String, URL> readResourcesMap(String basePath) throws IOException {
+        Map<String, URL> resources = new HashMap<String, URL>();
         Enumeration<URL> urls = getResources(basePath);
 
         while (urls.hasMoreElements()) {
@@ -860,71 +882,172 @@ public class ResourceFinder {
         }
     }
 
-    private static void readJarEntries(URL location, String basePath, Map<String, URL> resources) throws IOException {
+    private void readJarEntries(URL location, String basePath, Map<String, URL> resources) throws IOException {
         JarURLConnection conn = (JarURLConnection) location.openConnection();
-        JarFile jarfile = null;
-        jarfile = conn.getJarFile();
+        JarIndex index = jarIndex(conn.getJarFileURL());
 
-        Enumeration<JarEntry> entries = jarfile.entries();
-        while (entries != null && entries.hasMoreElements()) {
-            JarEntry entry = entries.nextElement();
-            String name = entry.getName();
+        for (String name : index.list(basePath)) {
+            URL resource = new URL(location, name);
+            resources.put(name, resource);
+        }
+    }
 
-            if (entry.isDirectory() || !name.startsWith(basePath) || name.length() == basePath.length()) {
-                continue;
+    /**
+     * @param jarURL the url of the jar file
+     * @return the entries of the jar, the jar is only read the first time
+     */
+    private JarIndex jarIndex(URL jarURL) throws IOException {
+        final String key = jarURL.toExternalForm();
+        JarIndex index = jarIndexes.get(key);
+        if (index == null) {
+            JarURLConnection juc = (JarURLConnection) new URL("jar", "", key + "!/").openConnection();
+            JarFile jarFile = juc.getJarFile();
+            try {
+                index = new JarIndex(jarFile);
+            } finally {
+                if (!juc.getUseCaches()) {
+                    try {
+                        jarFile.close();
+                    } catch (Exception e) {
+                    }
+                }
             }
+            jarIndexes.put(key, index);
+        }
+        return index;
+    }
 
-            name = name.substring(basePath.length());
+    private Properties loadProperties(URL resource) throws IOException {
+        return properties(read(resource));
+    }
 
-            if (name.contains("/")) {
-                continue;
+    private String readContents(URL resource) throws IOException {
+        return string(read(resource), CONTENT_CHARSET);
+    }
+
+    // * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+    //
+    //   Read Contents
+    //
+    // * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+
+    /**
+     * The resources read by the find and map methods are read by up to parallelism
+     * threads, the calling one included. Worth it when many resources are read at once
+     * from slow or remote locations.
+     *
+     * @param executor runs the reading tasks, a rejected task is run by the calling thread
+     * @param parallelism the maximum number of resources read at the same time
+     * @return this
+     */
+    public ResourceFinder enableParallelReads(Executor executor, int parallelism) {
+        if (parallelism < 1) throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        this.readingExecutor = executor;
+        this.readingParallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Reads the contents of the URLs as Strings, the way the find and map methods do.
+     *
+     * @param resources the urls to read
+     * @param charset the charset of the resources, the find and map methods use ISO-8859-1
+     * @return the trimmed content of each url, in order
+     * @throws IOException if any of the urls cannot be read
+     */
+    public List<String> readStrings(List<URL> resources, Charset charset) throws IOException {
+        Object[] contents = readAll(resources);
+        List<String> strings = new ArrayList<String>(contents.length);
+        for (Object content : contents) {
+            strings.add(string(content, charset));
+        }
+        return strings;
+    }
+
+    /**
+     * @return the content of each url, in order, or the IOException reading it failed with
+     */
+    private Object[] readAll(final List<URL> resources) {
+        final Object[] contents = new Object[resources.size()];
+        Workers.run(readingExecutor, readingParallelism, contents.length, new Workers.Work() {
+            public void run(int index) {
+                try {
+                    contents[index] = read(resources.get(index));
+                } catch (IOException e) {
+                    contents[index] = e;
+                }
             }
+        });
+        return contents;
+    }
 
-            URL resource = new URL(location, name);
-            resources.put(name, resource);
+    private static List<URL> urls(List<Map.Entry<String, URL>> resources) {
+        List<URL> urls = new ArrayList<URL>(resources.size());
+        for (Map.Entry<String, URL> resource : resources) {
+            urls.add(resource.getValue());
         }
+        return urls;
     }
 
-    private Properties loadProperties(URL resource) throws IOException {
-        InputStream in = resource.openStream();
+    private static String string(Object content, Charset charset) throws IOException {
+        return new String(bytes(content), charset).trim();
+    }
 
-        BufferedInputStream reader = null;
-        try {
-            reader = new BufferedInputStream(in);
-            Properties properties = new Properties();
-            properties.load(reader);
+    private static Properties properties(Object content) throws IOException {
+        Properties properties = new Properties();
+        properties.load(new ByteArrayInputStream(bytes(content)));
+        return properties;
+    }
 
-            return properties;
-        } finally {
-            try {
-                in.close();
-                reader.close();
-            } catch (Exception e) {
-            }
+    private static byte[] bytes(Object content) throws IOException {
+        if (content instanceof IOException) {
+            throw (IOException) content;
         }
+        return (byte[]) content;
     }
 
-    private String readContents(URL resource) throws IOException {
-        InputStream in = resource.openStream();
-        BufferedInputStream reader = null;
-        StringBuffer sb = new StringBuffer();
+    private byte[] read(URL resource) throws IOException {
+        if (cache == null) {
+            return readBytes(resource);
+        }
+        return cache.read(resource);
+    }
 
+    /**
+     * Reads the resource into a buffer of the size of the jar entry or file when it is known.
+     */
+    static byte[] readBytes(URL resource) throws IOException {
+        URLConnection connection = resource.openConnection();
+        InputStream in = connection.getInputStream();
         try {
-            reader = new BufferedInputStream(in);
+            long length = connection.getContentLengthLong();
+            byte[] bytes = new byte[length < 0 || length > MAX_SIZED_READ ? 0 : (int) length];
+            int read = 0;
+            while (read < bytes.length) {
+                int count = in.read(bytes, read, bytes.length - read);
+                if (count < 0) {
+                    return Arrays.copyOf(bytes, read);
+                }
+                read += count;
+            }
 
-            int b = reader.read();
-            while (b != -1) {
-                sb.append((char) b);
-                b = reader.read();
+            int b = in.read();
+            if (b < 0) {
+                return bytes;
             }
 
-            return sb.toString().trim();
-        } finally {
-            try {
-                in.close();
-                reader.close();
-            } catch (Exception e) {
+            // unknown or wrong size
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(bytes.length * 2, 1024));
+            out.write(bytes);
+            out.write(b);
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, count);
             }
+            return out.toByteArray();
+        } finally {
+            in.close();
         }
     }
 
@@ -936,6 +1059,19 @@ public class ResourceFinder {
     }
 
     private Enumeration<URL> getResources(String fulluri) throws IOException {
+        if (cache == null) {
+            return findResources(fulluri);
+        }
+
+        List<URL> resources = cache.getResources(cacheScope, fulluri);
+        if (resources == null) {
+            resources = Collections.list(findResources(fulluri));
+            cache.putResources(cacheScope, fulluri, resources);
+        }
+        return Collections.enumeration(resources);
+    }
+
+    private Enumeration<URL> findResources(String fulluri) throws IOException {
         if (urls == null) {
             return classLoader.getResources(fulluri);
         }
@@ -965,52 +1101,40 @@ public class ResourceFinder {
                     * entry doesn't exist.
                     */
                     URL jarURL = ((JarURLConnection) currentUrl.openConnection()).getJarFileURL();
-                    JarFile jarFile;
-                    JarURLConnection juc;
+                    JarIndex index;
                     try {
-                        juc = (JarURLConnection) new URL("jar", "", jarURL.toExternalForm() + "!/").openConnection();
-                        jarFile = juc.getJarFile();
+                        index = jarIndex(jarURL);
                     } catch (IOException e) {
                         // Don't look for this jar file again
                         search[i] = null;
                         throw e;
                     }
 
-                    try {
-                        juc = (JarURLConnection) new URL("jar", "", jarURL.toExternalForm() + "!/").openConnection();                        
-                        jarFile = juc.getJarFile();
-                        String entryName;
-                        if (currentUrl.getFile().endsWith("!/")) {
-                            entryName = resourceName;
-                        } else {
-                            String file = currentUrl.getFile();
-                            int sepIdx = file.lastIndexOf("!/");
-                            if (sepIdx == -1) {
-                                // Invalid URL, don't look here again
-                                search[i] = null;
-                                continue;
-                            }
-                            sepIdx += 2;
-                            StringBuffer sb = new StringBuffer(file.length() - sepIdx + resourceName.length());
-                            sb.append(file.substring(sepIdx));
-                            sb.append(resourceName);
-                            entryName = sb.toString();
-                        }
-                        if (entryName.equals("META-INF/") && jarFile.getEntry("META-INF/MANIFEST.MF") != null) {
-                            return targetURL(currentUrl, "META-INF/MANIFEST.MF");
-                        }
-                        if (jarFile.getEntry(entryName) != null) {
-                            return targetURL(currentUrl, resourceName);
-                        }
-                    } finally {
-                        if (!juc.getUseCaches()) {
-                            try {
-                                jarFile.close();
-                            } catch (Exception e) {
-                            }
+                    String entryName;
+                    if (currentUrl.getFile().endsWith("!/")) {
+                        entryName = resourceName;
+                    } else {
+                        String file = currentUrl.getFile();
+                        int sepIdx = file.lastIndexOf("!/");
+                        if (sepIdx == -1) {
+                            // Invalid URL, don't look here again
+                            search[i] = null;
+                            continue;
                         }
+                        sepIdx += 2;
+                        StringBuffer sb = new StringBuffer(file.length() - sepIdx + resourceName.length());
+                        sb.append(file.substring(sepIdx));
+                        sb.append(resourceName);
+                        entryName = sb.toString();
+                    }
+                    if (entryName.equals("META-INF/") && index.contains("META-INF/MANIFEST.MF")) {
+                        return targetURL(currentUrl, "META-INF/MANIFEST.MF");
                     }
-                    
+                    if (index.contains(entryName)) {
+                        return targetURL(currentUrl, resourceName);
+                    }
+
+
                 } else if (protocol.equals("file")) {
                     String baseFile = currentUrl.getFile();
                     String host = currentUrl.getHost();
@@ -1124,4 +1248,63 @@ public class ResourceFinder {
         return result.toString();
     }
 
+
+    /**
+     * Entry names of a jar grouped by directory, lookups and directory listings
+     * are map hits instead of a walk over the entries of the jar.
+     */
+    private static final class JarIndex {
+        // directory ("" for the root, "META-INF/services/" otherwise) -> names of the files it contains
+        private final Map<String, List<String>> files = new HashMap<String, List<String>>();
+        // same names as files, for the lookups
+        private final Map<String, Set<String>> fileSets = new HashMap<String, Set<String>>();
+        private final Set<String> directories = new HashSet<String>();
+
+        private JarIndex(JarFile jarFile) {
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (entry.isDirectory()) {
+                    directories.add(name);
+                    continue;
+                }
+
+                int slash = name.lastIndexOf('/') + 1;
+                String directory = name.substring(0, slash);
+                List<String> names = files.get(directory);
+                Set<String> nameSet = fileSets.get(directory);
+                if (names == null) {
+                    names = new ArrayList<String>();
+                    nameSet = new HashSet<String>();
+                    files.put(directory, names);
+                    fileSets.put(directory, nameSet);
+                }
+                String file = name.substring(slash);
+                names.add(file);
+                nameSet.add(file);
+            }
+        }
+
+        /**
+         * Same answer as JarFile.getEntry(name) != null.
+         */
+        private boolean contains(String name) {
+            if (name.endsWith("/")) {
+                return directories.contains(name);
+            }
+            int slash = name.lastIndexOf('/') + 1;
+            Set<String> names = fileSets.get(name.substring(0, slash));
+            return (names != null && names.contains(name.substring(slash))) || directories.contains(name + "/");
+        }
+
+        /**
+         * @param directory a directory path ending with a slash
+         * @return the names of the files directly in the directory
+         */
+        private List<String> list(String directory) {
+            List<String> names = files.get(directory);
+            return names == null ? Collections.<String>emptyList() : names;
+        }
+    }
 }
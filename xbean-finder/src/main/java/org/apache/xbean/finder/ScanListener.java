@@ -0,0 +1,63 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.apache.xbean.finder.archive.Archive;
+
+/**
+ * Notified of the work done by an {@link AnnotationFinder}, to see where the scanning
+ * time goes: reading the archives, linking or loading the classes.
+ * <p/>
+ * Methods can be called from the threads of the executors given to the finder,
+ * implementations have to be thread safe. They should also be cheap, they run in
+ * the scanning path.
+ *
+ * @see AnnotationFinder#enableScanListener(ScanListener)
+ * @see ScanMetrics
+ * @version $Rev$ $Date$
+ */
+public interface ScanListener {
+
+    /**
+     * An archive was read. When listened, the children of a composite archive are read,
+     * and reported, one by one.
+     *
+     * @param archive the archive which was read
+     * @param entries the number of classes read
+     * @param bytes the size of the bytecode parsed, 0 for the classes of an index
+     * @param parseNanos the time spent parsing the bytecode, summed over the scanning threads
+     * @param nanos the time spent reading the archive, reading the entries included
+     */
+    default void archiveScanned(Archive archive, int entries, long bytes, long parseNanos, long nanos) {
+    }
+
+    /**
+     * @param phase "subclasses", "implementations", "meta-annotations" or "hierarchy-index"
+     * @param nanos the time spent linking, reading the archive excluded
+     */
+    default void linked(String phase, long nanos) {
+    }
+
+    default void classLoaded(String className, long nanos) {
+    }
+
+    /**
+     * @param cause a ClassNotFoundException or a LinkageError
+     */
+    default void classNotLoaded(String className, Throwable cause) {
+    }
+}
@@ -0,0 +1,318 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.FileArchive;
+import org.apache.xbean.finder.archive.FilteredArchive;
+import org.apache.xbean.finder.archive.IndexedArchive;
+import org.apache.xbean.finder.archive.JarArchive;
+import org.apache.xbean.finder.archive.MappedJarArchive;
+import org.apache.xbean.finder.archive.NestedJarArchive;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Listener aggregating what the finders it listens to did, per archive for the scanning.
+ * <p/>
+ * When the xbean.finder.metrics system property is true every {@link AnnotationFinder}
+ * reports to {@link #getInstance()}, which is also registered in the platform MBeanServer
+ * as {@value #OBJECT_NAME} when xbean.finder.metrics.jmx is true.
+ * <p/>
+ * Usage:
+ * <pre>
+ * final ScanMetrics metrics = new ScanMetrics();
+ * final AnnotationFinder finder = new AnnotationFinder(archive, true, null, true).enableScanListener(metrics);
+ * finder.findAnnotatedClasses(Entity.class);
+ * for (String line : metrics.getArchiveReport()) {
+ *     System.out.println(line);
+ * }
+ * </pre>
+ *
+ * @version $Rev$ $Date$
+ */
+public class ScanMetrics implements ScanListener, ScanMetricsMBean {
+
+    public static final String OBJECT_NAME = "org.apache.xbean.finder:type=ScanMetrics";
+
+    private static final boolean JMX = Boolean.getBoolean("xbean.finder.metrics.jmx");
+
+    private static volatile ScanMetrics instance;
+
+    // archive location -> metrics
+    private final ConcurrentMap<String, ArchiveMetrics> archives = new ConcurrentHashMap<String, ArchiveMetrics>();
+    // link phase -> nanos
+    private final ConcurrentMap<String, AtomicLong> links = new ConcurrentHashMap<String, AtomicLong>();
+    private final AtomicLong classesLoaded = new AtomicLong();
+    private final AtomicLong classLoadNanos = new AtomicLong();
+    private final AtomicLong loadFailures = new AtomicLong();
+
+    /**
+     * @return the metrics the finders report to when the xbean.finder.metrics system property is true
+     */
+    public static ScanMetrics getInstance() {
+        ScanMetrics metrics = instance;
+        if (metrics == null) {
+            synchronized (ScanMetrics.class) {
+                metrics = instance;
+                if (metrics == null) {
+                    metrics = new ScanMetrics();
+                    if (JMX) {
+                        try {
+                            metrics.registerMBean(ManagementFactory.getPlatformMBeanServer(), new ObjectName(OBJECT_NAME));
+                        } catch (JMException e) {
+                            // still available programmatically
+                        }
+                    }
+                    instance = metrics;
+                }
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * @param server where to register these metrics
+     * @param name the name of the MBean, {@value #OBJECT_NAME} for the shared instance
+     */
+    public void registerMBean(MBeanServer server, ObjectName name) throws JMException {
+        server.registerMBean(this, name);
+    }
+
+    public void archiveScanned(Archive archive, int entries, long bytes, long parseNanos, long nanos) {
+        final String location = location(archive);
+        ArchiveMetrics metrics = archives.get(location);
+        if (metrics == null) {
+            metrics = new ArchiveMetrics(location);
+            final ArchiveMetrics existing = archives.putIfAbsent(location, metrics);
+            if (existing != null) {
+                metrics = existing;
+            }
+        }
+        metrics.scans.incrementAndGet();
+        metrics.entries.addAndGet(entries);
+        metrics.bytes.addAndGet(bytes);
+        metrics.parseNanos.addAndGet(parseNanos);
+        metrics.nanos.addAndGet(nanos);
+    }
+
+    public void linked(String phase, long nanos) {
+        AtomicLong total = links.get(phase);
+        if (total == null) {
+            total = new AtomicLong();
+            final AtomicLong existing = links.putIfAbsent(phase, total);
+            if (existing != null) {
+                total = existing;
+            }
+        }
+        total.addAndGet(nanos);
+    }
+
+    public void classLoaded(String className, long nanos) {
+        classesLoaded.incrementAndGet();
+        classLoadNanos.addAndGet(nanos);
+    }
+
+    public void classNotLoaded(String className, Throwable cause) {
+        loadFailures.incrementAndGet();
+    }
+
+    // the file or directory of the archive when known, through the archives wrapping it
+    private static String location(Archive archive) {
+        while (archive instanceof IndexedArchive || archive instanceof FilteredArchive) {
+            archive = archive instanceof IndexedArchive ? ((IndexedArchive) archive).getArchive() : ((FilteredArchive) archive).getArchive();
+        }
+        if (archive instanceof JarArchive) {
+            return String.valueOf(((JarArchive) archive).getUrl());
+        }
+        if (archive instanceof MappedJarArchive) {
+            return String.valueOf(((MappedJarArchive) archive).getUrl());
+        }
+        if (archive instanceof NestedJarArchive) {
+            return String.valueOf(((NestedJarArchive) archive).getUrl());
+        }
+        if (archive instanceof FileArchive) {
+            return ((FileArchive) archive).getDir().getAbsolutePath();
+        }
+        // one entry per instance, as their toString() usually is
+        return archive.getClass().getName() + "@" + Integer.toHexString(System.identityHashCode(archive));
+    }
+
+    /**
+     * @return the metrics of each archive read so far, keyed by location
+     */
+    public Map<String, ArchiveMetrics> getArchives() {
+        return Collections.<String, ArchiveMetrics>unmodifiableMap(archives);
+    }
+
+    /**
+     * @return the time spent in each link phase, in nanoseconds
+     */
+    public Map<String, Long> getLinks() {
+        final Map<String, Long> times = new TreeMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> entry : links.entrySet()) {
+            times.put(entry.getKey(), entry.getValue().get());
+        }
+        return times;
+    }
+
+    public long getArchivesScanned() {
+        return archives.size();
+    }
+
+    public long getEntriesRead() {
+        long entries = 0;
+        for (ArchiveMetrics metrics : archives.values()) {
+            entries += metrics.getEntries();
+        }
+        return entries;
+    }
+
+    public long getBytesRead() {
+        long bytes = 0;
+        for (ArchiveMetrics metrics : archives.values()) {
+            bytes += metrics.getBytes();
+        }
+        return bytes;
+    }
+
+    public long getParseTime() {
+        long nanos = 0;
+        for (ArchiveMetrics metrics : archives.values()) {
+            nanos += metrics.getParseNanos();
+        }
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    public long getScanTime() {
+        long nanos = 0;
+        for (ArchiveMetrics metrics : archives.values()) {
+            nanos += metrics.getNanos();
+        }
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    public long getLinkTime() {
+        long nanos = 0;
+        for (AtomicLong phase : links.values()) {
+            nanos += phase.get();
+        }
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    public long getClassesLoaded() {
+        return classesLoaded.get();
+    }
+
+    public long getClassLoadTime() {
+        return TimeUnit.NANOSECONDS.toMillis(classLoadNanos.get());
+    }
+
+    public long getLoadFailures() {
+        return loadFailures.get();
+    }
+
+    public String[] getArchiveReport() {
+        final List<ArchiveMetrics> sorted = new ArrayList<ArchiveMetrics>(archives.values());
+        Collections.sort(sorted, new Comparator<ArchiveMetrics>() {
+            public int compare(ArchiveMetrics o1, ArchiveMetrics o2) {
+                return Long.compare(o2.getNanos(), o1.getNanos());
+            }
+        });
+
+        final String[] report = new String[sorted.size()];
+        for (int i = 0; i < report.length; i++) {
+            report[i] = sorted.get(i).toString();
+        }
+        return report;
+    }
+
+    public String[] getLinkReport() {
+        final List<String> report = new ArrayList<String>();
+        for (Map.Entry<String, Long> entry : getLinks().entrySet()) {
+            report.add(entry.getKey() + " " + TimeUnit.NANOSECONDS.toMillis(entry.getValue()) + "ms");
+        }
+        return report.toArray(new String[report.size()]);
+    }
+
+    public void reset() {
+        archives.clear();
+        links.clear();
+        classesLoaded.set(0);
+        classLoadNanos.set(0);
+        loadFailures.set(0);
+    }
+
+    public static final class ArchiveMetrics {
+        private final String location;
+        private final AtomicLong scans = new AtomicLong();
+        private final AtomicLong entries = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong parseNanos = new AtomicLong();
+        private final AtomicLong nanos = new AtomicLong();
+
+        private ArchiveMetrics(String location) {
+            this.location = location;
+        }
+
+        public String getLocation() {
+            return location;
+        }
+
+        /**
+         * @return how many times the archive was read, by any finder
+         */
+        public long getScans() {
+            return scans.get();
+        }
+
+        public long getEntries() {
+            return entries.get();
+        }
+
+        public long getBytes() {
+            return bytes.get();
+        }
+
+        public long getParseNanos() {
+            return parseNanos.get();
+        }
+
+        public long getNanos() {
+            return nanos.get();
+        }
+
+        public String toString() {
+            return location + " scans=" + getScans() + " entries=" + getEntries() + " bytes=" + getBytes()
+                    + " parse=" + TimeUnit.NANOSECONDS.toMillis(getParseNanos()) + "ms"
+                    + " scan=" + TimeUnit.NANOSECONDS.toMillis(getNanos()) + "ms";
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs an indexed work with the calling thread and pooled workers pulling
+ * the next index from a shared counter.
+ * <p/>
+ * The caller only waits for the workers which started before it ran out of
+ * indexes, the others find nothing to do when they eventually run. Calling it
+ * from a thread of the executor, or with a saturated executor, can't deadlock.
+ */
+final class Workers {
+
+    interface Work {
+        void run(int index);
+    }
+
+    private Workers() {
+        // no-op
+    }
+
+    /**
+     * @param executor runs the workers, null to run everything on the calling thread
+     * @param parallelism the maximum number of threads working at the same time, the caller included
+     * @param count the number of indexes
+     * @param work called once per index
+     */
+    static void run(final Executor executor, final int parallelism, final int count, final Work work) {
+        final AtomicInteger next = new AtomicInteger();
+        final Runnable worker = new Runnable() {
+            public void run() {
+                for (int i = next.getAndIncrement(); i < count; i = next.getAndIncrement()) {
+                    work.run(i);
+                }
+            }
+        };
+
+        final Pool pool = new Pool(worker);
+        for (int i = 1; executor != null && i < Math.min(parallelism, count); i++) {
+            try {
+                executor.execute(pool);
+            } catch (RejectedExecutionException e) {
+                pool.run();
+            }
+        }
+
+        try {
+            worker.run();
+        } finally {
+            pool.close();
+        }
+    }
+
+    private static final class Pool implements Runnable {
+        private final Runnable worker;
+        private int active;
+        private boolean closed;
+        private Throwable failure;
+
+        private Pool(final Runnable worker) {
+            this.worker = worker;
+        }
+
+        public void run() {
+            synchronized (this) {
+                if (closed) return;
+                active++;
+            }
+            try {
+                worker.run();
+            } catch (RuntimeException | Error e) {
+                synchronized (this) {
+                    if (failure == null) failure = e;
+                }
+            } finally {
+                synchronized (this) {
+                    active--;
+                    notifyAll();
+                }
+            }
+        }
+
+        // every index is claimed once the caller is done, the started workers only finish their last one:
+        // wait for them even when interrupted so no index is left unprocessed
+        private synchronized void close() {
+            closed = true;
+            boolean interrupted = false;
+            while (active > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+            if (failure instanceof Error) throw (Error) failure;
+        }
+    }
+}
@@ -26,6 +26,17 @@ public interface Archive extends Iterable<Archive.Entry> {
 
     InputStream getBytecode(String className) throws IOException, ClassNotFoundException;
 
+    /**
+     * Same as {@link #getBytecode(String)} but a missing class is not an error,
+     * which avoids paying for an exception on each miss when probing several archives.
+     *
+     * @param className the class to look up
+     * @return the bytecode of the class or null if this archive does not contain it
+     */
+    default InputStream findBytecode(String className) throws IOException {
+        return ArchiveLookups.getBytecode(this, className);
+    }
+
     Class<?> loadClass(String className) throws ClassNotFoundException;
 
     public interface Entry {
@@ -0,0 +1,705 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.apache.xbean.asm9.original.commons.AsmConstants.ASM_VERSION;
+
+/**
+ * Compact and replayable record of the class structures of an archive.
+ * <p/>
+ * For each class the index keeps what the finder reads with ASM when scanning
+ * (class header, fields, methods, annotations and their values) but no code.
+ * Replaying a class with {@link #accept(int, ClassVisitor)} drives the visitor
+ * like a {@link ClassReader} would do with the SKIP_CODE, SKIP_DEBUG and SKIP_FRAMES
+ * flags, without reading the bytecode again.
+ *
+ * @version $Rev$ $Date$
+ */
+public final class ArchiveIndex {
+    /**
+     * Where a prebuilt index is stored inside a jar or a classes directory.
+     */
+    public static final String LOCATION = "META-INF/xbean-finder.index";
+
+    private static final int MAGIC = 0x58424958; // XBIX
+    private static final int VERSION = 1;
+    private static final int ASM_FLAGS = ClassReader.SKIP_CODE + ClassReader.SKIP_DEBUG + ClassReader.SKIP_FRAMES;
+
+    private static final int END = 0;
+    private static final int ANNOTATION = 1;
+    private static final int FIELD = 2;
+    private static final int METHOD = 3;
+    private static final int PARAMETER_ANNOTATION = 4;
+    private static final int ANNOTABLE_PARAMETER_COUNT = 5;
+
+    private static final int VALUE = 1;
+    private static final int ENUM = 2;
+    private static final int NESTED = 3;
+    private static final int ARRAY = 4;
+
+    private static final int BOOLEAN = 1;
+    private static final int BYTE = 2;
+    private static final int CHAR = 3;
+    private static final int SHORT = 4;
+    private static final int INT = 5;
+    private static final int LONG = 6;
+    private static final int FLOAT = 7;
+    private static final int DOUBLE = 8;
+    private static final int STRING = 9;
+    private static final int TYPE = 10;
+    private static final int BOOLEAN_ARRAY = 11;
+    private static final int BYTE_ARRAY = 12;
+    private static final int CHAR_ARRAY = 13;
+    private static final int SHORT_ARRAY = 14;
+    private static final int INT_ARRAY = 15;
+    private static final int LONG_ARRAY = 16;
+    private static final int FLOAT_ARRAY = 17;
+    private static final int DOUBLE_ARRAY = 18;
+
+    private final String[] strings;
+    private final String[] classNames;
+    private final int[] offsets;
+    private final byte[] data;
+
+    private ArchiveIndex(final String[] strings, final String[] classNames, final int[] offsets, final byte[] data) {
+        this.strings = strings;
+        this.classNames = classNames;
+        this.offsets = offsets;
+        this.data = data;
+    }
+
+    /**
+     * Reads the bytecode of all the entries of the archive and records their structure.
+     *
+     * @param archive the archive to index
+     * @return the index of the archive
+     * @throws IOException if an entry can't be read
+     */
+    public static ArchiveIndex build(final Archive archive) throws IOException {
+        final Builder builder = new Builder();
+        for (final Archive.Entry entry : archive) {
+            if (entry instanceof MappedJarArchive.MappedEntry) {
+                builder.add(entry.getName(), new ClassReader(((MappedJarArchive.MappedEntry) entry).getBytes()));
+                continue;
+            }
+            final InputStream in = entry.getBytecode();
+            try {
+                builder.add(entry.getName(), new ClassReader(in));
+            } finally {
+                in.close();
+            }
+        }
+        return builder.build();
+    }
+
+    public static ArchiveIndex read(final InputStream stream) throws IOException {
+        final DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not an archive index");
+        }
+        final int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported archive index version " + version);
+        }
+
+        final String[] strings = new String[in.readInt()];
+        for (int i = 0; i < strings.length; i++) {
+            final byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        final String[] classNames = new String[in.readInt()];
+        final int[] offsets = new int[classNames.length + 1];
+        for (int i = 0; i < classNames.length; i++) {
+            classNames[i] = strings[in.readInt()];
+            offsets[i + 1] = in.readInt();
+        }
+
+        final byte[] data = new byte[offsets[classNames.length]];
+        in.readFully(data);
+        return new ArchiveIndex(strings, classNames, offsets, data);
+    }
+
+    public void write(final OutputStream stream) throws IOException {
+        final DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+
+        final Map<String, Integer> refs = new HashMap<String, Integer>();
+        out.writeInt(strings.length);
+        for (int i = 0; i < strings.length; i++) {
+            final byte[] bytes = strings[i].getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            refs.put(strings[i], i);
+        }
+
+        out.writeInt(classNames.length);
+        for (int i = 0; i < classNames.length; i++) {
+            out.writeInt(refs.get(classNames[i]));
+            out.writeInt(offsets[i + 1]);
+        }
+
+        out.write(data);
+        out.flush();
+    }
+
+    public int size() {
+        return classNames.length;
+    }
+
+    public String getClassName(final int index) {
+        return classNames[index];
+    }
+
+    public List<String> getClassNames() {
+        return Collections.unmodifiableList(Arrays.asList(classNames));
+    }
+
+    /**
+     * Replays the recorded structure of a class.
+     *
+     * @param index position of the class in this index
+     * @param visitor the visitor to drive
+     */
+    public void accept(final int index, final ClassVisitor visitor) {
+        final Input in = new Input(offsets[index]);
+
+        final int access = in.readInt();
+        final String name = in.readString();
+        final String superName = in.readString();
+        final String[] interfaces = new String[in.readInt()];
+        for (int i = 0; i < interfaces.length; i++) {
+            interfaces[i] = in.readString();
+        }
+        visitor.visit(in.readInt(), access, name, null, superName, interfaces);
+
+        for (int tag = in.readInt(); tag != END; tag = in.readInt()) {
+            switch (tag) {
+                case ANNOTATION:
+                    final String desc = in.readString();
+                    readAnnotation(in, visitor.visitAnnotation(desc, in.readInt() != 0));
+                    break;
+                case FIELD:
+                    readField(in, visitor);
+                    break;
+                case METHOD:
+                    readMethod(in, visitor);
+                    break;
+                default:
+                    throw new IllegalStateException("Corrupted archive index for " + classNames[index]);
+            }
+        }
+        visitor.visitEnd();
+    }
+
+    private void readField(final Input in, final ClassVisitor visitor) {
+        final int access = in.readInt();
+        final String name = in.readString();
+        final FieldVisitor fieldVisitor = visitor.visitField(access, name, in.readString(), null, null);
+        for (int tag = in.readInt(); tag != END; tag = in.readInt()) {
+            final String desc = in.readString();
+            final boolean visible = in.readInt() != 0;
+            readAnnotation(in, fieldVisitor == null ? null : fieldVisitor.visitAnnotation(desc, visible));
+        }
+        if (fieldVisitor != null) {
+            fieldVisitor.visitEnd();
+        }
+    }
+
+    private void readMethod(final Input in, final ClassVisitor visitor) {
+        final int access = in.readInt();
+        final String name = in.readString();
+        final String desc = in.readString();
+        final String[] exceptions = new String[in.readInt()];
+        for (int i = 0; i < exceptions.length; i++) {
+            exceptions[i] = in.readString();
+        }
+        final MethodVisitor methodVisitor = visitor.visitMethod(access, name, desc, null, exceptions.length == 0 ? null : exceptions);
+        for (int tag = in.readInt(); tag != END; tag = in.readInt()) {
+            switch (tag) {
+                case ANNOTATION: {
+                    final String annotation = in.readString();
+                    final boolean visible = in.readInt() != 0;
+                    readAnnotation(in, methodVisitor == null ? null : methodVisitor.visitAnnotation(annotation, visible));
+                    break;
+                }
+                case ANNOTABLE_PARAMETER_COUNT: {
+                    final int count = in.readInt();
+                    final boolean visible = in.readInt() != 0;
+                    if (methodVisitor != null) {
+                        methodVisitor.visitAnnotableParameterCount(count, visible);
+                    }
+                    break;
+                }
+                case PARAMETER_ANNOTATION: {
+                    final int parameter = in.readInt();
+                    final String annotation = in.readString();
+                    final boolean visible = in.readInt() != 0;
+                    readAnnotation(in, methodVisitor == null ? null : methodVisitor.visitParameterAnnotation(parameter, annotation, visible));
+                    break;
+                }
+                default:
+                    throw new IllegalStateException("Corrupted archive index at method " + name);
+            }
+        }
+        if (methodVisitor != null) {
+            methodVisitor.visitEnd();
+        }
+    }
+
+    private void readAnnotation(final Input in, final AnnotationVisitor visitor) {
+        for (int tag = in.readInt(); tag != END; tag = in.readInt()) {
+            final String name = in.readString();
+            switch (tag) {
+                case VALUE: {
+                    final Object value = in.readValue();
+                    if (visitor != null) {
+                        visitor.visit(name, value);
+                    }
+                    break;
+                }
+                case ENUM: {
+                    final String desc = in.readString();
+                    final String value = in.readString();
+                    if (visitor != null) {
+                        visitor.visitEnum(name, desc, value);
+                    }
+                    break;
+                }
+                case NESTED: {
+                    final String desc = in.readString();
+                    readAnnotation(in, visitor == null ? null : visitor.visitAnnotation(name, desc));
+                    break;
+                }
+                case ARRAY:
+                    readAnnotation(in, visitor == null ? null : visitor.visitArray(name));
+                    break;
+                default:
+                    throw new IllegalStateException("Corrupted archive index at annotation value " + name);
+            }
+        }
+        if (visitor != null) {
+            visitor.visitEnd();
+        }
+    }
+
+    private final class Input {
+        private int position;
+
+        private Input(final int position) {
+            this.position = position;
+        }
+
+        private int readInt() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[position++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        private long readLong() {
+            return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+        }
+
+        private String readString() {
+            final int ref = readInt();
+            return ref == 0 ? null : strings[ref - 1];
+        }
+
+        private Object readValue() {
+            final int type = readInt();
+            switch (type) {
+                case BOOLEAN:
+                    return readInt() != 0;
+                case BYTE:
+                    return (byte) readInt();
+                case CHAR:
+                    return (char) readInt();
+                case SHORT:
+                    return (short) readInt();
+                case INT:
+                    return readInt();
+                case LONG:
+                    return readLong();
+                case FLOAT:
+                    return Float.intBitsToFloat(readInt());
+                case DOUBLE:
+                    return Double.longBitsToDouble(readLong());
+                case STRING:
+                    return readString();
+                case TYPE:
+                    return Type.getType(readString());
+                case BOOLEAN_ARRAY: {
+                    final boolean[] array = new boolean[readInt()];
+                    for (int i = 0; i < array.length; i++) array[i] = readInt() != 0;
+                    return array;
+                }
+                case BYTE_ARRAY: {
+                    final byte[] array = new byte[readInt()];
+                    for (int i = 0; i < array.length; i++) array[i] = (byte) readInt();
+                    return array;
+                }
+                case CHAR_ARRAY: {
+                    final char[] array = new char[readInt()];
+                    for (int i = 0; i < array.length; i++) array[i] = (char) readInt();
+                    return array;
+                }
+                case SHORT_ARRAY: {
+                    final short[] array = new short[readInt()];
+                    for (int i = 0; i < array.length; i++) array[i] = (short) readInt();
+                    return array;
+                }
+                case INT_ARRAY: {
+                    final int[] array = new int[readInt()];
+                    for (int i = 0; i < array.length; i++) array[i] = readInt();
+                    return array;
+                }
+                case LONG_ARRAY: {
+                    final long[] array = new long[readInt()];
+                    for (int i = 0; i < array.length; i++) array[i] = readLong();
+                    return array;
+                }
+                case FLOAT_ARRAY: {
+                    final float[] array = new float[readInt()];
+                    for (int i = 0; i < array.length; i++) array[i] = Float.intBitsToFloat(readInt());
+                    return array;
+                }
+                case DOUBLE_ARRAY: {
+                    final double[] array = new double[readInt()];
+                    for (int i = 0; i < array.length; i++) array[i] = Double.longBitsToDouble(readLong());
+                    return array;
+                }
+                default:
+                    throw new IllegalStateException("Corrupted archive index, unknown value type " + type);
+            }
+        }
+    }
+
+    /**
+     * Accumulates class structures, the order of the additions is the order of the index.
+     */
+    public static final class Builder {
+        private final Map<String, Integer> refs = new HashMap<String, Integer>();
+        private final List<String> strings = new ArrayList<String>();
+        private final List<String> classNames = new ArrayList<String>();
+        private final List<Integer> offsets = new ArrayList<Integer>();
+        private byte[] data = new byte[4096];
+        private int size;
+
+        public Builder() {
+            offsets.add(0);
+        }
+
+        public Builder add(final String className, final ClassReader reader) {
+            reader.accept(new Recorder(), ASM_FLAGS);
+            classNames.add(className);
+            offsets.add(size);
+            return this;
+        }
+
+        public ArchiveIndex build() {
+            final int[] positions = new int[offsets.size()];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = offsets.get(i);
+            }
+            for (final String className : classNames) {
+                ref(className);
+            }
+            return new ArchiveIndex(strings.toArray(new String[strings.size()]),
+                    classNames.toArray(new String[classNames.size()]), positions, Arrays.copyOf(data, size));
+        }
+
+        private int ref(final String value) {
+            if (value == null) {
+                return 0;
+            }
+            Integer ref = refs.get(value);
+            if (ref == null) {
+                strings.add(value);
+                ref = strings.size();
+                refs.put(value, ref);
+            }
+            return ref;
+        }
+
+        private void writeInt(int value) {
+            if (size + 5 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            while ((value & ~0x7F) != 0) {
+                data[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[size++] = (byte) value;
+        }
+
+        private void writeLong(final long value) {
+            writeInt((int) (value >>> 32));
+            writeInt((int) value);
+        }
+
+        private void writeString(final String value) {
+            writeInt(ref(value));
+        }
+
+        private void writeValue(final Object value) {
+            if (value instanceof Boolean) {
+                writeInt(BOOLEAN);
+                writeInt((Boolean) value ? 1 : 0);
+            } else if (value instanceof Byte) {
+                writeInt(BYTE);
+                writeInt((Byte) value);
+            } else if (value instanceof Character) {
+                writeInt(CHAR);
+                writeInt((Character) value);
+            } else if (value instanceof Short) {
+                writeInt(SHORT);
+                writeInt((Short) value);
+            } else if (value instanceof Integer) {
+                writeInt(INT);
+                writeInt((Integer) value);
+            } else if (value instanceof Long) {
+                writeInt(LONG);
+                writeLong((Long) value);
+            } else if (value instanceof Float) {
+                writeInt(FLOAT);
+                writeInt(Float.floatToRawIntBits((Float) value));
+            } else if (value instanceof Double) {
+                writeInt(DOUBLE);
+                writeLong(Double.doubleToRawLongBits((Double) value));
+            } else if (value instanceof String) {
+                writeInt(STRING);
+                writeString((String) value);
+            } else if (value instanceof Type) {
+                writeInt(TYPE);
+                writeString(((Type) value).getDescriptor());
+            } else if (value instanceof boolean[]) {
+                final boolean[] array = (boolean[]) value;
+                writeInt(BOOLEAN_ARRAY);
+                writeInt(array.length);
+                for (final boolean b : array) writeInt(b ? 1 : 0);
+            } else if (value instanceof byte[]) {
+                final byte[] array = (byte[]) value;
+                writeInt(BYTE_ARRAY);
+                writeInt(array.length);
+                for (final byte b : array) writeInt(b);
+            } else if (value instanceof char[]) {
+                final char[] array = (char[]) value;
+                writeInt(CHAR_ARRAY);
+                writeInt(array.length);
+                for (final char c : array) writeInt(c);
+            } else if (value instanceof short[]) {
+                final short[] array = (short[]) value;
+                writeInt(SHORT_ARRAY);
+                writeInt(array.length);
+                for (final short s : array) writeInt(s);
+            } else if (value instanceof int[]) {
+                final int[] array = (int[]) value;
+                writeInt(INT_ARRAY);
+                writeInt(array.length);
+                for (final int i : array) writeInt(i);
+            } else if (value instanceof long[]) {
+                final long[] array = (long[]) value;
+                writeInt(LONG_ARRAY);
+                writeInt(array.length);
+                for (final long l : array) writeLong(l);
+            } else if (value instanceof float[]) {
+                final float[] array = (float[]) value;
+                writeInt(FLOAT_ARRAY);
+                writeInt(array.length);
+                for (final float f : array) writeInt(Float.floatToRawIntBits(f));
+            } else if (value instanceof double[]) {
+                final double[] array = (double[]) value;
+                writeInt(DOUBLE_ARRAY);
+                writeInt(array.length);
+                for (final double d : array) writeLong(Double.doubleToRawLongBits(d));
+            } else {
+                throw new IllegalArgumentException("Unsupported annotation value " + value);
+            }
+        }
+
+        private final class Recorder extends ClassVisitor {
+            private Recorder() {
+                super(ASM_VERSION);
+            }
+
+            @Override
+            public void visit(final int version, final int access, final String name, final String signature,
+                              final String superName, final String[] interfaces) {
+                writeInt(access);
+                writeString(name);
+                writeString(superName);
+                writeInt(interfaces == null ? 0 : interfaces.length);
+                if (interfaces != null) {
+                    for (final String anInterface : interfaces) {
+                        writeString(anInterface);
+                    }
+                }
+                writeInt(version);
+            }
+
+            @Override
+            public AnnotationVisitor visitAnnotation(final String desc, final boolean visible) {
+                writeInt(ANNOTATION);
+                writeString(desc);
+                writeInt(visible ? 1 : 0);
+                return new AnnotationRecorder();
+            }
+
+            @Override
+            public FieldVisitor visitField(final int access, final String name, final String desc,
+                                           final String signature, final Object value) {
+                writeInt(FIELD);
+                writeInt(access);
+                writeString(name);
+                writeString(desc);
+                return new FieldVisitor(ASM_VERSION) {
+                    @Override
+                    public AnnotationVisitor visitAnnotation(final String desc, final boolean visible) {
+                        writeInt(ANNOTATION);
+                        writeString(desc);
+                        writeInt(visible ? 1 : 0);
+                        return new AnnotationRecorder();
+                    }
+
+                    @Override
+                    public void visitEnd() {
+                        writeInt(END);
+                    }
+                };
+            }
+
+            @Override
+            public MethodVisitor visitMethod(final int access, final String name, final String desc,
+                                             final String signature, final String[] exceptions) {
+                writeInt(METHOD);
+                writeInt(access);
+                writeString(name);
+                writeString(desc);
+                writeInt(exceptions == null ? 0 : exceptions.length);
+                if (exceptions != null) {
+                    for (final String exception : exceptions) {
+                        writeString(exception);
+                    }
+                }
+                return new MethodVisitor(ASM_VERSION) {
+                    @Override
+                    public AnnotationVisitor visitAnnotation(final String desc, final boolean visible) {
+                        writeInt(ANNOTATION);
+                        writeString(desc);
+                        writeInt(visible ? 1 : 0);
+                        return new AnnotationRecorder();
+                    }
+
+                    @Override
+                    public void visitAnnotableParameterCount(final int parameterCount, final boolean visible) {
+                        writeInt(ANNOTABLE_PARAMETER_COUNT);
+                        writeInt(parameterCount);
+                        writeInt(visible ? 1 : 0);
+                    }
+
+                    @Override
+                    public AnnotationVisitor visitParameterAnnotation(final int parameter, final String desc, final boolean visible) {
+                        writeInt(PARAMETER_ANNOTATION);
+                        writeInt(parameter);
+                        writeString(desc);
+                        writeInt(visible ? 1 : 0);
+                        return new AnnotationRecorder();
+                    }
+
+                    @Override
+                    public void visitEnd() {
+                        writeInt(END);
+                    }
+                };
+            }
+
+            @Override
+            public void visitEnd() {
+                writeInt(END);
+            }
+        }
+
+        private final class AnnotationRecorder extends AnnotationVisitor {
+            private AnnotationRecorder() {
+                super(ASM_VERSION);
+            }
+
+            @Override
+            public void visit(final String name, final Object value) {
+                writeInt(VALUE);
+                writeString(name);
+                writeValue(value);
+            }
+
+            @Override
+            public void visitEnum(final String name, final String desc, final String value) {
+                writeInt(ENUM);
+                writeString(name);
+                writeString(desc);
+                writeString(value);
+            }
+
+            @Override
+            public AnnotationVisitor visitAnnotation(final String name, final String desc) {
+                writeInt(NESTED);
+                writeString(name);
+                writeString(desc);
+                return new AnnotationRecorder();
+            }
+
+            @Override
+            public AnnotationVisitor visitArray(final String name) {
+                writeInt(ARRAY);
+                writeString(name);
+                return new AnnotationRecorder();
+            }
+
+            @Override
+            public void visitEnd() {
+                writeInt(END);
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import org.apache.xbean.finder.util.CacheFiles;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * On disk store of {@link ArchiveIndex} instances.
+ * <p/>
+ * Jar archives are keyed by their path and either their size and last modification
+ * date or the digest of their content. An archive whose key did not change since the
+ * last run is served from its stored index, others are scanned again and their index
+ * is stored for the next time.
+ * <p/>
+ * Usage:
+ * <pre>
+ * final ArchiveIndexCache cache = new ArchiveIndexCache(new File("work/finder"));
+ * final AnnotationFinder finder = new AnnotationFinder(cache.index(new ClasspathArchive(loader, urls)));
+ * </pre>
+ *
+ * @version $Rev$ $Date$
+ */
+public class ArchiveIndexCache {
+
+    private final File directory;
+    private final boolean digest;
+
+    public ArchiveIndexCache(File directory) {
+        this(directory, false);
+    }
+
+    /**
+     * @param directory where indexes are stored
+     * @param digest if true jars are keyed by the SHA-256 digest of their content
+     *               instead of their size and last modification date
+     */
+    public ArchiveIndexCache(File directory, boolean digest) {
+        this.directory = directory;
+        this.digest = digest;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Jar archives are replaced by an IndexedArchive, children of composite archives are
+     * indexed recursively and any other archive is returned as is.
+     *
+     * @param archive the archive to index
+     * @return an archive serving the indexed class structures
+     */
+    public Archive index(Archive archive) {
+        return indexJars(archive, this::index);
+    }
+
+    /**
+     * Replaces the jar archives, those of composite archives included, by the archive the indexer returns.
+     *
+     * @param archive the archive to index
+     * @param indexer indexes a jar archive given the file holding it
+     * @return the indexed archive or the archive itself if there is no jar to index
+     */
+    static Archive indexJars(Archive archive, JarIndexer indexer) {
+        if (archive instanceof JarArchive) {
+            return indexer.index(archive, ((JarArchive) archive).getFile());
+        }
+        if (archive instanceof MappedJarArchive) {
+            return indexer.index(archive, ((MappedJarArchive) archive).getFile());
+        }
+        if (archive instanceof CompositeArchive) {
+            final CompositeArchive composite = (CompositeArchive) archive;
+            final List<Archive> archives = new ArrayList<Archive>();
+            for (Archive child : composite.getArchives()) {
+                archives.add(indexJars(child, indexer));
+            }
+            return new DelegatingCompositeArchive(composite, archives);
+        }
+        return archive;
+    }
+
+    interface JarIndexer {
+        Archive index(Archive archive, File jar);
+    }
+
+    private Archive index(Archive archive, File jar) {
+        try {
+            final String key = key(jar, digest);
+            final File file = new File(directory, (digest ? key : CacheFiles.digest(jar.getAbsolutePath())) + ".index");
+
+            ArchiveIndex index = load(file, jar, key);
+            if (index == null) {
+                index = ArchiveIndex.build(archive);
+                store(file, jar, key, index);
+            }
+            return new IndexedArchive(archive, index);
+        } catch (IOException e) {
+            // the finder scans it as usual and reports the issue if any
+            return archive;
+        }
+    }
+
+    // size and last modification date, or the digest of the content
+    static String key(File jar, boolean digest) throws IOException {
+        if (!digest) {
+            return jar.length() + "/" + jar.lastModified();
+        }
+        return CacheFiles.digest(jar);
+    }
+
+    private ArchiveIndex load(File file, File jar, String key) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            final InputStream in = new BufferedInputStream(new FileInputStream(file));
+            try {
+                final DataInputStream data = new DataInputStream(in);
+                if (!data.readUTF().equals(jar.getAbsolutePath()) && !digest) {
+                    return null;
+                }
+                if (!data.readUTF().equals(key)) {
+                    return null;
+                }
+                return ArchiveIndex.read(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // corrupted or from another version, rebuild it
+            return null;
+        }
+    }
+
+    private void store(File file, final File jar, final String key, final ArchiveIndex index) {
+        CacheFiles.store(directory, file, new CacheFiles.Content() {
+            public void write(DataOutputStream out) throws IOException {
+                out.writeUTF(jar.getAbsolutePath());
+                out.writeUTF(key);
+                index.write(out);
+            }
+        });
+    }
+}
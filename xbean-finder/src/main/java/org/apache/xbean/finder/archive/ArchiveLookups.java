@@ -0,0 +1,99 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Helpers letting the optimized lookups and listings of the archives stay consistent with
+ * subclasses which only customize {@link Archive#getBytecode(String)} or {@link Archive#iterator()}.
+ */
+final class ArchiveLookups {
+    private static final ClassValue<Class<?>> GET_BYTECODE = new ClassValue<Class<?>>() {
+        @Override
+        protected Class<?> computeValue(final Class<?> type) {
+            return declaringClass(type, "getBytecode", String.class);
+        }
+    };
+    private static final ClassValue<Class<?>> ITERATOR = new ClassValue<Class<?>>() {
+        @Override
+        protected Class<?> computeValue(final Class<?> type) {
+            return declaringClass(type, "iterator");
+        }
+    };
+
+    private ArchiveLookups() {
+        // no-op
+    }
+
+    /**
+     * @param archive the archive to look at
+     * @param type the class whose lookup logic is about to be used
+     * @return true if the archive still resolves bytecode with the getBytecode of type
+     */
+    static boolean declares(final Archive archive, final Class<?> type) {
+        return GET_BYTECODE.get(archive.getClass()) == type;
+    }
+
+    /**
+     * @param archive the archive to look at
+     * @param type the class whose listing logic is about to be used
+     * @return true if the archive still lists its entries with the iterator of type
+     */
+    static boolean lists(final Archive archive, final Class<?> type) {
+        return ITERATOR.get(archive.getClass()) == type;
+    }
+
+    private static Class<?> declaringClass(final Class<?> type, final String name, final Class<?>... parameters) {
+        try {
+            return type.getMethod(name, parameters).getDeclaringClass();
+        } catch (final NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the bytecode returned by getBytecode or null if it threw a ClassNotFoundException
+     */
+    static InputStream getBytecode(final Archive archive, final String className) throws IOException {
+        try {
+            return archive.getBytecode(className);
+        } catch (final ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the class name as used in archives (dotted, no generics nor .class suffix)
+     */
+    static String className(String name) {
+        int pos = name.indexOf("<");
+        if (pos > -1) {
+            name = name.substring(0, pos);
+        }
+        if (name.endsWith(".class")) {
+            name = name.substring(0, name.length() - ".class".length()).replace('/', '.');
+        }
+        return name;
+    }
+
+    static String packageName(final String className) {
+        final int dot = className.lastIndexOf('.');
+        return dot < 0 ? "" : className.substring(0, dot);
+    }
+}
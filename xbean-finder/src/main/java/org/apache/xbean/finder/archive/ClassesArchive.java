@@ -55,6 +55,17 @@ public class ClassesArchive implements Archive {
     }
 
     public InputStream getBytecode(String className) throws IOException, ClassNotFoundException {
+        final InputStream bytecode = bytecode(className);
+        if (bytecode == null) throw new ClassNotFoundException(className);
+        return bytecode;
+    }
+
+    @Override
+    public InputStream findBytecode(String className) throws IOException {
+        return ArchiveLookups.declares(this, ClassesArchive.class) ? bytecode(className) : ArchiveLookups.getBytecode(this, className);
+    }
+
+    private InputStream bytecode(String className) throws IOException {
         assert className != null;
 
         int pos = className.indexOf("<");
@@ -74,7 +85,7 @@ public class ClassesArchive implements Archive {
             if (resource != null) return new BufferedInputStream(resource.openStream());
         }
 
-        throw new ClassNotFoundException(className);
+        return null;
     }
 
     public Class<?> loadClass(String className) throws ClassNotFoundException {
@@ -16,20 +16,29 @@
  */
 package org.apache.xbean.finder.archive;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.JarURLConnection;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
- * Supports JarArchive and FileArchive URLs
+ * Supports JarArchive, NestedJarArchive and FileArchive URLs
  *
  * @version $Rev$ $Date$
  */
 public class ClasspathArchive extends CompositeArchive {
+    // when set the index stored in jars and directories at build time is used instead of their bytecode
+    private static final boolean USE_PREBUILT_INDEX = Boolean.getBoolean("xbean.finder.use-prebuilt-index");
+    // when set jars are memory mapped instead of being read through JarFile
+    private static final boolean MAP_JARS = Boolean.getBoolean("xbean.finder.map-jars");
+    // when set jars without a prebuilt index share the index of their previous scan, see SharedArchiveIndexCache
+    private static final boolean SHARED_INDEX_CACHE = Boolean.getBoolean("xbean.finder.shared-index-cache");
 
     private final List<URL> urls = new ArrayList<URL>();
     private final ClassLoader loader;
@@ -46,13 +55,21 @@ public class ClasspathArchive extends CompositeArchive {
 
     public static List<Archive> archives(ClassLoader loader, Iterable<URL> urls) {
         List<Archive> archives = new ArrayList<Archive>();
-
-        for (URL location : urls) {
-            try {
-                archives.add(archive(loader, location));
-            } catch (Exception e) {
-                // TODO This is what we did before, so not too urgent to change, but not ideal
-                e.printStackTrace();
+        // the outer jars of the nested ones, shared by the libraries of a same fat jar
+        final Map<File, MappedJarArchive> outers = new HashMap<File, MappedJarArchive>();
+
+        try {
+            for (URL location : urls) {
+                try {
+                    archives.add(archive(loader, location, outers));
+                } catch (Exception e) {
+                    // TODO This is what we did before, so not too urgent to change, but not ideal
+                    e.printStackTrace();
+                }
+            }
+        } finally {
+            for (MappedJarArchive outer : outers.values()) {
+                NestedJarArchive.close(outer);
             }
         }
 
@@ -60,10 +77,24 @@ public class ClasspathArchive extends CompositeArchive {
     }
 
     public static Archive archive(ClassLoader loader, URL location) {
+        return archive(loader, location, null);
+    }
+
+    private static Archive archive(ClassLoader loader, URL location, Map<File, MappedJarArchive> outers) {
+        final Archive archive = scan(loader, location, outers);
+        final Archive detected = USE_PREBUILT_INDEX ? IndexedArchive.detect(archive) : archive;
+        return SHARED_INDEX_CACHE && detected == archive ? SharedArchiveIndexCache.getInstance().index(archive) : detected;
+    }
+
+    private static Archive scan(ClassLoader loader, URL location, Map<File, MappedJarArchive> outers) {
+
+        if (NestedJarArchive.isNested(location)) {
+
+            return new NestedJarArchive(loader, location, outers);
 
-        if (location.getProtocol().equals("jar")) {
+        } else if (location.getProtocol().equals("jar")) {
 
-            return new JarArchive(loader, location);
+            return jarArchive(loader, location);
 
         } else if (location.getProtocol().equals("file")) {
 
@@ -75,7 +106,7 @@ public class ClasspathArchive extends CompositeArchive {
                 JarURLConnection juc = (JarURLConnection) jarUrl.openConnection();
                 juc.getJarFile();
 
-                return new JarArchive(loader, jarUrl);
+                return jarArchive(loader, jarUrl);
 
             } catch (IOException e) {
 
@@ -87,12 +118,31 @@ public class ClasspathArchive extends CompositeArchive {
         throw new UnsupportedOperationException("unsupported archive type: " + location);
     }
 
+    private static Archive jarArchive(ClassLoader loader, URL location) {
+        return MAP_JARS ? new MappedJarArchive(loader, location) : new JarArchive(loader, location);
+    }
+
     public static List<Archive> archives(ClassLoader loader, URL... urls) {
         return archives(loader, Arrays.asList(urls));
     }
 
     @Override
     public InputStream getBytecode(String className) throws IOException, ClassNotFoundException {
+        final InputStream bytecode = bytecode(className);
+        if (bytecode == null) throw new ClassNotFoundException(className);
+        return bytecode;
+    }
+
+    @Override
+    public InputStream findBytecode(String className) throws IOException {
+        return ArchiveLookups.declares(this, ClasspathArchive.class) ? bytecode(className) : ArchiveLookups.getBytecode(this, className);
+    }
+
+    private InputStream bytecode(String className) throws IOException {
+        // the url listing the package answers directly, the loader covers the rest of the classpath
+        final InputStream routed = route(className);
+        if (routed != null) return routed;
+
         int pos = className.indexOf("<");
         if (pos > -1) {
             className = className.substring(0, pos);
@@ -108,7 +158,7 @@ public class ClasspathArchive extends CompositeArchive {
         URL resource = loader.getResource(className);
         if (resource != null) return resource.openStream();
 
-        throw new ClassNotFoundException(className);
+        return null;
     }
 
     @Override
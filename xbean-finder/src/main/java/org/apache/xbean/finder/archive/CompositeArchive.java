@@ -20,8 +20,14 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.NoSuchElementException;
 
 /**
@@ -29,8 +35,16 @@ import java.util.NoSuchElementException;
  */
 public class CompositeArchive implements Archive, AutoCloseable {
 
+    private static final Archive[] NO_ARCHIVE = new Archive[0];
+
     private final List<Archive> archives = new ArrayList<Archive>();
 
+    // package name -> children listing classes of that package, known once every child was listed
+    private volatile Map<String, Archive[]> routes;
+    // packages of the children listed so far, by child index, null once the routes are known
+    private List<Set<String>> listings;
+    private int unlisted;
+
     public CompositeArchive(Archive... archives) {
         this(Arrays.asList(archives));
     }
@@ -41,19 +55,31 @@ public class CompositeArchive implements Archive, AutoCloseable {
         }
     }
 
+    public List<Archive> getArchives() {
+        return Collections.unmodifiableList(archives);
+    }
+
     public InputStream getBytecode(String className) throws IOException, ClassNotFoundException {
-        for (Archive archive : archives) {
-            try {
-                return archive.getBytecode(className);
-            } catch (ClassNotFoundException e) {
-            }
-        }
+        final InputStream bytecode = lookup(className);
+        if (bytecode == null) throw new ClassNotFoundException(className);
+        return bytecode;
+    }
 
-        throw new ClassNotFoundException(className);
+    @Override
+    public InputStream findBytecode(String className) throws IOException {
+        return ArchiveLookups.declares(this, CompositeArchive.class) ? lookup(className) : ArchiveLookups.getBytecode(this, className);
     }
 
     public Class<?> loadClass(String className) throws ClassNotFoundException {
+        final Archive[] owners = owners(className);
+        for (Archive archive : owners) {
+            try {
+                return archive.loadClass(className);
+            } catch (ClassNotFoundException e) {
+            }
+        }
         for (Archive archive : archives) {
+            if (isOwner(owners, archive)) continue;
             try {
                 return archive.loadClass(className);
             } catch (ClassNotFoundException e) {
@@ -63,9 +89,105 @@ public class CompositeArchive implements Archive, AutoCloseable {
         throw new ClassNotFoundException(className);
     }
 
+    /**
+     * Probes the children listing the package of the class, a single map lookup.
+     *
+     * @param className the class to look up
+     * @return the bytecode or null if no child listing the package of the class contains it
+     */
+    protected InputStream route(String className) throws IOException {
+        for (Archive archive : owners(className)) {
+            final InputStream bytecode = archive.findBytecode(className);
+            if (bytecode != null) return bytecode;
+        }
+        return null;
+    }
+
+    private InputStream lookup(String className) throws IOException {
+        final Archive[] owners = owners(className);
+        for (Archive archive : owners) {
+            final InputStream bytecode = archive.findBytecode(className);
+            if (bytecode != null) return bytecode;
+        }
+
+        // not listed, children can still resolve it (from their classloader for instance)
+        for (Archive archive : archives) {
+            if (isOwner(owners, archive)) continue;
+            final InputStream bytecode = archive.findBytecode(className);
+            if (bytecode != null) return bytecode;
+        }
+        return null;
+    }
+
+    private Archive[] owners(String className) {
+        final Map<String, Archive[]> routes = this.routes;
+        if (routes == null) return NO_ARCHIVE;
+        final Archive[] owners = routes.get(ArchiveLookups.packageName(ArchiveLookups.className(className)));
+        return owners == null ? NO_ARCHIVE : owners;
+    }
+
+    private static boolean isOwner(Archive[] owners, Archive archive) {
+        for (Archive owner : owners) {
+            if (owner == archive) return true;
+        }
+        return false;
+    }
+
     public Iterator<Entry> iterator() {
         if (archives.size() == 1) return archives.get(0).iterator();
-        return new CompositeIterator(archives);
+        return new CompositeIterator();
+    }
+
+    /**
+     * Lists one of the children, for callers reading the children one by one instead of
+     * iterating this archive. Lookups are routed by package once every child was listed
+     * completely, through this method or {@link #iterator()}.
+     *
+     * @param child one of {@link #getArchives()}
+     * @return the entries of the child
+     */
+    public Iterator<Entry> iterator(Archive child) {
+        for (int i = 0; i < archives.size(); i++) {
+            if (archives.get(i) == child) return new RecordingIterator(i);
+        }
+        throw new IllegalArgumentException("Not a child of this archive: " + child);
+    }
+
+    /**
+     * Called when the child at the given index was listed completely.
+     *
+     * @param index the index of the child in {@link #getArchives()}
+     * @param packages the packages of the classes the child lists
+     */
+    synchronized void listed(int index, Set<String> packages) {
+        if (routes != null) return;
+        if (listings == null) {
+            listings = new ArrayList<Set<String>>(Collections.<Set<String>>nCopies(archives.size(), null));
+            unlisted = archives.size();
+        }
+        if (listings.set(index, packages) == null) {
+            unlisted--;
+        }
+        if (unlisted > 0) return;
+
+        // a complete listing is known, lookups can go straight to the children owning the package
+        final Map<String, Set<Archive>> owners = new HashMap<String, Set<Archive>>();
+        for (int i = 0; i < listings.size(); i++) {
+            for (String pkg : listings.get(i)) {
+                Set<Archive> set = owners.get(pkg);
+                if (set == null) {
+                    set = new LinkedHashSet<Archive>();
+                    owners.put(pkg, set);
+                }
+                set.add(archives.get(i));
+            }
+        }
+        final Map<String, Archive[]> routes = new HashMap<String, Archive[]>(owners.size() * 4 / 3 + 1);
+        for (Map.Entry<String, Set<Archive>> entry : owners.entrySet()) {
+            routes.put(entry.getKey(), entry.getValue().toArray(new Archive[entry.getValue().size()]));
+        }
+        listings = null;
+        this.routes = routes;
     }
 
     @Override
@@ -82,24 +204,23 @@ public class CompositeArchive implements Archive, AutoCloseable {
                 });
     }
 
-    private static class CompositeIterator implements Iterator<Entry> {
+    private class CompositeIterator implements Iterator<Entry> {
 
-        private Iterator<Archive> archives;
+        private int index;
         private Iterator<Entry> current;
 
-        private CompositeIterator(Iterable<Archive> archives) {
-            this.archives = archives.iterator();
-            if (this.archives.hasNext()) {
-                current = this.archives.next().iterator();
+        private CompositeIterator() {
+            if (!archives.isEmpty()) {
+                current = new RecordingIterator(0);
             }
         }
 
         public boolean hasNext() {
             if (current == null) return false;
             if (current.hasNext()) return true;
-            
-            if (archives.hasNext()) {
-                current = archives.next().iterator();
+
+            if (index + 1 < archives.size()) {
+                current = new RecordingIterator(++index);
                 return hasNext();
             }
             return false;
@@ -107,7 +228,6 @@ public class CompositeArchive implements Archive, AutoCloseable {
 
         public Entry next() {
             if (!hasNext()) throw new NoSuchElementException();
-
             return current.next();
         }
 
@@ -115,4 +235,38 @@ public class CompositeArchive implements Archive, AutoCloseable {
             throw new UnsupportedOperationException();
         }
     }
+
+    // records the packages listed by a child
+    private class RecordingIterator implements Iterator<Entry> {
+
+        private final int index;
+        private final Iterator<Entry> entries;
+        private Set<String> packages = new HashSet<String>();
+
+        private RecordingIterator(int index) {
+            this.index = index;
+            this.entries = archives.get(index).iterator();
+        }
+
+        public boolean hasNext() {
+            if (entries.hasNext()) return true;
+            if (packages != null) {
+                listed(index, packages);
+                packages = null;
+            }
+            return false;
+        }
+
+        public Entry next() {
+            final Entry entry = entries.next();
+            if (packages != null) {
+                packages.add(ArchiveLookups.packageName(entry.getName()));
+            }
+            return entry;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
 }
@@ -0,0 +1,59 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Set;
+
+/**
+ * Composite iterating over decorated children while class and bytecode
+ * lookups keep the semantic of the original composite (a ClasspathArchive
+ * resolves them with its classloader for instance).
+ *
+ * @version $Rev$ $Date$
+ */
+class DelegatingCompositeArchive extends CompositeArchive {
+
+    private final CompositeArchive original;
+
+    DelegatingCompositeArchive(CompositeArchive original, Iterable<Archive> archives) {
+        super(archives);
+        this.original = original;
+    }
+
+    @Override
+    public InputStream getBytecode(String className) throws IOException, ClassNotFoundException {
+        return original.getBytecode(className);
+    }
+
+    @Override
+    public InputStream findBytecode(String className) throws IOException {
+        return ArchiveLookups.declares(this, DelegatingCompositeArchive.class) ? original.findBytecode(className) : ArchiveLookups.getBytecode(this, className);
+    }
+
+    @Override
+    public Class<?> loadClass(String className) throws ClassNotFoundException {
+        return original.loadClass(className);
+    }
+
+    // the decorated children list the classes of the original ones, lookups are served by the original
+    @Override
+    void listed(int index, Set<String> packages) {
+        original.listed(index, packages);
+    }
+}
@@ -16,6 +16,8 @@
  */
 package org.apache.xbean.finder.archive;
 
+import org.apache.xbean.finder.filter.Filter;
+
 import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -36,6 +38,9 @@ public class FileArchive implements Archive {
     private final String basePackage;
     private final File dir;
     private List<String> list;
+    // listing restricted to the packages a filter may accept, see iterator(Filter)
+    private Filter scope;
+    private List<String> scopedList;
     private final MJarSupport mjar = new MJarSupport();
 
     public FileArchive(ClassLoader loader, URL url) {
@@ -67,6 +72,17 @@ public class FileArchive implements Archive {
     }
 
     public InputStream getBytecode(String className) throws IOException, ClassNotFoundException {
+        final InputStream bytecode = bytecode(className);
+        if (bytecode == null) throw new ClassNotFoundException(className);
+        return bytecode;
+    }
+
+    @Override
+    public InputStream findBytecode(String className) throws IOException {
+        return ArchiveLookups.declares(this, FileArchive.class) ? bytecode(className) : ArchiveLookups.getBytecode(this, className);
+    }
+
+    private InputStream bytecode(String className) throws IOException {
         int pos = className.indexOf("<");
         if (pos > -1) {
             className = className.substring(0, pos);
@@ -89,7 +105,7 @@ public class FileArchive implements Archive {
         URL resource = loader.getResource(className);
         if (resource != null) return new BufferedInputStream(resource.openStream());
 
-        throw new ClassNotFoundException(className);
+        return null;
     }
 
 
@@ -103,8 +119,21 @@ public class FileArchive implements Archive {
         return new ArchiveIterator(this, _iterator());
     }
 
+    /**
+     * Lists the entries without walking the directories of packages the filter can't accept.
+     * The entries are not filtered by this method, only the pruned directories are missing.
+     */
+    Iterator<Entry> iterator(Filter scope) {
+        return new ArchiveIterator(this, _iterator(scope));
+    }
+
     public Iterator<String> _iterator() {
+        return _iterator(null);
+    }
+
+    private Iterator<String> _iterator(Filter scope) {
         if (list != null) return list.iterator();
+        if (scope != null && scope == this.scope) return scopedList.iterator();
 
         final File manifest = new File(dir, "META-INF/MANIFEST.MF");
         if (manifest.exists()) {
@@ -125,19 +154,33 @@ public class FileArchive implements Archive {
             }
         }
 
-        list = file(dir);
-        return list.iterator();
+        final List<String> names = file(dir, scope);
+        if (scope == null) {
+            list = names;
+        } else {
+            this.scope = scope;
+            scopedList = names;
+        }
+        return names.iterator();
+    }
+
+    // the directory is listed again on the next iteration
+    void reset() {
+        list = null;
+        scope = null;
+        scopedList = null;
     }
 
-    private List<String> file(File dir) {
+    private List<String> file(File dir, Filter scope) {
         List<String> classNames = new ArrayList<String>();
-        if (dir.isDirectory()) {
-            scanDir(dir, classNames, (basePackage.length() > 0) ? (basePackage + ".") : basePackage);
+        final String packageName = (basePackage.length() > 0) ? (basePackage + ".") : basePackage;
+        if (dir.isDirectory() && (scope == null || scope.mayAccept(packageName))) {
+            scanDir(dir, classNames, packageName, scope);
         }
         return classNames;
     }
 
-    private void scanDir(File dir, List<String> classNames, String packageName) {
+    private void scanDir(File dir, List<String> classNames, String packageName, Filter scope) {
         File[] files = dir.listFiles();
         // using /tmp/. as dir we can get null
         if (files == null) {
@@ -145,7 +188,10 @@ public class FileArchive implements Archive {
         }
         for (File file : files) {
             if (file.isDirectory()) {
-                scanDir(file, classNames, packageName + file.getName() + ".");
+                final String subPackage = packageName + file.getName() + ".";
+                // META-INF.versions is always read, it is the way multi-release classes are found
+                if (scope != null && !subPackage.startsWith("META-INF.") && !scope.mayAccept(subPackage)) continue;
+                scanDir(file, classNames, subPackage, scope);
             } else if (file.getName().endsWith(".class")) {
                 String name = file.getName();
                 name = name.substring(0, name.length() - 6);
@@ -37,16 +37,36 @@ public class FilteredArchive implements Archive, AutoCloseable{
         this.filter = filter;
     }
 
+    public Archive getArchive() {
+        return archive;
+    }
+
     public InputStream getBytecode(String className) throws IOException, ClassNotFoundException {
         return archive.getBytecode(className);
     }
 
+    @Override
+    public InputStream findBytecode(String className) throws IOException {
+        return ArchiveLookups.declares(this, FilteredArchive.class) ? archive.findBytecode(className) : ArchiveLookups.getBytecode(this, className);
+    }
+
     public Class<?> loadClass(String className) throws ClassNotFoundException {
         return archive.loadClass(className);
     }
 
     public Iterator<Entry> iterator() {
-        return new FilteredIterator(archive.iterator());
+        return new FilteredIterator(scopedIterator());
+    }
+
+    // lets the archive skip the packages the filter can't accept instead of listing them
+    private Iterator<Entry> scopedIterator() {
+        if (archive instanceof FileArchive && ArchiveLookups.lists(archive, FileArchive.class)) {
+            return ((FileArchive) archive).iterator(filter);
+        }
+        if (archive instanceof JarArchive && ArchiveLookups.lists(archive, JarArchive.class)) {
+            return ((JarArchive) archive).iterator(filter);
+        }
+        return archive.iterator();
     }
 
     @Override
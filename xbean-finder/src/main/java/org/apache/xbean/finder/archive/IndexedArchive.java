@@ -0,0 +1,215 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import org.objectweb.asm.ClassVisitor;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Archive whose entries are served from an {@link ArchiveIndex}.
+ * <p/>
+ * The AnnotationFinder replays the {@link IndexedEntry} instances instead of
+ * parsing their bytecode, the bytecode and the classes themselves are still
+ * read from the wrapped archive.
+ * <p/>
+ * {@link #detect(Archive)} serves jars and classes directories from the index
+ * stored under {@link ArchiveIndex#LOCATION} at build time.
+ *
+ * @version $Rev$ $Date$
+ */
+public class IndexedArchive implements Archive, AutoCloseable {
+
+    private final Archive archive;
+    private final ArchiveIndex index;
+
+    public IndexedArchive(Archive archive, ArchiveIndex index) {
+        this.archive = archive;
+        this.index = index;
+    }
+
+    /**
+     * Jar (mapped or not) and file archives containing an up to date prebuilt index are replaced by an
+     * IndexedArchive, children of composite archives are detected recursively and any
+     * other archive is returned as is.
+     * <p/>
+     * An index is only used if it lists exactly the classes of the archive, and for a
+     * directory if no class file is newer than the index, so a stale or merged index
+     * (shaded jars, incremental compilation) falls back to a regular scan.
+     *
+     * @param archive the archive to look into
+     * @return an archive serving the prebuilt class structures when possible
+     */
+    public static Archive detect(Archive archive) {
+        if (archive instanceof CompositeArchive) {
+            final CompositeArchive composite = (CompositeArchive) archive;
+            final List<Archive> archives = new ArrayList<Archive>();
+            boolean found = false;
+            for (Archive child : composite.getArchives()) {
+                final Archive detected = detect(child);
+                found |= detected != child;
+                archives.add(detected);
+            }
+            return found ? new DelegatingCompositeArchive(composite, archives) : archive;
+        }
+
+        try {
+            if (archive instanceof JarArchive) {
+                final InputStream in = ((JarArchive) archive).getEntry(ArchiveIndex.LOCATION);
+                if (in != null) {
+                    return detected(archive, read(in), Long.MAX_VALUE);
+                }
+            } else if (archive instanceof MappedJarArchive) {
+                final InputStream in = ((MappedJarArchive) archive).getEntry(ArchiveIndex.LOCATION);
+                if (in != null) {
+                    return detected(archive, read(in), Long.MAX_VALUE);
+                }
+            } else if (archive instanceof NestedJarArchive) {
+                final InputStream in = ((NestedJarArchive) archive).getEntry(ArchiveIndex.LOCATION);
+                if (in != null) {
+                    return detected(archive, read(in), Long.MAX_VALUE);
+                }
+            } else if (archive instanceof FileArchive) {
+                final File file = new File(((FileArchive) archive).getDir(), ArchiveIndex.LOCATION);
+                if (file.isFile()) {
+                    return detected(archive, read(new FileInputStream(file)), file.lastModified());
+                }
+            }
+        } catch (IOException e) {
+            // unreadable index, scan the archive
+        }
+        return archive;
+    }
+
+    private static ArchiveIndex read(InputStream in) throws IOException {
+        try {
+            return ArchiveIndex.read(new BufferedInputStream(in));
+        } finally {
+            in.close();
+        }
+    }
+
+    private static Archive detected(Archive archive, ArchiveIndex index, long indexed) {
+        final Set<String> classes = new HashSet<String>(index.getClassNames());
+        int count = 0;
+        for (Entry entry : archive) {
+            if (!classes.contains(entry.getName())) {
+                return archive;
+            }
+            count++;
+        }
+        if (count != classes.size()) {
+            return archive;
+        }
+
+        if (archive instanceof FileArchive) {
+            final File dir = ((FileArchive) archive).getDir();
+            for (String className : classes) {
+                if (new File(dir, className.replace('.', '/') + ".class").lastModified() > indexed) {
+                    return archive;
+                }
+            }
+        }
+        return new IndexedArchive(archive, index);
+    }
+
+    public Archive getArchive() {
+        return archive;
+    }
+
+    public ArchiveIndex getIndex() {
+        return index;
+    }
+
+    public InputStream getBytecode(String className) throws IOException, ClassNotFoundException {
+        return archive.getBytecode(className);
+    }
+
+    @Override
+    public InputStream findBytecode(String className) throws IOException {
+        return ArchiveLookups.declares(this, IndexedArchive.class) ? archive.findBytecode(className) : ArchiveLookups.getBytecode(this, className);
+    }
+
+    public Class<?> loadClass(String className) throws ClassNotFoundException {
+        return archive.loadClass(className);
+    }
+
+    public Iterator<Entry> iterator() {
+        return new Iterator<Entry>() {
+            private int next;
+
+            public boolean hasNext() {
+                return next < index.size();
+            }
+
+            public Entry next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return new IndexedEntry(next++);
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException("remove");
+            }
+        };
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (archive instanceof AutoCloseable) {
+            ((AutoCloseable) archive).close();
+        }
+    }
+
+    public final class IndexedEntry implements Entry {
+        private final int position;
+
+        private IndexedEntry(int position) {
+            this.position = position;
+        }
+
+        public String getName() {
+            return index.getClassName(position);
+        }
+
+        public InputStream getBytecode() throws IOException {
+            try {
+                return archive.getBytecode(getName());
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e);
+            }
+        }
+
+        /**
+         * Replays the indexed class structure on the visitor.
+         *
+         * @param visitor the visitor to drive
+         */
+        public void accept(ClassVisitor visitor) {
+            index.accept(position, visitor);
+        }
+    }
+}
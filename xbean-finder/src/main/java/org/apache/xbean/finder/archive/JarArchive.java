@@ -16,18 +16,18 @@
  */
 package org.apache.xbean.finder.archive;
 
+import org.apache.xbean.finder.filter.Filter;
+
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.Iterator;
-import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
@@ -52,6 +52,21 @@ public class JarArchive implements Archive, AutoCloseable {
 
         this.loader = loader;
         this.url = url;
+        File jarFile = null;
+        try{
+            jarFile = toFile(url);
+            jar = new JarFile(jarFile);
+
+        }catch(IOException e){
+            throw new IllegalStateException("Cannot open jar(zip) '"
+                    + (jarFile != null ? jarFile.getAbsolutePath() : FileArchive.decode(String.valueOf(url))) + "'", e);
+        }
+    }
+
+    /*
+     * Supports only 'file:/...' or 'jar:file:/...!/' URLs
+     */
+    static File toFile(URL url) throws FileNotFoundException {
         File jarFile = null;
         String jarPath;
         int idx;
@@ -71,38 +86,29 @@ public class JarArchive implements Archive, AutoCloseable {
             }
         }
 
-        try{
-            // handle 'file:/...' URL
-            if("file".equalsIgnoreCase(url.getProtocol())){
-
-                // Testing if file DOEN't exists AND trying
-                //  substrings up to every '!/{...}' as path
-                idx = 0;
-                jarPath = FileArchive.decode(url.getPath());
-                for(String jp = jarPath; !(jarFile = new File(jp)).exists()
-                        && (idx = jarPath.indexOf("!/", idx + 1)) > 0;
-                        jp = jarPath.substring(0, idx)){}
-
-                // All substrings attempted, but referenced file wasn't discovered
-                if(!jarFile.exists()){
-
-                    // To be caught later and wrapped into IllegalStateEx - default behavior
-                    throw new FileNotFoundException(FileArchive.decode(String.valueOf(url)));
-                }
+        // handle 'file:/...' URL
+        if("file".equalsIgnoreCase(url.getProtocol())){
 
-            }else{
-                throw new IllegalArgumentException(
-                        "Please provide 'file:/...' or 'jar:file:/...!/' URL"
-                                + " instead of '" + FileArchive.decode(String.valueOf(url)) + "'");
-            }
+            // Testing if file DOEN't exists AND trying
+            //  substrings up to every '!/{...}' as path
+            idx = 0;
+            jarPath = FileArchive.decode(url.getPath());
+            for(String jp = jarPath; !(jarFile = new File(jp)).exists()
+                    && (idx = jarPath.indexOf("!/", idx + 1)) > 0;
+                    jp = jarPath.substring(0, idx)){}
 
-            jar = new JarFile(jarFile);
+            // All substrings attempted, but referenced file wasn't discovered
+            if(!jarFile.exists()){
 
-        }catch(IOException e){
-            throw new IllegalStateException("Cannot open jar(zip) '"
-                    + jarFile != null ? // why can it be null? but since compiler thinks so...
-                            jarFile.getAbsolutePath()
-                            : FileArchive.decode(String.valueOf(url)) + "'", e);
+                // To be caught later and wrapped into IllegalStateEx - default behavior
+                throw new FileNotFoundException(FileArchive.decode(String.valueOf(url)));
+            }
+            return jarFile;
+
+        }else{
+            throw new IllegalArgumentException(
+                    "Please provide 'file:/...' or 'jar:file:/...!/' URL"
+                            + " instead of '" + FileArchive.decode(String.valueOf(url)) + "'");
         }
     }
 
@@ -110,7 +116,22 @@ public class JarArchive implements Archive, AutoCloseable {
         return url;
     }
 
+    public File getFile() {
+        return new File(jar.getName());
+    }
+
     public InputStream getBytecode(String className) throws IOException, ClassNotFoundException {
+        final InputStream bytecode = bytecode(className);
+        if (bytecode == null) throw new ClassNotFoundException(className);
+        return bytecode;
+    }
+
+    @Override
+    public InputStream findBytecode(String className) throws IOException {
+        return ArchiveLookups.declares(this, JarArchive.class) ? bytecode(className) : ArchiveLookups.getBytecode(this, className);
+    }
+
+    private InputStream bytecode(String className) throws IOException {
         int pos = className.indexOf("<");
         if (pos > -1) {
             className = className.substring(0, pos);
@@ -124,11 +145,19 @@ public class JarArchive implements Archive, AutoCloseable {
         }
 
         ZipEntry entry = jar.getEntry(className);
-        if (entry == null) throw new ClassNotFoundException(className);
+        if (entry == null) return null;
 
         return jar.getInputStream(entry);
     }
 
+    /**
+     * @param name the entry name
+     * @return the entry content or null if there is no such entry
+     */
+    InputStream getEntry(String name) throws IOException {
+        final ZipEntry entry = jar.getEntry(name);
+        return entry == null ? null : jar.getInputStream(entry);
+    }
 
     public Class<?> loadClass(String className) throws ClassNotFoundException {
         // assume the loader knows how to handle mjar release if activated
@@ -136,7 +165,15 @@ public class JarArchive implements Archive, AutoCloseable {
     }
 
     public Iterator<Entry> iterator() {
-        return new JarIterator();
+        return new JarIterator(null);
+    }
+
+    /**
+     * Lists the entries skipping, while the central directory is read, the packages the filter can't accept.
+     * The other entries are not filtered by this method.
+     */
+    Iterator<Entry> iterator(Filter scope) {
+        return new JarIterator(scope);
     }
 
     @Override
@@ -146,10 +183,17 @@ public class JarArchive implements Archive, AutoCloseable {
 
     private class JarIterator implements Iterator<Entry> {
 
-        private final Iterator<JarEntry> stream;
+        private final Enumeration<JarEntry> stream;
+        private final Filter scope;
+        // base entry name -> versioned entry name, empty if the jar is not a multi-release one
+        private Map<String, String> overlay = Collections.emptyMap();
         private Entry next;
+        // entries of a directory are usually contiguous, the answer for the previous one is reused
+        private String directory;
+        private boolean directoryInScope;
 
-        private JarIterator() {
+        private JarIterator(Filter scope) {
+            this.scope = scope;
             final Enumeration<JarEntry> entries = jar.entries();
             try {
                 final Manifest manifest = jar.getManifest();
@@ -159,42 +203,19 @@ public class JarArchive implements Archive, AutoCloseable {
             } catch (IOException e) {
                 // no-op
             }
-            if (mjar.isMjar()) { // sort it to ensure we browse META-INF/versions first
-                final List<JarEntry> list = new ArrayList<JarEntry>(Collections.list(entries));
-                Collections.sort(list, new Comparator<JarEntry>() {
-                    public int compare(JarEntry o1, JarEntry o2) {
-                        final String n2 = o2.getName();
-                        final String n1 = o1.getName();
-                        final boolean n1v = n1.startsWith("META-INF/versions/");
-                        final boolean n2v = n2.startsWith("META-INF/versions/");
-                        if (n1v && n2v) {
-                            return n1.compareTo(n2);
-                        }
-                        if (n1v) {
-                            return -1;
-                        }
-                        if (n2v) {
-                            return 1;
-                        }
-                        try {
-                            return Integer.parseInt(n2) - Integer.parseInt(n1);
-                        } catch (final NumberFormatException nfe) {
-                            return n2.compareTo(n1);
-                        }
-                    }
-                });
-                stream = list.iterator();
-            } else {
-                stream = Collections.list(entries).iterator();
+            if (mjar.isMjar()) {
+                // one pass over the names, the base entries are then streamed as for any jar
+                overlay = MJarSupport.overlay(jar.entries());
             }
+            stream = entries;
         }
 
         private boolean advance() {
             if (next != null) {
                 return true;
             }
-            while (stream.hasNext()) {
-                final JarEntry entry = stream.next();
+            while (stream.hasMoreElements()) {
+                final JarEntry entry = stream.nextElement();
                 final String entryName = entry.getName();
                 if (entry.isDirectory() || !entryName.endsWith(".class") || entryName.endsWith("module-info.class")) {
                     continue;
@@ -212,12 +233,25 @@ public class JarArchive implements Archive, AutoCloseable {
                     continue;
                 }
 
+                if (scope != null && !inScope(entryName)) {
+                    continue;
+                }
+
                 next = new ClassEntry(entry, className.replace('/', '.'));
                 return true;
             }
             return false;
         }
 
+        private boolean inScope(String entryName) {
+            final int slash = entryName.lastIndexOf('/') + 1;
+            if (directory == null || directory.length() != slash || !entryName.startsWith(directory)) {
+                directory = entryName.substring(0, slash);
+                directoryInScope = scope.mayAccept(directory.replace('/', '.'));
+            }
+            return directoryInScope;
+        }
+
         public boolean hasNext() {
             return advance();
         }
@@ -247,11 +281,11 @@ public class JarArchive implements Archive, AutoCloseable {
             }
 
             public InputStream getBytecode() throws IOException {
-                if (mjar.isMjar()) {
-                    // JarFile handles it for us :)
-                    final ZipEntry entry = jar.getJarEntry(this.entry.getName());
-                    if (entry != null) {
-                        return jar.getInputStream(entry);
+                final String versioned = overlay.get(entry.getName());
+                if (versioned != null) {
+                    final ZipEntry versionedEntry = jar.getEntry(versioned);
+                    if (versionedEntry != null) {
+                        return jar.getInputStream(versionedEntry);
                     }
                 }
                 return jar.getInputStream(entry);
@@ -20,10 +20,12 @@ import static java.util.Arrays.asList;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
 
 // helper to share the multijar release logic in a single place and avoid to impl it in all archives
 public class MJarSupport {
@@ -119,6 +121,50 @@ public class MJarSupport {
         }
     }
 
+    /**
+     * Reads the META-INF/versions overlay of a multi-release jar in a single pass over its entry names,
+     * base entries are neither copied nor sorted.
+     *
+     * @param entries the entries of the jar
+     * @return base entry name (org/foo/Bar.class) to the name of the versioned entry the runtime uses,
+     *         only classes having an applicable versioned entry are listed
+     */
+    public static Map<String, String> overlay(final Enumeration<? extends ZipEntry> entries) {
+        final Map<String, String> overlay = new HashMap<String, String>();
+        if (!SUPPORT_MJAR) {
+            return overlay;
+        }
+
+        final Map<String, Integer> versions = new HashMap<String, Integer>();
+        final int prefix = "META-INF/versions/".length();
+        while (entries.hasMoreElements()) {
+            final String name = entries.nextElement().getName();
+            if (!name.startsWith("META-INF/versions/") || !name.endsWith(".class")) {
+                continue;
+            }
+            final int sep = name.indexOf('/', prefix);
+            if (sep < 0) {
+                continue;
+            }
+            final int major;
+            try {
+                major = Integer.parseInt(name.substring(prefix, sep));
+            } catch (final NumberFormatException nfe) {
+                continue;
+            }
+            if (major > MJAR_VERSION) {
+                continue;
+            }
+            final String base = name.substring(sep + 1);
+            final Integer existing = versions.get(base);
+            if (existing == null || existing < major) {
+                versions.put(base, major);
+                overlay.put(base, name);
+            }
+        }
+        return overlay;
+    }
+
     public static class Clazz {
         private final String path;
         private final int version;
@@ -0,0 +1,490 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.jar.Manifest;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Jar archive reading the entries of a memory mapped jar.
+ * <p/>
+ * The central directory is parsed directly from the mapping, stored entries are
+ * served as slices of the mapping and deflated ones are inflated into an array of
+ * their exact size, so the bytecode reaches the ClassReader without any stream copy.
+ * <p/>
+ * Limitations: the jar must be smaller than 2GB and not encrypted. The mapping
+ * is released by the garbage collector, not by {@link #close()}, so the file may
+ * stay locked on Windows until then.
+ *
+ * @version $Rev$ $Date$
+ */
+public class MappedJarArchive implements Archive, AutoCloseable {
+
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_HEADER = 0x06054b50;
+    private static final int ZIP64_END_HEADER = 0x06064b50;
+    private static final int ZIP64_LOCATOR = 0x07064b50;
+    private static final int ZIP64_EXTRA = 0x0001;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+
+    private final ClassLoader loader;
+    private final URL url;
+    private final File file;
+    private final ByteBuffer buffer;
+    private final int base;
+    private final Map<String, Integer> entries = new LinkedHashMap<String, Integer>();
+    private final Deque<Inflater> inflaters = new ArrayDeque<Inflater>();
+    private final MJarSupport mjar = new MJarSupport();
+
+    /*
+     * Supports only 'file:/...' or 'jar:file:/...!/' URLs
+     */
+    public MappedJarArchive(ClassLoader loader, URL url) {
+        this.loader = loader;
+        this.url = url;
+        File jarFile = null;
+        try {
+            jarFile = JarArchive.toFile(url);
+            buffer = map(jarFile);
+            base = readCentralDirectory();
+            loadManifest();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot open jar(zip) '"
+                    + (jarFile != null ? jarFile.getAbsolutePath() : FileArchive.decode(String.valueOf(url))) + "'", e);
+        }
+        this.file = jarFile;
+    }
+
+    /**
+     * Reads the jar from a buffer instead of mapping a file, used for nested jars.
+     *
+     * @param file the file holding the jar
+     * @param buffer the content of the jar
+     */
+    MappedJarArchive(ClassLoader loader, URL url, File file, ByteBuffer buffer) throws IOException {
+        this.loader = loader;
+        this.url = url;
+        this.file = file;
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        this.base = readCentralDirectory();
+        loadManifest();
+    }
+
+    public URL getUrl() {
+        return url;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public InputStream getBytecode(String className) throws IOException, ClassNotFoundException {
+        final InputStream bytecode = bytecode(className);
+        if (bytecode == null) throw new ClassNotFoundException(className);
+        return bytecode;
+    }
+
+    @Override
+    public InputStream findBytecode(String className) throws IOException {
+        return ArchiveLookups.declares(this, MappedJarArchive.class) ? bytecode(className) : ArchiveLookups.getBytecode(this, className);
+    }
+
+    private InputStream bytecode(String className) throws IOException {
+        int pos = className.indexOf("<");
+        if (pos > -1) {
+            className = className.substring(0, pos);
+        }
+        pos = className.indexOf(">");
+        if (pos > -1) {
+            className = className.substring(0, pos);
+        }
+        if (!className.endsWith(".class")) {
+            className = className.replace('.', '/') + ".class";
+        }
+
+        final Integer entry = entries.get(className);
+        if (entry == null) return null;
+
+        return new ByteArrayInputStream(read(entry));
+    }
+
+    public Class<?> loadClass(String className) throws ClassNotFoundException {
+        return loader.loadClass(className);
+    }
+
+    public Iterator<Entry> iterator() {
+        return new MappedIterator();
+    }
+
+    /**
+     * @param name the entry name
+     * @return the entry content or null if there is no such entry
+     */
+    InputStream getEntry(String name) throws IOException {
+        final Integer entry = entries.get(name);
+        return entry == null ? null : new ByteArrayInputStream(read(entry));
+    }
+
+    /**
+     * @param name the entry name
+     * @return a read only view on the entry content, a slice of the mapping if the entry is stored, or null if there is no such entry
+     */
+    ByteBuffer getEntryBuffer(String name) throws IOException {
+        final Integer entry = entries.get(name);
+        return entry == null ? null : buffer(entry);
+    }
+
+    @Override
+    public void close() throws Exception {
+        synchronized (inflaters) {
+            for (Inflater inflater : inflaters) {
+                inflater.end();
+            }
+            inflaters.clear();
+        }
+    }
+
+    private static ByteBuffer map(File file) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Jar bigger than 2GB, use JarArchive instead");
+            }
+            final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            return mapped;
+        } finally {
+            // the mapping stays valid once the channel is closed
+            raf.close();
+        }
+    }
+
+    /**
+     * Indexes the central directory records by entry name.
+     *
+     * @return the offset of the archive in the file, not 0 when some data is prepended to the zip
+     */
+    private int readCentralDirectory() throws IOException {
+        final int end = findEnd();
+        long count = buffer.getShort(end + 10) & 0xFFFF;
+        long size = buffer.getInt(end + 12) & 0xFFFFFFFFL;
+        long offset = buffer.getInt(end + 16) & 0xFFFFFFFFL;
+        int directoryEnd = end;
+
+        final int locator = end - 20;
+        if (locator >= 0 && buffer.getInt(locator) == ZIP64_LOCATOR) {
+            final long zip64End = buffer.getLong(locator + 8);
+            if (zip64End < 0 || zip64End > locator - 56 || buffer.getInt((int) zip64End) != ZIP64_END_HEADER) {
+                // offset relative to prepended data, rely on the zip64 end being just before its locator
+                if (buffer.getInt(locator - 56) != ZIP64_END_HEADER) {
+                    throw new IOException("Invalid zip64 end of central directory");
+                }
+                directoryEnd = locator - 56;
+            } else {
+                directoryEnd = (int) zip64End;
+            }
+            count = buffer.getLong(directoryEnd + 32);
+            size = buffer.getLong(directoryEnd + 40);
+            offset = buffer.getLong(directoryEnd + 48);
+        }
+
+        final long start = directoryEnd - size;
+        if (start < 0 || start < offset) {
+            throw new IOException("Invalid central directory");
+        }
+
+        int position = (int) start;
+        for (long i = 0; i < count; i++) {
+            if (buffer.getInt(position) != CENTRAL_HEADER) {
+                throw new IOException("Invalid central directory header at " + position);
+            }
+            final int nameLength = buffer.getShort(position + 28) & 0xFFFF;
+            final int extraLength = buffer.getShort(position + 30) & 0xFFFF;
+            final int commentLength = buffer.getShort(position + 32) & 0xFFFF;
+            entries.put(string(position + 46, nameLength), position);
+            position += 46 + nameLength + extraLength + commentLength;
+        }
+        return (int) (start - offset);
+    }
+
+    private int findEnd() throws IOException {
+        final int min = Math.max(0, buffer.limit() - 22 - 0xFFFF);
+        for (int position = buffer.limit() - 22; position >= min; position--) {
+            if (buffer.getInt(position) == END_HEADER
+                    && position + 22 + (buffer.getShort(position + 20) & 0xFFFF) == buffer.limit()) {
+                return position;
+            }
+        }
+        throw new IOException("No end of central directory, not a zip file");
+    }
+
+    private void loadManifest() throws IOException {
+        final InputStream manifest = getEntry("META-INF/MANIFEST.MF");
+        if (manifest != null) {
+            mjar.load(new Manifest(manifest));
+        }
+        if (mjar.isMjar()) {
+            for (String name : entries.keySet()) {
+                if (name.startsWith("META-INF/versions/") && name.endsWith(".class")) {
+                    mjar.visit(name.substring(0, name.length() - 6));
+                }
+            }
+        }
+    }
+
+    private String string(int position, int length) {
+        final byte[] bytes = new byte[length];
+        final ByteBuffer slice = buffer.duplicate();
+        slice.position(position);
+        slice.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return a read only view on the entry content, a slice of the mapping for stored entries
+     */
+    private ByteBuffer buffer(int entry) throws IOException {
+        if (method(entry) == STORED) {
+            final ByteBuffer slice = buffer.duplicate();
+            final int data = data(entry);
+            slice.limit(data + (int) sizes(entry)[0]).position(data);
+            return slice.slice().asReadOnlyBuffer();
+        }
+        return ByteBuffer.wrap(read(entry)).asReadOnlyBuffer();
+    }
+
+    private byte[] read(int entry) throws IOException {
+        final int method = method(entry);
+        final long[] sizes = sizes(entry);
+        if (sizes[0] > Integer.MAX_VALUE) {
+            throw new IOException("Entry too big: " + string(entry + 46, buffer.getShort(entry + 28) & 0xFFFF));
+        }
+
+        final byte[] bytes = new byte[(int) sizes[0]];
+        final ByteBuffer slice = buffer.duplicate();
+        slice.position(data(entry));
+        if (method == STORED) {
+            slice.get(bytes);
+            return bytes;
+        }
+
+        // Inflater only takes arrays on Java 8, the extra byte is the dummy one nowrap mode may ask for
+        final byte[] compressed = new byte[(int) sizes[1] + 1];
+        slice.get(compressed, 0, compressed.length - 1);
+        final Inflater inflater = inflater();
+        try {
+            inflater.setInput(compressed);
+            int read = 0;
+            while (read < bytes.length) {
+                final int n = inflater.inflate(bytes, read, bytes.length - read);
+                if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated entry");
+                }
+                read += n;
+            }
+            return bytes;
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            release(inflater);
+        }
+    }
+
+    private int method(int entry) throws IOException {
+        if ((buffer.getShort(entry + 8) & 1) != 0) {
+            throw new IOException("Encrypted entries are not supported");
+        }
+        final int method = buffer.getShort(entry + 10) & 0xFFFF;
+        if (method != STORED && method != DEFLATED) {
+            throw new IOException("Unsupported compression method " + method);
+        }
+        return method;
+    }
+
+    /**
+     * @return the uncompressed size, the compressed size and the local header offset of the entry
+     */
+    private long[] sizes(int entry) {
+        final long[] values = {
+                buffer.getInt(entry + 24) & 0xFFFFFFFFL,
+                buffer.getInt(entry + 20) & 0xFFFFFFFFL,
+                buffer.getInt(entry + 42) & 0xFFFFFFFFL
+        };
+        if (values[0] != 0xFFFFFFFFL && values[1] != 0xFFFFFFFFL && values[2] != 0xFFFFFFFFL) {
+            return values;
+        }
+
+        // zip64 extra field, only the saturated values are present and in this order
+        int extra = entry + 46 + (buffer.getShort(entry + 28) & 0xFFFF);
+        final int extraEnd = extra + (buffer.getShort(entry + 30) & 0xFFFF);
+        while (extra + 4 <= extraEnd) {
+            final int id = buffer.getShort(extra) & 0xFFFF;
+            final int length = buffer.getShort(extra + 2) & 0xFFFF;
+            if (id == ZIP64_EXTRA) {
+                int position = extra + 4;
+                for (int i = 0; i < values.length; i++) {
+                    if (values[i] == 0xFFFFFFFFL && position + 8 <= extra + 4 + length) {
+                        values[i] = buffer.getLong(position);
+                        position += 8;
+                    }
+                }
+                break;
+            }
+            extra += 4 + length;
+        }
+        return values;
+    }
+
+    private int data(int entry) throws IOException {
+        final long header = base + sizes(entry)[2];
+        if (header < 0 || header > buffer.limit() - 30 || buffer.getInt((int) header) != LOCAL_HEADER) {
+            throw new IOException("Invalid local header at " + header);
+        }
+        final int local = (int) header;
+        return local + 30 + (buffer.getShort(local + 26) & 0xFFFF) + (buffer.getShort(local + 28) & 0xFFFF);
+    }
+
+    private Inflater inflater() {
+        synchronized (inflaters) {
+            final Inflater inflater = inflaters.poll();
+            if (inflater != null) {
+                return inflater;
+            }
+        }
+        return new Inflater(true);
+    }
+
+    private void release(Inflater inflater) {
+        inflater.reset();
+        synchronized (inflaters) {
+            inflaters.push(inflater);
+        }
+    }
+
+    private class MappedIterator implements Iterator<Entry> {
+
+        private final Iterator<Map.Entry<String, Integer>> stream = entries.entrySet().iterator();
+        private Entry next;
+
+        private boolean advance() {
+            if (next != null) {
+                return true;
+            }
+            while (stream.hasNext()) {
+                final Map.Entry<String, Integer> entry = stream.next();
+                final String entryName = entry.getKey();
+                if (entryName.endsWith("/") || !entryName.endsWith(".class") || entryName.endsWith("module-info.class")) {
+                    continue;
+                }
+
+                final String className = entryName.substring(0, entryName.length() - 6);
+                if (className.contains(".")) {
+                    continue;
+                }
+
+                if (entryName.startsWith("META-INF/versions/")) { // resolved from their base entry
+                    continue;
+                }
+
+                next = new MappedEntry(entry.getValue(), className.replace('/', '.'));
+                return true;
+            }
+            return false;
+        }
+
+        public boolean hasNext() {
+            return advance();
+        }
+
+        public Entry next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            Entry entry = next;
+            next = null;
+            return entry;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("remove");
+        }
+    }
+
+    public final class MappedEntry implements Entry {
+        private final String name;
+        private final int entry;
+
+        private MappedEntry(int entry, String name) {
+            this.name = name;
+            this.entry = entry;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public InputStream getBytecode() throws IOException {
+            return new ByteArrayInputStream(getBytes());
+        }
+
+        /**
+         * @return the bytecode of the class, the array is not shared and exactly sized
+         */
+        public byte[] getBytes() throws IOException {
+            return read(resolve());
+        }
+
+        /**
+         * @return a read only view on the bytecode, a slice of the mapping if the entry is stored
+         */
+        public ByteBuffer getBuffer() throws IOException {
+            return buffer(resolve());
+        }
+
+        private int resolve() {
+            if (mjar.isMjar()) {
+                final MJarSupport.Clazz clazz = mjar.getClasses().get(name);
+                if (clazz != null) {
+                    final Integer versioned = entries.get(clazz.getPath());
+                    if (versioned != null) {
+                        return versioned;
+                    }
+                }
+            }
+            return entry;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Archive of a jar nested in another one, a library of a fat jar or of a war
+ * for instance, scanned in place without extracting it.
+ * <p/>
+ * The outer jar is memory mapped. A stored nested jar is read directly from
+ * the mapping, its central directory included, a deflated one is inflated
+ * once in memory and then read the same way.
+ * <p/>
+ * Supports 'jar:nested:/outer.jar/!lib/inner.jar!/', 'nested:/outer.jar/!lib/inner.jar'
+ * and 'jar:file:/outer.war!/WEB-INF/lib/inner.jar!/' URLs. Only one level of nesting
+ * is supported and, as for {@link MappedJarArchive}, the outer jar must be smaller than 2GB.
+ *
+ * @version $Rev$ $Date$
+ */
+public class NestedJarArchive implements Archive, AutoCloseable {
+
+    private final URL url;
+    private final File file;
+    private final String path;
+    private final MappedJarArchive jar;
+
+    public NestedJarArchive(ClassLoader loader, URL url) {
+        this(loader, url, null);
+    }
+
+    /**
+     * @param outers the outer jars already mapped, keyed by file, the ones mapped here are added to it, can be null
+     */
+    NestedJarArchive(ClassLoader loader, URL url, Map<File, MappedJarArchive> outers) {
+        final String[] location = parse(url);
+        if (location == null) {
+            throw new IllegalArgumentException("Please provide 'jar:nested:/...!/' or 'jar:file:/...!/...jar!/' URL"
+                    + " instead of '" + FileArchive.decode(String.valueOf(url)) + "'");
+        }
+
+        this.url = url;
+        this.file = new File(location[0]);
+        this.path = location[1];
+        try {
+            jar = new MappedJarArchive(loader, url, file, outers == null ? content(loader, file, path) : content(outers, loader, file, path));
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot open nested jar '" + path + "' of '" + file.getAbsolutePath() + "'", e);
+        }
+    }
+
+    private static ByteBuffer content(ClassLoader loader, File file, String path) throws IOException {
+        final MappedJarArchive outer = new MappedJarArchive(loader, file.toURI().toURL());
+        try {
+            return content(outer, path);
+        } finally {
+            close(outer);
+        }
+    }
+
+    // the libraries of a fat jar come together, the outer jar is mapped and its central directory read once
+    private static ByteBuffer content(Map<File, MappedJarArchive> outers, ClassLoader loader, File file, String path) throws IOException {
+        MappedJarArchive outer = outers.get(file);
+        if (outer == null) {
+            outer = new MappedJarArchive(loader, file.toURI().toURL());
+            outers.put(file, outer);
+        }
+        return content(outer, path);
+    }
+
+    private static ByteBuffer content(MappedJarArchive outer, String path) throws IOException {
+        final ByteBuffer content = outer.getEntryBuffer(path);
+        if (content == null) {
+            throw new FileNotFoundException(path);
+        }
+        return content;
+    }
+
+    static void close(MappedJarArchive outer) {
+        try {
+            outer.close();
+        } catch (Exception e) {
+            // no-op
+        }
+    }
+
+    /**
+     * @return the path of the outer jar and the name of the nested jar, null if the url is not a nested jar one
+     */
+    static String[] parse(URL url) {
+        String spec = url.toExternalForm();
+        if (spec.startsWith("jar:")) {
+            spec = spec.substring("jar:".length());
+        }
+        if (spec.endsWith("!/")) {
+            spec = spec.substring(0, spec.length() - 2);
+        }
+
+        final int separator;
+        final String outer;
+        final String entry;
+        if (spec.startsWith("nested:")) {
+            separator = spec.indexOf("/!");
+            if (separator < 0) {
+                return null;
+            }
+            outer = spec.substring("nested:".length(), separator);
+            entry = spec.substring(separator + 2);
+        } else if (spec.startsWith("file:")) {
+            separator = spec.indexOf("!/");
+            if (separator < 0) {
+                return null;
+            }
+            outer = spec.substring("file:".length(), separator);
+            entry = spec.substring(separator + 2);
+            if (!entry.endsWith(".jar")) {
+                // a directory of the jar, JarArchive handles it
+                return null;
+            }
+        } else {
+            return null;
+        }
+
+        if (entry.length() == 0 || entry.endsWith("/") || entry.contains("!/")) {
+            return null;
+        }
+        return new String[]{FileArchive.decode(outer), entry};
+    }
+
+    static boolean isNested(URL url) {
+        return parse(url) != null;
+    }
+
+    public URL getUrl() {
+        return url;
+    }
+
+    /**
+     * @return the outer jar
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the name of the nested jar in the outer one
+     */
+    public String getPath() {
+        return path;
+    }
+
+    public InputStream getBytecode(String className) throws IOException, ClassNotFoundException {
+        return jar.getBytecode(className);
+    }
+
+    @Override
+    public InputStream findBytecode(String className) throws IOException {
+        return ArchiveLookups.declares(this, NestedJarArchive.class) ? jar.findBytecode(className) : ArchiveLookups.getBytecode(this, className);
+    }
+
+    public Class<?> loadClass(String className) throws ClassNotFoundException {
+        return jar.loadClass(className);
+    }
+
+    public Iterator<Entry> iterator() {
+        return jar.iterator();
+    }
+
+    /**
+     * @param name the entry name
+     * @return the entry content or null if there is no such entry
+     */
+    InputStream getEntry(String name) throws IOException {
+        return jar.getEntry(name);
+    }
+
+    @Override
+    public void close() throws Exception {
+        jar.close();
+    }
+}
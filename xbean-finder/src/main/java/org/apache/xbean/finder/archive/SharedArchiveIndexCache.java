@@ -0,0 +1,160 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In memory store of {@link ArchiveIndex} instances shared by all the finders of the JVM.
+ * <p/>
+ * When several applications of a server ship the same libraries each one scans them again,
+ * indexing the jars through this cache lets the next finders replay the class structures
+ * already read instead of parsing the bytecode. Jars are keyed by their path, size and last
+ * modification date or, in digest mode, by the SHA-256 digest of their content so copies of
+ * a jar share their index.
+ * <p/>
+ * Indexes are softly referenced so the garbage collector can reclaim them under memory pressure
+ * and at most <code>maxSize</code> of them are kept, the least recently used one being evicted first.
+ * <p/>
+ * Usage:
+ * <pre>
+ * final AnnotationFinder finder = new AnnotationFinder(SharedArchiveIndexCache.getInstance().index(new ClasspathArchive(loader, urls)));
+ * </pre>
+ * The default instance is sized by the <code>xbean.finder.shared-index-cache.size</code> system property (256)
+ * and uses digests if <code>xbean.finder.shared-index-cache.digest</code> is set.
+ *
+ * @version $Rev$ $Date$
+ */
+public class SharedArchiveIndexCache {
+
+    private static final SharedArchiveIndexCache INSTANCE = new SharedArchiveIndexCache(
+            Integer.getInteger("xbean.finder.shared-index-cache.size", 256),
+            Boolean.getBoolean("xbean.finder.shared-index-cache.digest"));
+
+    private final int maxSize;
+    private final boolean digest;
+    private final ReferenceQueue<ArchiveIndex> collected = new ReferenceQueue<ArchiveIndex>();
+    private final Map<String, Ref> indexes;
+
+    /**
+     * @param maxSize the maximum number of indexes kept
+     * @param digest if true jars are keyed by the SHA-256 digest of their content
+     *               instead of their path, size and last modification date
+     */
+    public SharedArchiveIndexCache(final int maxSize, final boolean digest) {
+        if (maxSize <= 0) throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        this.maxSize = maxSize;
+        this.digest = digest;
+        this.indexes = new LinkedHashMap<String, Ref>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Ref> eldest) {
+                return size() > SharedArchiveIndexCache.this.maxSize;
+            }
+        };
+    }
+
+    public static SharedArchiveIndexCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Same as {@link ArchiveIndexCache#index(Archive)}, the indexes being kept in memory.
+     *
+     * @param archive the archive to index
+     * @return an archive serving the indexed class structures
+     */
+    public Archive index(Archive archive) {
+        return ArchiveIndexCache.indexJars(archive, this::index);
+    }
+
+    /**
+     * @return the number of indexes currently cached, some of them may have been collected
+     */
+    public int size() {
+        synchronized (indexes) {
+            purge();
+            return indexes.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (indexes) {
+            indexes.clear();
+        }
+    }
+
+    private Archive index(Archive archive, File jar) {
+        try {
+            final String key = digest ? ArchiveIndexCache.key(jar, true) : jar.getAbsolutePath() + "/" + ArchiveIndexCache.key(jar, false);
+
+            ArchiveIndex index = get(key);
+            if (index == null) {
+                // built outside of the lock, concurrent scans of a jar only waste the work of one of them
+                index = ArchiveIndex.build(archive);
+                index = put(key, index);
+            }
+            return new IndexedArchive(archive, index);
+        } catch (IOException e) {
+            // the finder scans it as usual and reports the issue if any
+            return archive;
+        }
+    }
+
+    private ArchiveIndex get(final String key) {
+        synchronized (indexes) {
+            purge();
+            final Ref ref = indexes.get(key);
+            return ref == null ? null : ref.get();
+        }
+    }
+
+    private ArchiveIndex put(final String key, final ArchiveIndex index) {
+        synchronized (indexes) {
+            final Ref existing = indexes.get(key);
+            final ArchiveIndex shared = existing == null ? null : existing.get();
+            if (shared != null) {
+                return shared;
+            }
+            indexes.put(key, new Ref(key, index, collected));
+            return index;
+        }
+    }
+
+    // drops the entries whose index was reclaimed, called with the lock held
+    private void purge() {
+        Ref ref;
+        while ((ref = (Ref) collected.poll()) != null) {
+            if (indexes.get(ref.key) == ref) {
+                indexes.remove(ref.key);
+            }
+        }
+    }
+
+    private static final class Ref extends SoftReference<ArchiveIndex> {
+        private final String key;
+
+        private Ref(final String key, final ArchiveIndex index, final ReferenceQueue<ArchiveIndex> queue) {
+            super(index, queue);
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * FileArchive watching its directory, the classes added, changed or removed since the
+ * last poll are meant to be passed to {@link org.apache.xbean.finder.AnnotationFinder#update(Iterable)}
+ * so a redeployment only reads the classes which changed:
+ * <pre>
+ * final WatchingFileArchive archive = new WatchingFileArchive(loader, classes);
+ * final AnnotationFinder finder = new AnnotationFinder(archive).link();
+ * ...
+ * finder.update(archive.poll());
+ * </pre>
+ * The directory is listed again by the next iteration once a change was seen.
+ *
+ * @version $Rev$ $Date$
+ */
+public class WatchingFileArchive extends FileArchive implements AutoCloseable {
+
+    private final Path root;
+    private final String prefix;
+    private final WatchService watcher;
+    private final Map<WatchKey, Path> directories = new HashMap<WatchKey, Path>();
+    // classes in the directory as of the events seen so far, the removed ones are reported from it
+    private final TreeSet<String> known = new TreeSet<String>();
+
+    public WatchingFileArchive(ClassLoader loader, File dir) throws IOException {
+        this(loader, dir, "");
+    }
+
+    public WatchingFileArchive(ClassLoader loader, File dir, String basePackage) throws IOException {
+        super(loader, dir, basePackage);
+        this.root = dir.toPath();
+        this.prefix = basePackage.length() > 0 ? basePackage + "." : basePackage;
+        this.watcher = FileSystems.getDefault().newWatchService();
+        register(root, known);
+    }
+
+    /**
+     * @return the classes added, changed or removed since the last call, empty if none
+     */
+    public synchronized Set<String> poll() throws IOException {
+        return changes(watcher.poll());
+    }
+
+    /**
+     * Waits for a first change.
+     *
+     * @return the classes added, changed or removed since the last call, empty if none
+     * changed before the timeout
+     */
+    public synchronized Set<String> poll(long timeout, TimeUnit unit) throws IOException, InterruptedException {
+        return changes(watcher.poll(timeout, unit));
+    }
+
+    @Override
+    public void close() throws IOException {
+        watcher.close();
+    }
+
+    private Set<String> changes(WatchKey key) throws IOException {
+        final Set<String> changes = new TreeSet<String>();
+        boolean overflow = false;
+
+        for (; key != null; key = watcher.poll()) {
+            final Path dir = directories.get(key);
+            if (dir == null) {
+                // cancelled once its directory left the tree
+                key.pollEvents();
+                continue;
+            }
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == OVERFLOW) {
+                    overflow = true;
+                    continue;
+                }
+
+                final Path path = dir.resolve((Path) event.context());
+                if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+                    // its content may have been written before it is watched
+                    final Set<String> created = new TreeSet<String>();
+                    register(path, created);
+                    changes.addAll(created);
+                    known.addAll(created);
+                } else if (isClass(path)) {
+                    final String className = className(path);
+                    changes.add(className);
+                    if (event.kind() != ENTRY_DELETE) {
+                        known.add(className);
+                    } else if (!isVersioned(path)) {
+                        known.remove(className);
+                    }
+                } else if (event.kind() == ENTRY_DELETE) {
+                    // a directory, the disk doesn't list its classes anymore
+                    final String packageName = dottedName(path) + ".";
+                    final Set<String> removed = known.subSet(packageName, packageName + Character.MAX_VALUE);
+                    changes.addAll(removed);
+                    if (!isVersioned(path)) {
+                        removed.clear();
+                    }
+                    unregister(path);
+                }
+            }
+            if (!key.reset()) {
+                directories.remove(key);
+            }
+        }
+
+        if (overflow) {
+            // events were lost, report every class which was or is now in the directory
+            changes.addAll(known);
+            known.clear();
+            register(root, known);
+            changes.addAll(known);
+            reset();
+        } else if (!changes.isEmpty()) {
+            reset();
+        }
+        return changes;
+    }
+
+    private void register(Path dir, final Set<String> classes) throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                directories.put(dir.register(watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (isClass(file)) {
+                    classes.add(className(file));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void unregister(Path dir) {
+        // a directory moved out of the tree is still watched where it went
+        for (Iterator<Map.Entry<WatchKey, Path>> entries = directories.entrySet().iterator(); entries.hasNext();) {
+            final Map.Entry<WatchKey, Path> entry = entries.next();
+            if (entry.getValue().startsWith(dir)) {
+                entry.getKey().cancel();
+                entries.remove();
+            }
+        }
+    }
+
+    private static boolean isClass(Path path) {
+        final String name = path.getFileName().toString();
+        if (!name.endsWith(".class")) return false;
+
+        final String simpleName = name.substring(0, name.length() - 6);
+        return !simpleName.contains(".") && !simpleName.equals("module-info");
+    }
+
+    private boolean isVersioned(Path path) {
+        return root.relativize(path).startsWith("META-INF");
+    }
+
+    private String className(Path path) {
+        final String name = dottedName(path);
+        return name.substring(0, name.length() - 6);
+    }
+
+    private String dottedName(Path path) {
+        String name = root.relativize(path).toString().replace(File.separatorChar, '.');
+        if (name.startsWith("META-INF.versions.")) {
+            // a versioned class changes the class of the same name
+            final int version = name.indexOf('.', "META-INF.versions.".length());
+            name = version < 0 ? "" : name.substring(version + 1);
+        }
+        return prefix + name;
+    }
+}
@@ -36,6 +36,11 @@ public class ClassFilter implements Filter {
         return this.name.equals(name);
     }
 
+    @Override
+    public boolean mayAccept(String prefix) {
+        return name.startsWith(prefix);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -0,0 +1,244 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.filter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A union of filters matching each name in a single pass per kind of filter:
+ * prefix, package and class filters share one trie, suffix filters a trie of the
+ * reversed suffixes and contains filters an Aho-Corasick automaton.
+ * Other filters are tested one after the other as a {@link FilterList} would.
+ *
+ * Instances are usually obtained with {@link Filters#compile(Filter)}.
+ */
+public class CompiledFilter implements Filter {
+
+    private final Node prefixes;
+    private final Node suffixes;
+    private final Node tokens;
+    private final Filter[] others;
+
+    public CompiledFilter(Filter... filters) {
+        this(Arrays.asList(filters));
+    }
+
+    public CompiledFilter(Iterable<Filter> filters) {
+        final Builder prefixes = new Builder();
+        final Builder suffixes = new Builder();
+        final Builder tokens = new Builder();
+        final List<Filter> others = new ArrayList<Filter>();
+
+        for (Filter filter : filters) {
+            if (filter instanceof PrefixFilter) {
+                prefixes.add(((PrefixFilter) filter).getPrefix()).prefix = true;
+            } else if (filter instanceof PackageFilter) {
+                prefixes.add(((PackageFilter) filter).getPackageName()).prefix = true;
+            } else if (filter instanceof ClassFilter) {
+                prefixes.add(((ClassFilter) filter).getName()).exact = true;
+            } else if (filter instanceof SuffixFilter) {
+                suffixes.add(new StringBuilder(((SuffixFilter) filter).getSuffix()).reverse().toString()).prefix = true;
+            } else if (filter instanceof ContainsFilter) {
+                tokens.add(((ContainsFilter) filter).getToken()).prefix = true;
+            } else {
+                others.add(filter);
+            }
+        }
+
+        this.prefixes = prefixes.build(false);
+        this.suffixes = suffixes.build(false);
+        this.tokens = tokens.build(true);
+        this.others = others.toArray(new Filter[others.size()]);
+    }
+
+    public boolean accept(String name) {
+        if (prefixes != null && matchesForward(prefixes, name)) return true;
+        if (suffixes != null && matchesBackward(suffixes, name)) return true;
+        if (tokens != null && contains(tokens, name)) return true;
+        for (Filter filter : others) {
+            if (filter.accept(name)) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean mayAccept(String prefix) {
+        if (suffixes != null || tokens != null) return true;
+        if (prefixes != null) {
+            // some entry of the trie starts with the prefix or is one of its prefixes
+            Node node = prefixes;
+            int i = 0;
+            while (node != null && !node.prefix && i < prefix.length()) {
+                node = node.next(prefix.charAt(i++));
+            }
+            if (node != null) return true;
+        }
+        for (Filter filter : others) {
+            if (filter.mayAccept(prefix)) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean acceptsAll(String prefix) {
+        if (prefixes != null) {
+            Node node = prefixes;
+            int i = 0;
+            while (node != null && !node.prefix && i < prefix.length()) {
+                node = node.next(prefix.charAt(i++));
+            }
+            if (node != null && node.prefix) return true;
+        }
+        for (Filter filter : others) {
+            if (filter.acceptsAll(prefix)) return true;
+        }
+        return false;
+    }
+
+    private static boolean matchesForward(Node node, final String name) {
+        for (int i = 0; i < name.length(); i++) {
+            if (node.prefix) return true;
+            node = node.next(name.charAt(i));
+            if (node == null) return false;
+        }
+        return node.prefix || node.exact;
+    }
+
+    private static boolean matchesBackward(Node node, final String name) {
+        for (int i = name.length() - 1; i >= 0; i--) {
+            if (node.prefix) return true;
+            node = node.next(name.charAt(i));
+            if (node == null) return false;
+        }
+        return node.prefix;
+    }
+
+    private static boolean contains(final Node root, final String name) {
+        if (root.prefix) return true; // empty token
+        Node state = root;
+        for (int i = 0; i < name.length(); i++) {
+            final char c = name.charAt(i);
+            Node next = state.next(c);
+            while (next == null && state != root) {
+                state = state.fail;
+                next = state.next(c);
+            }
+            if (next != null) state = next;
+            if (state.prefix) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledFilter{" +
+                "others=" + Arrays.toString(others) +
+                '}';
+    }
+
+    private static final class Node {
+        private char[] chars;
+        private Node[] children;
+        // a matched prefix (or suffix, token) ends here
+        private boolean prefix;
+        // a matched class name ends here
+        private boolean exact;
+        // Aho-Corasick failure link, only set for tokens
+        private Node fail;
+
+        private Node next(final char c) {
+            final int i = Arrays.binarySearch(chars, c);
+            return i < 0 ? null : children[i];
+        }
+    }
+
+    private static final class Builder {
+        private final Map<Character, Builder> children = new TreeMap<Character, Builder>();
+        private boolean prefix;
+        private boolean exact;
+        private boolean used;
+
+        private Builder add(final String value) {
+            used = true;
+            Builder builder = this;
+            for (int i = 0; i < value.length(); i++) {
+                final Character c = value.charAt(i);
+                Builder child = builder.children.get(c);
+                if (child == null) {
+                    child = new Builder();
+                    builder.children.put(c, child);
+                }
+                builder = child;
+            }
+            return builder;
+        }
+
+        private Node build(final boolean failureLinks) {
+            if (!used) return null;
+            final Node root = freeze();
+            if (failureLinks) link(root);
+            return root;
+        }
+
+        private Node freeze() {
+            final Node node = new Node();
+            node.prefix = prefix;
+            node.exact = exact;
+            node.chars = new char[children.size()];
+            node.children = new Node[children.size()];
+            int i = 0;
+            for (Map.Entry<Character, Builder> child : children.entrySet()) {
+                node.chars[i] = child.getKey();
+                node.children[i] = child.getValue().freeze();
+                i++;
+            }
+            return node;
+        }
+
+        // breadth first so the failure link of the parent is known when a child is linked
+        private static void link(final Node root) {
+            final Deque<Node> queue = new ArrayDeque<Node>();
+            root.fail = root;
+            for (Node child : root.children) {
+                child.fail = root;
+                queue.add(child);
+            }
+            while (!queue.isEmpty()) {
+                final Node node = queue.poll();
+                for (int i = 0; i < node.chars.length; i++) {
+                    final char c = node.chars[i];
+                    final Node child = node.children[i];
+                    Node fail = node.fail;
+                    Node target = fail.next(c);
+                    while (target == null && fail != root) {
+                        fail = fail.fail;
+                        target = fail.next(c);
+                    }
+                    child.fail = target == null ? root : target;
+                    child.prefix |= child.fail.prefix;
+                    queue.add(child);
+                }
+            }
+        }
+    }
+}
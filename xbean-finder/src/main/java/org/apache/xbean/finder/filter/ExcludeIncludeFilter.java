@@ -30,11 +30,29 @@ public class ExcludeIncludeFilter implements Filter {
         this.exclude = exclude;
     }
 
+    public Filter getInclude() {
+        return include;
+    }
+
+    public Filter getExclude() {
+        return exclude;
+    }
+
     public boolean accept(String name) {
         if (exclude.accept(name)) return include.accept(name);
         return true;
     }
 
+    @Override
+    public boolean mayAccept(String prefix) {
+        return !exclude.acceptsAll(prefix) || include.mayAccept(prefix);
+    }
+
+    @Override
+    public boolean acceptsAll(String prefix) {
+        return !exclude.mayAccept(prefix) || include.acceptsAll(prefix);
+    }
+
     @Override
     public String toString() {
         return "Exclude." + exclude +
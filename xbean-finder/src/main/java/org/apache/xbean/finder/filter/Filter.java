@@ -21,4 +21,22 @@ package org.apache.xbean.finder.filter;
 */
 public interface Filter {
     boolean accept(String name);
+
+    /**
+     * Lets archives skip whole packages while listing their entries.
+     *
+     * @param prefix a name prefix, usually a package name ending with a dot
+     * @return false if no name starting with the prefix can be accepted, true when unsure
+     */
+    default boolean mayAccept(String prefix) {
+        return true;
+    }
+
+    /**
+     * @param prefix a name prefix, usually a package name ending with a dot
+     * @return true if every name starting with the prefix is accepted, false when unsure
+     */
+    default boolean acceptsAll(String prefix) {
+        return false;
+    }
 }
@@ -45,6 +45,24 @@ public class FilterList implements Filter {
         return false;
     }
 
+    @Override
+    public boolean mayAccept(String prefix) {
+        for (Filter filter : filters) {
+            if (filter.mayAccept(prefix)) return true;
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean acceptsAll(String prefix) {
+        for (Filter filter : filters) {
+            if (filter.acceptsAll(prefix)) return true;
+        }
+
+        return false;
+    }
+
     public List<Filter> getFilters() {
         return filters;
     }
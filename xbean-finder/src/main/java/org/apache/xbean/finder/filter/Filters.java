@@ -22,6 +22,7 @@ import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.regex.Pattern;
 
 /**
  * @version $Rev$ $Date$
@@ -31,6 +32,11 @@ public class Filters {
         public boolean accept(String name) {
             return false;
         }
+
+        @Override
+        public boolean mayAccept(String prefix) {
+            return false;
+        }
     };
 
     public static Filter packages(String... packages) {
@@ -112,6 +118,69 @@ public class Filters {
         return new FilterList(unwrapped);
     }
 
+    /**
+     * Rewrites a filter tree so each name is matched in a single pass: the filter lists are
+     * flattened into a {@link CompiledFilter} and patterns which are a plain class name or
+     * package prefix (like <code>org\.acme\..*</code>) join its trie instead of running a regex.
+     * Include/exclude filters and inverted filters are kept with their branches compiled.
+     *
+     * @param filter the filter to compile
+     * @return a filter accepting the same names
+     */
+    public static Filter compile(Filter filter) {
+        if (filter instanceof FilterList) {
+            final Set<Filter> unwrapped = new LinkedHashSet<Filter>();
+            unwrap(((FilterList) filter).getFilters(), unwrapped);
+            final List<Filter> compiled = new ArrayList<Filter>(unwrapped.size());
+            for (Filter f : unwrapped) {
+                if (f != NONE) compiled.add(compile(f));
+            }
+            return new CompiledFilter(compiled);
+        }
+        if (filter instanceof IncludeExcludeFilter) {
+            final IncludeExcludeFilter includeExclude = (IncludeExcludeFilter) filter;
+            return new IncludeExcludeFilter(compile(includeExclude.getInclude()), compile(includeExclude.getExclude()));
+        }
+        if (filter instanceof ExcludeIncludeFilter) {
+            final ExcludeIncludeFilter excludeInclude = (ExcludeIncludeFilter) filter;
+            return new ExcludeIncludeFilter(compile(excludeInclude.getInclude()), compile(excludeInclude.getExclude()));
+        }
+        if (filter instanceof NegativeFilter) {
+            return invert(compile(((NegativeFilter) filter).getFilter()));
+        }
+        if (filter instanceof PatternFilter) {
+            final Filter literal = literal(((PatternFilter) filter).getPattern());
+            if (literal != null) return literal;
+        }
+        return filter;
+    }
+
+    // org\.acme\.Foo is a class filter and org\.acme\..* a prefix filter, null for real expressions
+    private static Filter literal(Pattern pattern) {
+        if (pattern.flags() != 0) return null;
+
+        String expression = pattern.pattern();
+        final boolean prefix = expression.endsWith(".*");
+        if (prefix) expression = expression.substring(0, expression.length() - 2);
+
+        final StringBuilder name = new StringBuilder(expression.length());
+        for (int i = 0; i < expression.length(); i++) {
+            final char c = expression.charAt(i);
+            if (c == '\\' && i + 1 < expression.length() && isEscapedLiteral(expression.charAt(i + 1))) {
+                name.append(expression.charAt(++i));
+            } else if (Character.isLetterOrDigit(c) || c == '_') {
+                name.append(c);
+            } else {
+                return null;
+            }
+        }
+        return prefix ? new PrefixFilter(name.toString()) : new ClassFilter(name.toString());
+    }
+
+    private static boolean isEscapedLiteral(char c) {
+        return c == '.' || c == '$' || c == '-';
+    }
+
     /**
      * Will invert the meaning of this filter by wrapping it with
      * a filter that negates the return of the accept method.
@@ -154,6 +223,16 @@ public class Filters {
             return !filter.accept(name);
         }
 
+        @Override
+        public boolean mayAccept(String prefix) {
+            return !filter.acceptsAll(prefix);
+        }
+
+        @Override
+        public boolean acceptsAll(String prefix) {
+            return !filter.mayAccept(prefix);
+        }
+
         public Filter getFilter() {
             return filter;
         }
@@ -31,11 +31,29 @@ public class IncludeExcludeFilter implements Filter {
         this.exclude = exclude;
     }
 
+    public Filter getInclude() {
+        return include;
+    }
+
+    public Filter getExclude() {
+        return exclude;
+    }
+
     public boolean accept(String name) {
         if (include.accept(name)) return !exclude.accept(name);
         return false;
     }
 
+    @Override
+    public boolean mayAccept(String prefix) {
+        return include.mayAccept(prefix) && !exclude.acceptsAll(prefix);
+    }
+
+    @Override
+    public boolean acceptsAll(String prefix) {
+        return include.acceptsAll(prefix) && !exclude.mayAccept(prefix);
+    }
+
     @Override
     public String toString() {
         return "Include." + include +
@@ -37,6 +37,16 @@ public class PackageFilter implements Filter {
         return name.startsWith(packageName);
     }
 
+    @Override
+    public boolean mayAccept(String prefix) {
+        return prefix.startsWith(packageName) || packageName.startsWith(prefix);
+    }
+
+    @Override
+    public boolean acceptsAll(String prefix) {
+        return prefix.startsWith(packageName);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
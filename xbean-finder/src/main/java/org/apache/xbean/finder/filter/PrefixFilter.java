@@ -36,6 +36,16 @@ public class PrefixFilter implements Filter {
         return name.startsWith(prefix);
     }
 
+    @Override
+    public boolean mayAccept(String namePrefix) {
+        return namePrefix.startsWith(prefix) || prefix.startsWith(namePrefix);
+    }
+
+    @Override
+    public boolean acceptsAll(String namePrefix) {
+        return namePrefix.startsWith(prefix);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -0,0 +1,122 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Helpers of the caches storing what was read on disk for the next runs.
+ */
+public final class CacheFiles {
+
+    public interface Content {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Writes a temporary file of the directory then moves it in place, so a concurrent
+     * run reads either the previous file or the new one. Failures are ignored,
+     * the cache being an optimization the next run will try again.
+     *
+     * @param directory the directory of the cache, created if needed
+     * @param file the file to write in the directory
+     * @param content writes the content of the file
+     */
+    public static void store(final File directory, final File file, final Content content) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            return;
+        }
+
+        File tmp = null;
+        try {
+            tmp = File.createTempFile(file.getName(), ".tmp", directory);
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            try {
+                content.write(out);
+            } finally {
+                out.close();
+            }
+
+            try {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            if (tmp != null && !tmp.delete()) {
+                tmp.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * @return the hexadecimal SHA-256 digest of the value, usable as a file name
+     */
+    public static String digest(final String value) {
+        return hex(sha256().digest(value.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * @return the hexadecimal SHA-256 digest of the content of the file
+     */
+    public static String digest(final File file) throws IOException {
+        final MessageDigest md = sha256();
+        final InputStream in = new FileInputStream(file);
+        try {
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                md.update(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return hex(md.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(final byte[] bytes) {
+        final StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    private CacheFiles() {
+        // no-op
+    }
+}
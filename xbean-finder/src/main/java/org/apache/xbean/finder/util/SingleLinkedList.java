@@ -17,29 +17,27 @@
 package org.apache.xbean.finder.util;
 
 import java.lang.reflect.Array;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.NoSuchElementException;
 
+/**
+ * Append only list iterating from the last added element to the first one,
+ * get(0) being the first added element.
+ * <p/>
+ * Elements are stored in an array growing by half its size so an empty list
+ * costs a single object and each element a single reference. Iterators work
+ * on the elements present when they were created.
+ */
 public class SingleLinkedList<E> implements List<E> {
+    private static final Object[] EMPTY = new Object[0];
 
-    private Entry<E> entry;
+    private Object[] values = EMPTY;
     private int size = 0;
 
-    private class Entry<E> {
-
-        private E value;
-        private Entry next;
-
-        private Entry(E value, Entry next) {
-            this.value = value;
-            this.next = next;
-        }
-    }
-
-
     public int size() {
         return size;
     }
@@ -85,8 +83,10 @@ public class SingleLinkedList<E> implements List<E> {
     }
 
     public boolean add(E e) {
-        this.entry = new Entry(e, this.entry); 
-        size++;
+        if (size == values.length) {
+            values = Arrays.copyOf(values, Math.max(size + (size >> 1), size + 1));
+        }
+        values[size++] = e;
         return true;
     }
 
@@ -115,33 +115,20 @@ public class SingleLinkedList<E> implements List<E> {
     }
 
     public void clear() {
-        this.entry = null;
+        this.values = EMPTY;
         this.size = 0; 
     }
 
     public E get(int index) {
         bounds(index);
-        int i = size;
-        for (E e : this) {
-            if (--i == index) return e;
-        }
-
-        throw new IllegalStateException("statement should not be reachable");
+        return (E) values[index];
     }
 
     public E set(int index, E element) {
         bounds(index);
-        int i = size;
-
-        for (Entry<E> entry : entries()) {
-            if (--i == index) {
-                final E old = entry.value;
-                entry.value = element;
-                return old;
-            }
-        }
-
-        throw new IllegalStateException("statement should not be reachable");
+        final E old = (E) values[index];
+        values[index] = element;
+        return old;
     }
 
     public void add(int index, E element) {
@@ -179,64 +166,28 @@ public class SingleLinkedList<E> implements List<E> {
 
 
     private Iterator<E> values() {
-        return new Values<E>(this.entry);
-    }
-
-    private Entries entries() {
-        return new Entries(this.entry);
+        return new Values<E>(values, size);
     }
     
 
-    private class Values<E> implements Iterator<E> {
+    private static class Values<E> implements Iterator<E> {
 
-        private Entry<E> current;
+        private final Object[] values;
+        private int current;
 
-        private Values(Entry<E> current) {
-            this.current = current;
+        private Values(Object[] values, int size) {
+            this.values = values;
+            this.current = size;
         }
 
         public boolean hasNext() {
-            return current != null;
+            return current > 0;
         }
 
         public E next() {
-            if (current == null) throw new NoSuchElementException();
+            if (current == 0) throw new NoSuchElementException();
             
-            final E v = current.value;
-
-            this.current = current.next;
-
-            return v;
-        }
-
-        public void remove() {
-            throw new UnsupportedOperationException("remove");
-        }
-    }
-
-    private class Entries implements Iterator<Entry<E>>, Iterable<Entry<E>> {
-        private Entry<E> current;
-
-        private Entries(Entry<E> current) {
-            this.current = current;
-        }
-
-        public Iterator<Entry<E>> iterator() {
-            return this;
-        }
-
-        public boolean hasNext() {
-            return current != null;
-        }
-
-        public Entry<E> next() {
-            if (current == null) throw new NoSuchElementException();
-
-            final Entry<E> value = this.current;
-
-            this.current = current.next;
-
-            return value;
+            return (E) values[--current];
         }
 
         public void remove() {
@@ -0,0 +1,212 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.CompositeArchive;
+import org.apache.xbean.finder.archive.JarArchive;
+import org.hamcrest.Matcher;
+import org.junit.Test;
+
+import java.io.File;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Estimates the heap retained by the scanned model of a realistic classpath
+ * (the junit and hamcrest jars) assuming a 64 bits JVM with compressed oops.
+ */
+public class AnnotationFinderFootprintTest {
+
+    @Test
+    public void footprint() throws Exception {
+        final AnnotationFinder finder = new AnnotationFinder(archive()).link();
+
+        // the map sharing the names is released with the scan
+        assertNull(finder.names);
+        final Footprint footprint = new Footprint(false);
+        model(finder, footprint);
+
+        // the same model if each class had its own copy of the names, as read by ASM
+        final Footprint copies = new Footprint(true);
+        model(finder, copies);
+
+        final int classes = finder.classInfos.size();
+        final long perClass = footprint.bytes / classes;
+
+        assertTrue(classes > 300);
+        assertTrue("shared names: " + footprint.bytes + " bytes, copies: " + copies.bytes, footprint.bytes < copies.bytes);
+        // linked lists and per class copies of the names used to cost about 2300 bytes per class
+        assertTrue("footprint of " + perClass + " bytes per class", perClass < 2000);
+    }
+
+    private static void model(final AnnotationFinder finder, final Footprint footprint) throws IllegalAccessException {
+        for (final AnnotationFinder.ClassInfo info : finder.classInfos.values()) {
+            footprint.add(info);
+            footprint.classRead();
+        }
+        for (final List<AnnotationFinder.Info> infos : finder.annotated.values()) {
+            footprint.add(infos);
+        }
+    }
+
+    private static Archive archive() throws Exception {
+        final ClassLoader loader = AnnotationFinderFootprintTest.class.getClassLoader();
+        final List<Archive> archives = new ArrayList<Archive>();
+        for (final Class<?> type : new Class<?>[]{Test.class, Matcher.class}) {
+            archives.add(new JarArchive(loader, new URL("jar:" + location(type).toURI().toURL() + "!/")));
+        }
+        return new CompositeArchive(archives);
+    }
+
+    private static File location(final Class<?> type) throws Exception {
+        return new File(type.getProtectionDomain().getCodeSource().getLocation().toURI());
+    }
+
+    private static class Footprint {
+        private final Map<Object, Object> seen = new IdentityHashMap<Object, Object>();
+        // strings already counted for the current class when each class has its own copies, null otherwise
+        private final Set<String> copies;
+        private long bytes;
+
+        private Footprint(final boolean copies) {
+            this.copies = copies ? new HashSet<String>() : null;
+        }
+
+        private void classRead() {
+            if (copies != null) {
+                copies.clear();
+            }
+        }
+
+        private void add(final Object object) throws IllegalAccessException {
+            if (object == null || skipped(object)) {
+                return;
+            }
+            if (copies != null && object instanceof String ? !copies.add((String) object) : seen.put(object, object) != null) {
+                return;
+            }
+
+            final Class<?> type = object.getClass();
+            if (object instanceof String) {
+                final String string = (String) object;
+                bytes += align(24) + array(latin1(string) ? 1 : 2, string.length());
+            } else if (type.isArray()) {
+                final int length = Array.getLength(object);
+                if (type.getComponentType().isPrimitive()) {
+                    bytes += array(primitive(type.getComponentType()), length);
+                } else {
+                    bytes += array(4, length);
+                    for (int i = 0; i < length; i++) {
+                        add(Array.get(object, i));
+                    }
+                }
+            } else if (type == LinkedList.class) {
+                final List<?> list = (List<?>) object;
+                bytes += align(32) + list.size() * align(24);
+                elements(list);
+            } else if (type == ArrayList.class) {
+                final List<?> list = (List<?>) object;
+                bytes += align(24) + array(4, capacity(list.size()));
+                elements(list);
+            } else if (type.getName().startsWith("java.util.Collections$Unmodifiable") && object instanceof List) {
+                // annotation array values, wrapper and backing ArrayList
+                final List<?> list = (List<?>) object;
+                bytes += align(16) + align(24) + array(4, capacity(list.size()));
+                elements(list);
+            } else if (object instanceof Number || object instanceof Boolean || object instanceof Character) {
+                bytes += align(16);
+            } else if (type.getName().startsWith("java.")) {
+                throw new IllegalStateException("Unexpected type in the model: " + type);
+            } else {
+                long size = 12;
+                for (Class<?> current = type; current != Object.class; current = current.getSuperclass()) {
+                    for (final Field field : current.getDeclaredFields()) {
+                        if (Modifier.isStatic(field.getModifiers())) {
+                            continue;
+                        }
+                        if (field.getType().isPrimitive()) {
+                            size += primitive(field.getType());
+                        } else {
+                            size += 4;
+                            field.setAccessible(true);
+                            add(field.get(object));
+                        }
+                    }
+                }
+                bytes += align(size);
+            }
+        }
+
+        private void elements(final List<?> list) throws IllegalAccessException {
+            for (final Object element : list) {
+                add(element);
+            }
+        }
+
+        // shared with the finder or the JVM, not retained by the model
+        private static boolean skipped(final Object object) {
+            return object instanceof AnnotationFinder || object instanceof Class || object instanceof ClassLoader
+                    || object instanceof Archive || object instanceof java.lang.reflect.Member || object instanceof Package;
+        }
+
+        private static boolean latin1(final String string) {
+            for (int i = 0; i < string.length(); i++) {
+                if (string.charAt(i) > 0xFF) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // the lists of the model grow one element at a time from an empty one
+        private static int capacity(final int size) {
+            int capacity = 0;
+            while (capacity < size) {
+                capacity = Math.max(capacity + (capacity >> 1), capacity + 1);
+            }
+            return capacity;
+        }
+
+        private static long array(final int elementSize, final int length) {
+            return align(16 + (long) elementSize * length);
+        }
+
+        private static int primitive(final Class<?> type) {
+            if (type == long.class || type == double.class) return 8;
+            if (type == int.class || type == float.class) return 4;
+            if (type == short.class || type == char.class) return 2;
+            return 1;
+        }
+
+        private static long align(final long size) {
+            return (size + 7) & ~7L;
+        }
+    }
+}
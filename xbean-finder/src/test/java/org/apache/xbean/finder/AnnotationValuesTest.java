@@ -0,0 +1,217 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.ArchiveIndex;
+import org.apache.xbean.finder.archive.ClassesArchive;
+import org.apache.xbean.finder.archive.IndexedArchive;
+import org.junit.Test;
+import org.objectweb.asm.Type;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AnnotationValuesTest {
+
+    @Retention(RetentionPolicy.RUNTIME)
+    public @interface Path {
+        String value();
+    }
+
+    @Retention(RetentionPolicy.RUNTIME)
+    public @interface Named {
+        String value() default "";
+    }
+
+    @Retention(RetentionPolicy.RUNTIME)
+    public @interface Everything {
+        int number() default 0;
+
+        long big() default 0;
+
+        boolean flag() default false;
+
+        char letter() default 'a';
+
+        Class<?> type() default Object.class;
+
+        ElementType target() default ElementType.TYPE;
+
+        String[] names() default {};
+
+        int[] numbers() default {};
+
+        ElementType[] targets() default {};
+
+        Named named() default @Named;
+    }
+
+    @Path("/red")
+    public static class Red {
+    }
+
+    @Path("/blue")
+    @Everything(number = 42, big = 7L, flag = true, letter = 'z', type = String.class, target = ElementType.FIELD,
+            names = {"a", "b"}, numbers = {1, 2}, targets = {ElementType.METHOD, ElementType.PARAMETER}, named = @Named("nested"))
+    public static class Blue {
+        @Named("field")
+        private String field;
+
+        @Path("/blue/method")
+        public void method(@Named("parameter") String parameter) {
+        }
+    }
+
+    @Named
+    public static class Defaults {
+    }
+
+    @Test
+    public void scannedValues() {
+        final AnnotationFinder finder = new AnnotationFinder(new ClassesArchive(Red.class, Blue.class, Defaults.class));
+        final AnnotationFinder.AnnotationInfo everything = annotation(finder, Everything.class, Blue.class);
+
+        assertEquals(42, everything.getValue("number"));
+        assertEquals(7L, everything.getValue("big"));
+        assertEquals(true, everything.getValue("flag"));
+        assertEquals('z', everything.getValue("letter"));
+        assertEquals(Type.getType(String.class), everything.getValue("type"));
+        assertEquals(new AnnotationFinder.EnumValue(ElementType.class.getName(), "FIELD"), everything.getValue("target"));
+        assertTrue(((AnnotationFinder.EnumValue) everything.getValue("target")).is(ElementType.FIELD));
+        assertEquals(Arrays.asList("a", "b"), everything.getValue("names"));
+        assertEquals(Arrays.asList(1, 2), everything.getValue("numbers"));
+        assertEquals(Arrays.asList(new AnnotationFinder.EnumValue(ElementType.class.getName(), "METHOD"),
+                new AnnotationFinder.EnumValue(ElementType.class.getName(), "PARAMETER")), everything.getValue("targets"));
+
+        final AnnotationFinder.AnnotationInfo nested = (AnnotationFinder.AnnotationInfo) everything.getValue("named");
+        assertEquals(Named.class.getName(), nested.getName());
+        assertEquals("nested", nested.getValue("value"));
+        assertEquals(10, everything.getValues().size());
+
+        // defaults are not in the bytecode
+        assertTrue(annotation(finder, Named.class, Defaults.class).getValues().isEmpty());
+        assertNull(annotation(finder, Named.class, Defaults.class).getValue("value"));
+    }
+
+    @Test
+    public void reflectedValuesMatchTheScannedOnes() {
+        final AnnotationFinder finder = new AnnotationFinder(new ClassesArchive(Blue.class));
+        for (Class<? extends java.lang.annotation.Annotation> type : Arrays.asList(Path.class, Everything.class)) {
+            final AnnotationFinder.AnnotationInfo reflected = finder.new AnnotationInfo(Blue.class.getAnnotation(type));
+            assertEquals(values(annotation(finder, type, Blue.class).getValues()), values(reflected.getValues()));
+        }
+    }
+
+    @Test
+    public void indexedValues() throws Exception {
+        final Archive archive = new ClassesArchive(Blue.class);
+        final AnnotationFinder scanned = new AnnotationFinder(archive);
+        final AnnotationFinder indexed = new AnnotationFinder(new IndexedArchive(archive, ArchiveIndex.build(archive)));
+
+        assertEquals(values(annotation(scanned, Everything.class, Blue.class).getValues()),
+                values(annotation(indexed, Everything.class, Blue.class).getValues()));
+    }
+
+    @Test
+    public void filterWithoutLoading() {
+        final CountingArchive archive = new CountingArchive(new ClassesArchive(Red.class, Blue.class, Defaults.class));
+        final AnnotationFinder finder = new AnnotationFinder(archive);
+
+        final List<AnnotationFinder.Info> blue = finder.findAnnotatedInfos(Path.class, value("/blue"));
+        assertEquals(1, blue.size());
+        assertEquals(Blue.class.getName(), blue.get(0).getName());
+        assertEquals(1, finder.findAnnotatedInfos(Path.class, value("/blue/method")).size());
+        assertTrue(finder.findAnnotatedInfos(Path.class, value("/green")).isEmpty());
+
+        final List<AnnotationFinder.Info> named = finder.findAnnotatedInfos(Named.class, value("parameter"));
+        assertEquals(1, named.size());
+        assertTrue(named.get(0) instanceof AnnotationFinder.ParameterInfo);
+        assertEquals(1, finder.findAnnotatedInfos(Named.class, value("field")).size());
+
+        assertEquals(0, archive.loaded);
+    }
+
+    private static Predicate<AnnotationFinder.AnnotationInfo> value(final String expected) {
+        return annotation -> expected.equals(annotation.getValue("value"));
+    }
+
+    private static AnnotationFinder.AnnotationInfo annotation(final AnnotationFinder finder, final Class<?> annotation, final Class<?> annotated) {
+        for (AnnotationFinder.Info info : finder.getAnnotationInfos(annotation.getName())) {
+            if (info.getName().equals(annotated.getName())) {
+                for (AnnotationFinder.AnnotationInfo annotationInfo : info.getAnnotations()) {
+                    if (annotationInfo.getName().equals(annotation.getName())) {
+                        return annotationInfo;
+                    }
+                }
+            }
+        }
+        throw new AssertionError(annotation + " not found on " + annotated);
+    }
+
+    // nested AnnotationInfos compare by identity and reflection doesn't keep the declaration order
+    private static String values(final Map<String, Object> values) {
+        final StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, Object> entry : new TreeMap<String, Object>(values).entrySet()) {
+            builder.append(entry.getKey()).append('=');
+            if (entry.getValue() instanceof AnnotationFinder.AnnotationInfo) {
+                final AnnotationFinder.AnnotationInfo nested = (AnnotationFinder.AnnotationInfo) entry.getValue();
+                builder.append('@').append(nested.getName()).append('(').append(values(nested.getValues())).append(')');
+            } else {
+                builder.append(entry.getValue());
+            }
+            builder.append(';');
+        }
+        return builder.toString();
+    }
+
+    private static class CountingArchive implements Archive {
+        private final Archive archive;
+        private int loaded;
+
+        private CountingArchive(final Archive archive) {
+            this.archive = archive;
+        }
+
+        public InputStream getBytecode(final String className) throws IOException, ClassNotFoundException {
+            return archive.getBytecode(className);
+        }
+
+        public Class<?> loadClass(final String className) throws ClassNotFoundException {
+            loaded++;
+            return archive.loadClass(className);
+        }
+
+        public Iterator<Entry> iterator() {
+            return archive.iterator();
+        }
+    }
+}
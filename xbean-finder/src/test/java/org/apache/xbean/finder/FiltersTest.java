@@ -18,11 +18,13 @@ package org.apache.xbean.finder;
 
 import junit.framework.TestCase;
 import org.apache.xbean.finder.filter.ClassFilter;
+import org.apache.xbean.finder.filter.CompiledFilter;
 import org.apache.xbean.finder.filter.ExcludeIncludeFilter;
 import org.apache.xbean.finder.filter.Filter;
 import org.apache.xbean.finder.filter.FilterList;
 import org.apache.xbean.finder.filter.Filters;
 import org.apache.xbean.finder.filter.IncludeExcludeFilter;
+import org.apache.xbean.finder.filter.PatternFilter;
 
 /**
  * @version $Rev$ $Date$
@@ -114,4 +116,72 @@ public class FiltersTest extends TestCase {
         assertTrue(filter.accept("org.foo.util.Blue"));
     }
 
+    public void testCompile() {
+        final Filter filter = new FilterList(
+                Filters.packages("org.foo", "org.bar.baz"),
+                Filters.classes("com.acme.Red", "com.acme.Blue"),
+                Filters.prefixes("net.Ora", "ne"),
+                Filters.suffixes("Test", "IT"),
+                Filters.tokens("util", "til.X", "$"),
+                Filters.patterns("io\\.acme\\..*", "io\\.other\\.Green", ".*\\.Pink[0-9]+"));
+        final Filter compiled = Filters.compile(filter);
+
+        assertTrue(compiled instanceof CompiledFilter);
+        assertSameAnswers(filter, compiled);
+    }
+
+    public void testCompileLiteralPatterns() {
+        assertEquals(new ClassFilter("org.foo.Red"), Filters.compile(new PatternFilter("org\\.foo\\.Red")));
+        assertTrue(Filters.compile(new PatternFilter("org\\.foo\\..*")).accept("org.foo.Red"));
+        assertFalse(Filters.compile(new PatternFilter("org\\.foo\\..*")).accept("org.fooo.Red"));
+
+        final PatternFilter expression = new PatternFilter("org\\.fo+\\..*");
+        assertSame(expression, Filters.compile(expression));
+    }
+
+    public void testCompileIncludeExclude() {
+        final Filter includeExclude = new IncludeExcludeFilter(Filters.packages("org.foo", "org.bar"), Filters.packages("org.foo.util"));
+        final Filter excludeInclude = new ExcludeIncludeFilter(Filters.packages("org.foo.util"), Filters.packages("org.foo", "org.bar"));
+        final Filter inverted = Filters.invert(Filters.tokens("util", "Red"));
+
+        assertSameAnswers(includeExclude, Filters.compile(includeExclude));
+        assertSameAnswers(excludeInclude, Filters.compile(excludeInclude));
+        assertSameAnswers(inverted, Filters.compile(inverted));
+    }
+
+    public void testPrefixQueries() {
+        final Filter packages = Filters.packages("org.foo", "org.bar.baz");
+        final Filter exclude = new IncludeExcludeFilter(Filters.packages("org"), Filters.packages("org.foo.util"));
+
+        for (Filter filter : new Filter[]{packages, Filters.compile(packages)}) {
+            assertTrue(filter.mayAccept("org."));
+            assertTrue(filter.mayAccept("org.foo.util."));
+            assertFalse(filter.mayAccept("org.baz."));
+            assertFalse(filter.mayAccept("com."));
+            assertTrue(filter.acceptsAll("org.foo."));
+            assertFalse(filter.acceptsAll("org.bar."));
+        }
+        for (Filter filter : new Filter[]{exclude, Filters.compile(exclude)}) {
+            assertTrue(filter.mayAccept("org.foo."));
+            assertFalse(filter.mayAccept("org.foo.util."));
+            assertFalse(filter.mayAccept("com."));
+            assertFalse(filter.acceptsAll("org.foo."));
+            assertTrue(filter.acceptsAll("org.bar."));
+        }
+        assertFalse(Filters.invert(packages).mayAccept("org.foo."));
+        assertTrue(Filters.tokens("util").mayAccept("com."));
+    }
+
+    private static void assertSameAnswers(final Filter expected, final Filter actual) {
+        final String[] names = {
+                "", "org", "org.foo", "org.foo.Red", "org.fooo.Red", "org.bar.Red", "org.bar.baz.Red", "org.bar.bazz.Red",
+                "org.foo.util.Blue", "com.acme.Red", "com.acme.Redd", "com.acme.Blue", "com.acme", "net.Orange", "net",
+                "ne", "n", "com.acme.RedTest", "com.acme.RedIT", "com.acme.ITRed", "com.util.Red", "com.ut.il.X",
+                "com.utiltil.X", "com.Red$1", "io.acme.Red", "io.acmeRed", "io.other.Green", "io.other.Green2",
+                "a.Pink12", "a.Pink", "a.bPink1", "util", "til.X", "Test", "IT"
+        };
+        for (String name : names) {
+            assertEquals(name, expected.accept(name), actual.accept(name));
+        }
+    }
 }
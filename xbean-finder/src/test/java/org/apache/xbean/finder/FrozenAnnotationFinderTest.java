@@ -0,0 +1,103 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.acme.foo.Color;
+import org.acme.foo.Holiday;
+import org.acme.foo.Primary;
+import org.acme.foo.Property;
+import org.apache.xbean.finder.archive.Archives;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FrozenAnnotationFinderTest {
+
+    @Test
+    public void concurrentQueries() throws Exception {
+        final AnnotationFinder expected = new AnnotationFinder(Archives.acmeArchive()).link();
+        final AnnotationFinder frozen = new AnnotationFinder(Archives.acmeArchive()).freeze();
+        assertTrue(frozen.isFrozen());
+        assertFalse(expected.isFrozen());
+
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (int i = 0; i < 64; i++) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        for (int j = 0; j < 20; j++) {
+                            assertEquals(expected.findAnnotatedClasses(Color.class), frozen.findAnnotatedClasses(Color.class));
+                            assertEquals(expected.findAnnotatedClasses(Holiday.class), frozen.findAnnotatedClasses(Holiday.class));
+                            assertEquals(expected.findAnnotatedMethods(Property.class), frozen.findAnnotatedMethods(Property.class));
+                            assertEquals(sorted(expected.findImplementations(Primary.class)), sorted(frozen.findImplementations(Primary.class)));
+                            assertEquals(sorted(expected.findSubclasses(Object.class)), sorted(frozen.findSubclasses(Object.class)));
+                            assertTrue(frozen.getClassesNotLoaded().isEmpty());
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void readOnly() throws Exception {
+        final AnnotationFinder frozen = new AnnotationFinder(Archives.acmeArchive()).freeze();
+        final int classes = frozen.classInfos.size();
+
+        assertTrue(frozen.link() == frozen);
+        assertEquals(classes, frozen.classInfos.size());
+        try {
+            frozen.getAnnotationInfos(Color.class.getName()).clear();
+            fail("annotated lists are unmodifiable");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            frozen.update(Collections.singletonList(Color.class.getName()));
+            fail("a frozen finder can't be updated");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    private static List<String> sorted(final List<? extends Class<?>> classes) {
+        final List<String> names = new ArrayList<String>();
+        for (Class<?> clazz : classes) {
+            names.add(clazz.getName());
+        }
+        Collections.sort(names);
+        return names;
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.acme.foo.Color;
+import org.acme.foo.Holiday;
+import org.acme.foo.Primary;
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.ClassesArchive;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class HierarchyIndexTest {
+
+    private static final Class<?>[] TYPES = {
+            ClassFinderDepthTest.Color.class, ClassFinderDepthTest.Red.class, ClassFinderDepthTest.Crimson.class,
+            ClassFinderDepthTest.Shape.class, ClassFinderDepthTest.Square.class, ClassFinderDepthTest.HSB.class,
+            ClassFinderDepthTest.Hue.class, ClassFinderDepthTest.Saturation.class, ClassFinderDepthTest.Brightness.class,
+            Primary.class, Color.class, Holiday.class, Runnable.class
+    };
+
+    @Test
+    public void sameResultsAsTheWalk() throws Exception {
+        final AnnotationFinder walk = new AnnotationFinder(archive()).link();
+        final AnnotationFinder indexed = new AnnotationFinder(archive()).enableHierarchyIndex();
+
+        for (Class<?> type : TYPES) {
+            assertEquals(type.getName(), set(walk.findSubclasses(type)), set(indexed.findSubclasses(type)));
+            if (type.isInterface()) {
+                assertEquals(type.getName(), set(walk.findImplementations(type)), set(indexed.findImplementations(type)));
+            }
+        }
+        assertEquals(2, indexed.findSubclasses(ClassFinderDepthTest.Color.class).size());
+        assertEquals(4, indexed.findImplementations(ClassFinderDepthTest.Hue.class).size());
+    }
+
+    @Test
+    public void linkBuildsTheIndexWhenRequested() throws Exception {
+        final AnnotationFinder finder = new AnnotationFinder(archive()) {
+            @Override
+            protected boolean hierarchyIndex() {
+                return true;
+            }
+        }.link();
+
+        final List<Class<? extends Primary>> implementations = finder.findImplementations(Primary.class);
+        assertEquals(3, implementations.size());
+        assertTrue(implementations.contains(org.acme.foo.Green.Emerald.class));
+    }
+
+    private static Archive archive() {
+        return new ClassesArchive(ClassFinderDepthTest.Crimson.class, ClassFinderDepthTest.Square.class,
+                org.acme.foo.Red.class, org.acme.foo.Green.class, org.acme.foo.Green.Emerald.class);
+    }
+
+    private static Set<Class<?>> set(final List<? extends Class<?>> classes) {
+        final Set<Class<?>> set = new HashSet<Class<?>>(classes);
+        assertEquals("no duplicates", classes.size(), set.size());
+        return set;
+    }
+}
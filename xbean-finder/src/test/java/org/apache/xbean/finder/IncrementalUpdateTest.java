@@ -0,0 +1,167 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.acme.foo.Blue;
+import org.acme.foo.Color;
+import org.acme.foo.Green;
+import org.acme.foo.Primary;
+import org.acme.foo.Property;
+import org.acme.foo.Red;
+import org.apache.xbean.finder.archive.FileArchive;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class IncrementalUpdateTest {
+
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void updatedFinderMatchesAFreshScan() throws Exception {
+        final File dir = tmp.newFolder("classes");
+        copy(dir, Primary.class, Color.class, Property.class, Red.class, Red.CandyApple.class, Green.class, Green.Emerald.class);
+
+        final int[] reads = new int[1];
+        final AnnotationFinder finder = new AnnotationFinder(new FileArchive(loader(dir), dir) {
+            @Override
+            public InputStream getBytecode(String className) throws IOException, ClassNotFoundException {
+                reads[0]++;
+                return super.getBytecode(className);
+            }
+        }).link();
+        assertTrue(names(finder.findAnnotatedClasses(Color.class)).contains(Green.class.getName()));
+
+        // removed, added and changed (no more annotated but still the parent of Emerald)
+        assertTrue(new File(dir, path(Red.CandyApple.class)).delete());
+        copy(dir, Blue.class, Blue.Navy.class);
+        Files.write(new File(dir, path(Green.class)).toPath(), withoutClassAnnotations(Green.class));
+
+        reads[0] = 0;
+        finder.update(asList(Red.CandyApple.class.getName(), Blue.class.getName(), Blue.Navy.class.getName(), Green.class.getName()));
+        assertEquals(4, reads[0]);
+
+        final AnnotationFinder fresh = new AnnotationFinder(new FileArchive(loader(dir), dir)).link();
+        assertEquals(sorted(fresh.getAnnotatedClassNames()), sorted(finder.getAnnotatedClassNames()));
+        assertEquals(sorted(names(fresh.findAnnotatedClasses(Color.class))), sorted(names(finder.findAnnotatedClasses(Color.class))));
+        assertEquals(fresh.findAnnotatedMethods(Property.class), finder.findAnnotatedMethods(Property.class));
+        assertEquals(fresh.findSubclasses(Green.class), finder.findSubclasses(Green.class));
+        assertEquals(sorted(names(fresh.findImplementations(Primary.class))), sorted(names(finder.findImplementations(Primary.class))));
+
+        assertTrue(names(finder.findAnnotatedClasses(Color.class)).contains(Blue.Navy.class.getName()));
+        assertTrue(!names(finder.findAnnotatedClasses(Color.class)).contains(Green.class.getName()));
+        assertEquals(Collections.<Class<?>>singletonList(Green.Emerald.class), finder.findSubclasses(Green.class));
+    }
+
+    @Test
+    public void unknownClassesAreIgnored() throws Exception {
+        final File dir = tmp.newFolder("unknown");
+        copy(dir, Color.class, Red.class);
+
+        final AnnotationFinder finder = new AnnotationFinder(new FileArchive(loader(dir), dir)).link();
+        final List<String> before = sorted(finder.getAnnotatedClassNames());
+        finder.update(asList("org.acme.foo.Missing"));
+        assertEquals(before, sorted(finder.getAnnotatedClassNames()));
+    }
+
+    private static ClassLoader loader(final File dir) throws Exception {
+        // bytecode from the directory, classes from the test classpath
+        return new URLClassLoader(new URL[]{dir.toURI().toURL()}, IncrementalUpdateTest.class.getClassLoader()) {
+            @Override
+            public URL getResource(String name) {
+                return findResource(name);
+            }
+        };
+    }
+
+    private static void copy(final File dir, final Class<?>... classes) throws IOException {
+        for (Class<?> clazz : classes) {
+            final File file = new File(dir, path(clazz));
+            file.getParentFile().mkdirs();
+            Files.write(file.toPath(), bytecode(clazz));
+        }
+    }
+
+    private static byte[] withoutClassAnnotations(final Class<?> clazz) throws IOException {
+        final ClassWriter writer = new ClassWriter(0);
+        new ClassReader(bytecode(clazz)).accept(new ClassVisitor(Opcodes.ASM9, writer) {
+            @Override
+            public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+                return null;
+            }
+        }, 0);
+        return writer.toByteArray();
+    }
+
+    private static byte[] bytecode(final Class<?> clazz) throws IOException {
+        final InputStream in = clazz.getClassLoader().getResourceAsStream(path(clazz));
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String path(final Class<?> clazz) {
+        return clazz.getName().replace('.', '/') + ".class";
+    }
+
+    private static List<String> names(final Collection<? extends Class<?>> classes) {
+        final List<String> names = new ArrayList<String>();
+        for (Class<?> clazz : classes) {
+            names.add(clazz.getName());
+        }
+        return names;
+    }
+
+    private static List<String> sorted(final Collection<String> values) {
+        final List<String> sorted = new ArrayList<String>(values);
+        Collections.sort(sorted);
+        return sorted;
+    }
+}
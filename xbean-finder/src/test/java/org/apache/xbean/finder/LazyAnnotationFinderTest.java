@@ -0,0 +1,127 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.acme.foo.Color;
+import org.acme.foo.Holiday;
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.CompositeArchive;
+import org.apache.xbean.finder.archive.FileArchive;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LazyAnnotationFinderTest {
+
+    @Test
+    public void nothingIsReadBeforeTheFirstQuery() throws Exception {
+        final CountingArchive archive = new CountingArchive(archive("org/acme/foo"));
+        final AnnotationFinder lazy = new AnnotationFinder(archive, true, null, true);
+        assertEquals(0, archive.reads);
+
+        final AnnotationFinder eager = new AnnotationFinder(archive("org/acme/foo"));
+        assertEquals(eager.findAnnotatedClasses(Color.class), lazy.findAnnotatedClasses(Color.class));
+        final int reads = archive.reads;
+        assertTrue(reads > 0);
+
+        assertEquals(eager.findAnnotatedMethods(Holiday.class), lazy.findAnnotatedMethods(Holiday.class));
+        assertEquals(eager.getAnnotatedClassNames(), lazy.getAnnotatedClassNames());
+        assertEquals(reads, archive.reads);
+    }
+
+    @Test
+    public void linkTriggersTheScan() throws Exception {
+        final AnnotationFinder eager = new AnnotationFinder(archive("org/acme/foo")).link();
+        final AnnotationFinder lazy = new AnnotationFinder(archive("org/acme/foo"), true, null, true).link();
+
+        assertEquals(eager.findSubclasses(Holiday.class), lazy.findSubclasses(Holiday.class));
+        assertEquals(eager.findImplementations(Color.class), lazy.findImplementations(Color.class));
+    }
+
+    @Test
+    public void scannedArchivesAreRemembered() throws Exception {
+        final CountingArchive first = new CountingArchive(archive("org/acme/foo"));
+        final CountingArchive second = new CountingArchive(archive("org/acme/bar"));
+        second.failures = 1;
+
+        final AnnotationFinder finder = new AnnotationFinder(new CompositeArchive(first, second), true, null, true);
+        try {
+            finder.findAnnotatedClasses(Color.class);
+            fail("the second archive can't be read");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        final int reads = first.reads;
+
+        final AnnotationFinder expected = new AnnotationFinder(new CompositeArchive(archive("org/acme/foo"), archive("org/acme/bar")));
+        assertEquals(expected.findAnnotatedClasses(Color.class), finder.findAnnotatedClasses(Color.class));
+        assertEquals(expected.getAnnotatedClassNames(), finder.getAnnotatedClassNames());
+        assertEquals(reads, first.reads);
+    }
+
+    private static Archive archive(final String path) throws Exception {
+        final File classes = new File(Holiday.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        return new FileArchive(LazyAnnotationFinderTest.class.getClassLoader(), new File(classes, path), path.replace('/', '.'));
+    }
+
+    private static class CountingArchive implements Archive {
+        private final Archive archive;
+        private int reads;
+        private int failures;
+
+        private CountingArchive(final Archive archive) {
+            this.archive = archive;
+        }
+
+        public InputStream getBytecode(final String className) throws IOException, ClassNotFoundException {
+            return archive.getBytecode(className);
+        }
+
+        public Class<?> loadClass(final String className) throws ClassNotFoundException {
+            return archive.loadClass(className);
+        }
+
+        public Iterator<Entry> iterator() {
+            if (failures > 0) {
+                failures--;
+                throw new IllegalStateException("can't read the archive");
+            }
+            final Iterator<Entry> iterator = archive.iterator();
+            return new Iterator<Entry>() {
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                public Entry next() {
+                    reads++;
+                    return iterator.next();
+                }
+
+                public void remove() {
+                    throw new UnsupportedOperationException("remove");
+                }
+            };
+        }
+    }
+}
@@ -164,6 +164,44 @@ public class MetaAnnotatedMethodTest extends TestCase {
 
     }
 
+    public void testUnrolledOnce() throws Exception {
+        final Method circle = Circle.class.getMethod("circle", int.class);
+
+        final MetaAnnotatedMethod first = new MetaAnnotatedMethod(circle);
+        final MetaAnnotatedMethod second = new MetaAnnotatedMethod(circle);
+
+        assertEquals(2, second.getAnnotations().length);
+        assertSame(first.getAnnotation(Color.class), second.getAnnotation(Color.class));
+        assertEquals(first.getMetaAnnotations().size(), second.getMetaAnnotations().size());
+        assertTrue(first.getMetaAnnotations().containsAll(second.getMetaAnnotations()));
+
+        // each instance still owns its parameter annotations
+        assertNotSame(first.getParameterAnnotations(), second.getParameterAnnotations());
+        assertEquals(first.getParameterAnnotations().length, second.getParameterAnnotations().length);
+
+        // the shared meta annotations can't be changed through an instance
+        try {
+            first.getMetaAnnotations().iterator().next().getConflicts().add(null);
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    public void testUnrollParametersOverride() throws Exception {
+        final Method circle = Circle.class.getMethod("circle", int.class);
+        assertEquals(1, new MetaAnnotatedMethod(circle).getParameterAnnotations().length);
+
+        final MetaAnnotatedMethod custom = new MetaAnnotatedMethod(circle) {
+            @Override
+            protected Annotation[][] unrollParameters(Annotation[][] parameterAnnotations) {
+                return new Annotation[0][];
+            }
+        };
+        assertEquals(0, custom.getParameterAnnotations().length);
+        assertEquals(1, new MetaAnnotatedMethod(circle).getParameterAnnotations().length);
+    }
+
     private boolean contains(Class<? extends Annotation> type, Annotation[] annotations) {
         for (Annotation annotation : annotations) {
             if (type.isAssignableFrom(annotation.annotationType())) return true;
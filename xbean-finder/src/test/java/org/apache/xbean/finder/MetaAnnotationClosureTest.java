@@ -0,0 +1,139 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.ClassesArchive;
+import org.apache.xbean.finder.archive.FilteredArchive;
+import org.apache.xbean.finder.filter.Filter;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MetaAnnotationClosureTest {
+
+    @Test
+    public void eachAnnotationTypeIsReadOnce() throws Exception {
+        final CountingArchive archive = new CountingArchive(Annotated.class, AlsoAnnotated.class);
+        final AnnotationFinder finder = new AnnotationFinder(archive);
+
+        finder.enableMetaAnnotations();
+        for (Class<?> annotation : new Class<?>[]{First.class, Second.class, Third.class, Retention.class}) {
+            assertEquals(annotation.getName(), Integer.valueOf(1), archive.lookups.get(annotation.getName()));
+        }
+        for (Integer lookups : archive.lookups.values()) {
+            assertEquals(archive.lookups.toString(), 1, lookups.intValue());
+        }
+        assertTrue(finder.isAnnotationPresent(Third.class));
+
+        // nothing changed, nothing to resolve again
+        final int lookups = archive.lookups.size();
+        finder.enableMetaAnnotations();
+        finder.link();
+        assertEquals(lookups, archive.lookups.size());
+        for (Integer count : archive.lookups.values()) {
+            assertEquals(1, count.intValue());
+        }
+    }
+
+    @Test
+    public void replacedClassIsLinked() throws Exception {
+        final CountingArchive archive = new CountingArchive(Annotated.class, AlsoAnnotated.class);
+        final Archive visible = new FilteredArchive(archive, new Filter() {
+            public boolean accept(final String name) {
+                return !archive.hidden.contains(name);
+            }
+        });
+        archive.hidden.add(AlsoAnnotated.class.getName());
+        final AnnotationFinder finder = new AnnotationFinder(visible).link();
+        assertFalse(classes(finder.findMetaAnnotatedClasses(Second.class)).contains(AlsoAnnotated.class));
+
+        // as many classes as before
+        archive.hidden.clear();
+        archive.hidden.add(Annotated.class.getName());
+        finder.update(Arrays.asList(Annotated.class.getName(), AlsoAnnotated.class.getName()));
+        finder.link();
+
+        final AnnotationFinder fresh = new AnnotationFinder(visible).link();
+        for (Class<? extends Annotation> annotation : Arrays.asList(First.class, Second.class, Third.class)) {
+            assertEquals(classes(fresh.findMetaAnnotatedClasses(annotation)), classes(finder.findMetaAnnotatedClasses(annotation)));
+        }
+        assertTrue(classes(finder.findMetaAnnotatedClasses(Second.class)).contains(AlsoAnnotated.class));
+    }
+
+    private static Set<Class<?>> classes(final List<org.apache.xbean.finder.Annotated<Class<?>>> annotated) {
+        final Set<Class<?>> classes = new HashSet<Class<?>>();
+        for (org.apache.xbean.finder.Annotated<Class<?>> clazz : annotated) {
+            classes.add(clazz.get());
+        }
+        return classes;
+    }
+
+    @Retention(RetentionPolicy.RUNTIME)
+    public @interface Third {
+    }
+
+    @Third
+    @Retention(RetentionPolicy.RUNTIME)
+    public @interface Second {
+    }
+
+    @Second
+    @Third
+    @Retention(RetentionPolicy.RUNTIME)
+    public @interface First {
+    }
+
+    @First
+    public static class Annotated {
+    }
+
+    @First
+    @Second
+    public static class AlsoAnnotated {
+    }
+
+    private static class CountingArchive extends ClassesArchive {
+        private final Map<String, Integer> lookups = new HashMap<String, Integer>();
+        private final Set<String> hidden = new HashSet<String>();
+
+        private CountingArchive(final Class<?>... classes) {
+            super(classes);
+        }
+
+        @Override
+        public InputStream findBytecode(final String className) throws IOException {
+            final Integer count = lookups.get(className);
+            lookups.put(className, count == null ? 1 : count + 1);
+            return hidden.contains(className) ? null : super.findBytecode(className);
+        }
+    }
+}
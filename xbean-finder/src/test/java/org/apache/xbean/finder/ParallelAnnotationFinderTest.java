@@ -0,0 +1,93 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.acme.foo.Color;
+import org.acme.foo.Holiday;
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.ArchiveIndex;
+import org.apache.xbean.finder.archive.Archives;
+import org.apache.xbean.finder.archive.IndexedArchive;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class ParallelAnnotationFinderTest {
+    private static ExecutorService executor;
+
+    @BeforeClass
+    public static void startExecutor() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterClass
+    public static void stopExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void sameModelAsSequentialScan() throws Exception {
+        final AnnotationFinder sequential = new AnnotationFinder(Archives.acmeArchive());
+        final AnnotationFinder parallel = new AnnotationFinder(Archives.acmeArchive(), true, executor);
+
+        assertFalse(sequential.classInfos.isEmpty());
+        assertEquals(sequential.getAnnotatedClassNames(), parallel.getAnnotatedClassNames());
+        assertEquals(sequential.classInfos.keySet(), parallel.classInfos.keySet());
+        assertEquals(Archives.snapshot(sequential.annotated), Archives.snapshot(parallel.annotated));
+    }
+
+    @Test
+    public void sameQueryResults() throws Exception {
+        final AnnotationFinder sequential = new AnnotationFinder(Archives.acmeArchive()).link();
+        final AnnotationFinder parallel = new AnnotationFinder(Archives.acmeArchive(), true, executor).link();
+
+        assertEquals(sequential.findAnnotatedClasses(Color.class), parallel.findAnnotatedClasses(Color.class));
+        assertEquals(sequential.findAnnotatedMethods(Holiday.class), parallel.findAnnotatedMethods(Holiday.class));
+        assertEquals(sequential.findSubclasses(Holiday.class), parallel.findSubclasses(Holiday.class));
+    }
+
+    @Test
+    public void overriddenReadClassDefSeesEveryEntry() throws Exception {
+        final Archive archive = Archives.acmeArchive();
+        final Archive indexed = new IndexedArchive(archive, ArchiveIndex.build(archive));
+        final List<String> read = new ArrayList<String>();
+        final AnnotationFinder finder = new AnnotationFinder(indexed, true, executor) {
+            @Override
+            protected void readClassDef(final String className, final InputStream in) throws IOException {
+                read.add(className);
+                super.readClassDef(className, in);
+            }
+        };
+
+        final List<String> names = new ArrayList<String>();
+        for (final Archive.Entry entry : indexed) {
+            names.add(entry.getName());
+        }
+        assertEquals(names, read);
+        assertEquals(new AnnotationFinder(Archives.acmeArchive()).getAnnotatedClassNames(), finder.getAnnotatedClassNames());
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.acme.foo.Color;
+import org.acme.foo.Holiday;
+import org.acme.foo.Property;
+import org.acme.foo.Red;
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.Archives;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelLoadingTest {
+    private static ExecutorService executor;
+
+    @BeforeClass
+    public static void startExecutor() {
+        executor = Executors.newFixedThreadPool(8);
+    }
+
+    @AfterClass
+    public static void stopExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void sameResultsAsSerialLoading() throws Exception {
+        final AnnotationFinder serial = new AnnotationFinder(Archives.acmeArchive());
+        final SlowArchive archive = new SlowArchive(Archives.acmeArchive(), null);
+        final AnnotationFinder parallel = new AnnotationFinder(archive).link().enableParallelLoading(executor, 3);
+
+        assertEquals(serial.findAnnotatedClasses(Color.class), parallel.findAnnotatedClasses(Color.class));
+        assertEquals(serial.findAnnotatedMethods(Holiday.class), parallel.findAnnotatedMethods(Holiday.class));
+        assertEquals(serial.findAnnotatedMethods(Property.class), parallel.findAnnotatedMethods(Property.class));
+        assertEquals(serial.findMetaAnnotatedClasses(Color.class).size(), parallel.findMetaAnnotatedClasses(Color.class).size());
+
+        assertTrue(archive.threads.size() > 1);
+        assertTrue("at most 3 concurrent loads: " + archive.max.get(), archive.max.get() <= 3);
+    }
+
+    @Test
+    public void failuresAreReported() throws Exception {
+        final AnnotationFinder serial = new AnnotationFinder(new SlowArchive(Archives.acmeArchive(), Red.class.getName()));
+        final AnnotationFinder parallel = new AnnotationFinder(new SlowArchive(Archives.acmeArchive(), Red.class.getName())).enableParallelLoading(executor, 4);
+
+        assertEquals(serial.findAnnotatedClasses(Color.class), parallel.findAnnotatedClasses(Color.class));
+        assertFalse(parallel.findAnnotatedClasses(Color.class).contains(Red.class));
+        assertTrue(parallel.getClassesNotLoaded().contains(Red.class.getName()));
+        assertEquals(serial.getClassesNotLoaded(), parallel.getClassesNotLoaded());
+    }
+
+    @Test
+    public void queryFromALoadingThread() throws Exception {
+        final ExecutorService single = Executors.newFixedThreadPool(1);
+        try {
+            final AnnotationFinder parallel = new AnnotationFinder(Archives.acmeArchive()).enableParallelLoading(single, 4);
+            // the workers queue behind the query, it must not wait for them
+            final Future<List<Class<?>>> classes = single.submit(new Callable<List<Class<?>>>() {
+                public List<Class<?>> call() {
+                    return parallel.findAnnotatedClasses(Color.class);
+                }
+            });
+            assertEquals(new AnnotationFinder(Archives.acmeArchive()).findAnnotatedClasses(Color.class), classes.get(10, TimeUnit.SECONDS));
+        } finally {
+            single.shutdownNow();
+        }
+    }
+
+    private static class SlowArchive implements Archive {
+        private final Archive archive;
+        private final String missing;
+        private final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+        private final AtomicInteger loading = new AtomicInteger();
+        private final AtomicInteger max = new AtomicInteger();
+
+        private SlowArchive(final Archive archive, final String missing) {
+            this.archive = archive;
+            this.missing = missing;
+        }
+
+        public InputStream getBytecode(final String className) throws IOException, ClassNotFoundException {
+            return archive.getBytecode(className);
+        }
+
+        public Class<?> loadClass(final String className) throws ClassNotFoundException {
+            final int current = loading.incrementAndGet();
+            try {
+                threads.add(Thread.currentThread());
+                int previous;
+                while ((previous = max.get()) < current && !max.compareAndSet(previous, current)) {
+                    // retry
+                }
+                Thread.sleep(5);
+                if (className.equals(missing)) {
+                    throw new ClassNotFoundException(className);
+                }
+                return archive.loadClass(className);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                loading.decrementAndGet();
+            }
+        }
+
+        public Iterator<Entry> iterator() {
+            return archive.iterator();
+        }
+    }
+}
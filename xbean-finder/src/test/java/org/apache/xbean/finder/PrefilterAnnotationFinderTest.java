@@ -0,0 +1,129 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.acme.foo.Color;
+import org.acme.foo.Holiday;
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.Archives;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PrefilterAnnotationFinderTest {
+
+    @Test
+    public void sameAnnotationModel() throws Exception {
+        final AnnotationFinder full = new AnnotationFinder(Archives.acmeArchive());
+        final AnnotationFinder filtered = finder(null, true);
+
+        assertEquals(Archives.snapshot(full.annotated), Archives.snapshot(filtered.annotated));
+        assertEquals(full.classInfos.keySet(), filtered.classInfos.keySet());
+
+        // classes without annotations keep their hierarchy only
+        int skipped = 0;
+        for (final AnnotationFinder.ClassInfo info : full.classInfos.values()) {
+            final AnnotationFinder.ClassInfo header = filtered.classInfos.get(info.getName());
+            assertEquals(info.getSuperType(), header.getSuperType());
+            assertEquals(new ArrayList<String>(info.getInterfaces()), new ArrayList<String>(header.getInterfaces()));
+            if (!annotated(info)) {
+                assertTrue(header.getMethods().isEmpty());
+                assertTrue(header.getFields().isEmpty());
+                skipped++;
+            }
+        }
+        assertTrue(skipped > 0);
+    }
+
+    @Test
+    public void sameQueryResults() throws Exception {
+        final AnnotationFinder full = new AnnotationFinder(Archives.acmeArchive()).link();
+        final AnnotationFinder filtered = finder(null, true).link();
+
+        assertEquals(full.findAnnotatedClasses(Color.class), filtered.findAnnotatedClasses(Color.class));
+        assertEquals(full.findAnnotatedMethods(Holiday.class), filtered.findAnnotatedMethods(Holiday.class));
+        assertEquals(full.findSubclasses(Holiday.class), filtered.findSubclasses(Holiday.class));
+        assertEquals(full.findImplementations(Color.class), filtered.findImplementations(Color.class));
+    }
+
+    @Test
+    public void trackedAnnotationsOnly() throws Exception {
+        final String color = "L" + Color.class.getName().replace('.', '/') + ";";
+        final AnnotationFinder full = finder(color, false);
+        final AnnotationFinder filtered = finder(color, true);
+
+        assertFalse(Archives.snapshot(filtered.annotated).isEmpty());
+        assertEquals(Archives.snapshot(full.annotated), Archives.snapshot(filtered.annotated));
+        assertEquals(full.classInfos.keySet(), filtered.classInfos.keySet());
+    }
+
+    private static boolean annotated(final AnnotationFinder.ClassInfo info) {
+        if (!info.getAnnotations().isEmpty()) {
+            return true;
+        }
+        for (final AnnotationFinder.MethodInfo method : info.getMethods()) {
+            if (!method.getAnnotations().isEmpty() || !method.getParameters().isEmpty()) {
+                return true;
+            }
+        }
+        for (final AnnotationFinder.FieldInfo field : info.getFields()) {
+            if (!field.getAnnotations().isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // isTracked() is called from the super constructor, before any field is set
+    private static final ThreadLocal<String> TRACKED = new ThreadLocal<String>();
+
+    private static AnnotationFinder finder(final String tracked, final boolean prefilter) throws Exception {
+        TRACKED.set(tracked);
+        try {
+            return prefilter ? new PrefilteringFinder(Archives.acmeArchive()) : new TrackingFinder(Archives.acmeArchive());
+        } finally {
+            TRACKED.remove();
+        }
+    }
+
+    private static class TrackingFinder extends AnnotationFinder {
+        private TrackingFinder(final Archive archive) {
+            super(archive);
+        }
+
+        @Override
+        protected boolean isTracked(final String annotationType) {
+            final String tracked = TRACKED.get();
+            return tracked == null || tracked.equals(annotationType);
+        }
+    }
+
+    private static class PrefilteringFinder extends TrackingFinder {
+        private PrefilteringFinder(final Archive archive) {
+            super(archive);
+        }
+
+        @Override
+        protected boolean prefilter() {
+            return true;
+        }
+    }
+}
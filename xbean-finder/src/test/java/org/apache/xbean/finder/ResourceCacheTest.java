@@ -0,0 +1,139 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.apache.xbean.finder.archive.Archives;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class ResourceCacheTest {
+
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void sameAnswersAsWithoutCache() throws Exception {
+        final URL jar = jar("org.acme.ServiceImpl").toURI().toURL();
+        final ResourceCache cache = new ResourceCache();
+
+        for (int i = 0; i < 2; i++) {
+            final ResourceFinder cached = new ResourceFinder("META-INF/", jar).enableCache(cache);
+            final ResourceFinder plain = new ResourceFinder("META-INF/", jar);
+
+            assertEquals(plain.mapAvailableStrings("services"), cached.mapAvailableStrings("services"));
+            assertEquals(plain.findAllStrings("services/org.acme.Service"), cached.findAllStrings("services/org.acme.Service"));
+            assertEquals(plain.findAvailableProperties("widget.properties"), cached.findAvailableProperties("widget.properties"));
+            assertEquals(plain.getResourcesMap("services"), cached.getResourcesMap("services"));
+        }
+        assertEquals("org.acme.ServiceImpl", new ResourceFinder("META-INF/", jar).enableCache(cache).findString("services/org.acme.Service"));
+    }
+
+    @Test
+    public void returnedMapsAreCopies() throws Exception {
+        final URL jar = jar("org.acme.ServiceImpl").toURI().toURL();
+        final ResourceFinder finder = new ResourceFinder("META-INF/", jar).enableCache(new ResourceCache());
+
+        finder.getResourcesMap("services").clear();
+        assertEquals(2, finder.getResourcesMap("services").size());
+        finder.getResourcesMap("services").clear();
+        assertEquals(2, finder.getResourcesMap("services").size());
+    }
+
+    @Test
+    public void storedAndReused() throws Exception {
+        final File jar = jar("org.acme.ServiceImpl");
+        final File directory = tmp.newFolder("cache");
+
+        final Map<String, String> first = new ResourceFinder("META-INF/", jar.toURI().toURL())
+                .enableCache(new ResourceCache(directory)).mapAvailableStrings("services");
+        assertEquals("org.acme.ServiceImpl", first.get("org.acme.Service"));
+
+        final File[] stored = directory.listFiles();
+        assertEquals(2, stored.length);
+        final long storedAt = stored[0].lastModified();
+
+        // next run
+        final Map<String, String> second = new ResourceFinder("META-INF/", jar.toURI().toURL())
+                .enableCache(new ResourceCache(directory)).mapAvailableStrings("services");
+        assertEquals(first, second);
+        assertNotSame(first, second);
+        assertEquals(2, directory.listFiles().length);
+        assertEquals(storedAt, stored[0].lastModified());
+    }
+
+    @Test
+    public void changedFileIsReadAgain() throws Exception {
+        final File file = tmp.newFile("org.acme.Service");
+        write(file, "org.acme.ServiceImpl");
+        final long lastModified = file.lastModified();
+        final File directory = tmp.newFolder("cache");
+        final ResourceCache cache = new ResourceCache(directory);
+        final URL url = file.toURI().toURL();
+
+        assertEquals("org.acme.ServiceImpl", new String(cache.read(url), "UTF-8"));
+
+        write(file, "org.acme.BetterServiceImpl");
+        file.setLastModified(lastModified + 2000);
+
+        assertEquals("org.acme.BetterServiceImpl", new String(cache.read(url), "UTF-8"));
+        assertEquals("org.acme.BetterServiceImpl", new String(new ResourceCache(directory).read(url), "UTF-8"));
+    }
+
+    @Test
+    public void propertiesAreNotShared() throws Exception {
+        final URL jar = jar("org.acme.ServiceImpl").toURI().toURL();
+        final ResourceCache cache = new ResourceCache();
+
+        final Properties properties = new ResourceFinder("META-INF/", jar).enableCache(cache).findProperties("widget.properties");
+        properties.setProperty("color", "blue");
+
+        assertEquals("red", new ResourceFinder("META-INF/", jar).enableCache(cache).findProperties("widget.properties").getProperty("color"));
+    }
+
+    private static void write(File file, String content) throws Exception {
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    private static File jar(String implementation) throws Exception {
+        final Map<String, String> entries = new HashMap<String, String>();
+        entries.put("META-INF/", "");
+        entries.put("META-INF/services/", "");
+        entries.put("META-INF/services/org.acme.Service", implementation);
+        entries.put("META-INF/services/org.acme.Other", "org.acme.OtherImpl");
+        entries.put("META-INF/widget.properties", "color=red");
+        return Archives.jarArchive(entries);
+    }
+}
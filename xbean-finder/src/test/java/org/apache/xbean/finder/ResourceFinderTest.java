@@ -24,12 +24,20 @@ import java.io.File;
 import java.io.IOException;
 import java.net.JarURLConnection;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
@@ -374,6 +382,101 @@ public class ResourceFinderTest extends TestCase {
         assertNotNull(beansXmlUrl);
     }
 
+    public void testJarEntriesIndex() throws Exception {
+        Map<String, String> map = new HashMap<String, String>();
+        map.put("META-INF/services/", "");
+        map.put("META-INF/tvshows/", "");
+        map.put("META-INF/services/org.acme.Service", "org.acme.ServiceImpl");
+        map.put("META-INF/services/org.acme.Other", "org.acme.OtherImpl");
+        map.put("META-INF/services/nested/org.acme.Nested", "org.acme.NestedImpl");
+        map.put("META-INF/tvshows/simpsons.properties", "name=The Simpsons");
+
+        final File jarFile = Archives.jarArchive(map);
+        final ResourceFinder finder = new ResourceFinder("META-INF/", jarFile.toURI().toURL());
+
+        assertEquals("org.acme.ServiceImpl", finder.findString("services/org.acme.Service"));
+        assertEquals("org.acme.NestedImpl", finder.findString("services/nested/org.acme.Nested"));
+        assertNull(finder.getResource("META-INF/services/org.acme.Missing"));
+        assertNotNull(finder.getResource("META-INF/services"));
+
+        final Map<String, String> services = finder.mapAvailableStrings("services");
+        assertEquals(2, services.size());
+        assertEquals("org.acme.ServiceImpl", services.get("org.acme.Service"));
+        assertEquals("org.acme.OtherImpl", services.get("org.acme.Other"));
+
+        // answered from the same index
+        assertEquals(1, finder.getResourcesMap("tvshows").size());
+        assertTrue(finder.getResourcesMap("missing").isEmpty());
+    }
+
+    public void testReadStrings() throws Exception {
+        final File fr = File.createTempFile("greeting-fr", ".txt");
+        final File en = File.createTempFile("greeting-en", ".txt");
+        fr.deleteOnExit();
+        en.deleteOnExit();
+        Files.write(fr.toPath(), "  h\u00e9llo\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(en.toPath(), "hello".getBytes(StandardCharsets.UTF_8));
+
+        final List<URL> urls = Arrays.asList(fr.toURI().toURL(), en.toURI().toURL());
+        assertEquals(Arrays.asList("h\u00e9llo", "hello"), resourceFinder.readStrings(urls, StandardCharsets.UTF_8));
+        assertEquals("h\u00c3\u00a9llo", resourceFinder.readStrings(urls, StandardCharsets.ISO_8859_1).get(0));
+
+        try {
+            resourceFinder.readStrings(Arrays.asList(fr.toURI().toURL(), new File(en.getPath() + "-missing").toURI().toURL()), StandardCharsets.UTF_8);
+            fail("IOException should have been thrown");
+        } catch (IOException e) {
+            // pass
+        }
+    }
+
+    public void testParallelReads() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            final ResourceFinder parallel = new ResourceFinder("META-INF/").enableParallelReads(executor, 4);
+
+            assertEquals(resourceFinder.mapAvailableStrings("serializables"), parallel.mapAvailableStrings("serializables"));
+            assertEquals(resourceFinder.mapAllProperties("tvshows"), parallel.mapAllProperties("tvshows"));
+            assertEquals(resourceFinder.findAllStrings("java.io.Serializable"), parallel.findAllStrings("java.io.Serializable"));
+            assertEquals(resourceFinder.mapAvailableImplementations(java.net.URLStreamHandler.class), parallel.mapAvailableImplementations(java.net.URLStreamHandler.class));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testParallelReadsFromAReadingThread() throws Exception {
+        final ExecutorService single = Executors.newFixedThreadPool(1);
+        try {
+            final ResourceFinder parallel = new ResourceFinder("META-INF/").enableParallelReads(single, 4);
+            // the workers queue behind the read, it must not wait for them
+            final Future<Map<String, String>> strings = single.submit(new Callable<Map<String, String>>() {
+                public Map<String, String> call() throws Exception {
+                    return parallel.mapAllStrings("serializables");
+                }
+            });
+            assertEquals(resourceFinder.mapAllStrings("serializables"), strings.get(10, TimeUnit.SECONDS));
+        } finally {
+            single.shutdownNow();
+        }
+    }
+
+    public void testParallelReadsWhenInterrupted() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            final ResourceFinder parallel = new ResourceFinder("META-INF/").enableParallelReads(executor, 4);
+            final Map<String, Properties> expected = resourceFinder.mapAllProperties("tvshows");
+
+            Thread.currentThread().interrupt();
+            try {
+                assertEquals(expected, parallel.mapAllProperties("tvshows"));
+                assertTrue(Thread.currentThread().isInterrupted());
+            } finally {
+                Thread.interrupted();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
 
     private static void readJarEntries(URL location, String basePath, Map<String, URL> resources) throws IOException {
         JarURLConnection conn = (JarURLConnection) location.openConnection();
@@ -0,0 +1,177 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.acme.foo.Blue;
+import org.acme.foo.Color;
+import org.acme.foo.Green;
+import org.acme.foo.Red;
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.ArchiveIndex;
+import org.apache.xbean.finder.archive.Archives;
+import org.apache.xbean.finder.archive.ClasspathArchive;
+import org.apache.xbean.finder.archive.CompositeArchive;
+import org.apache.xbean.finder.archive.FilteredArchive;
+import org.apache.xbean.finder.archive.IndexedArchive;
+import org.apache.xbean.finder.archive.JarArchive;
+import org.apache.xbean.finder.filter.PrefixFilter;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class ScanMetricsTest {
+
+    @Test
+    public void archivesAreReportedOneByOne() throws Exception {
+        final URL blue = url(Archives.jarArchive(Blue.class, Blue.Navy.class, Blue.Sky.class));
+        final URL others = url(Archives.jarArchive(Green.class, Green.Emerald.class, Red.class, Red.CandyApple.class, Red.Pink.class));
+        final ScanMetrics metrics = new ScanMetrics();
+
+        final AnnotationFinder finder = new AnnotationFinder(new ClasspathArchive(new URLClassLoader(new URL[]{blue, others}), blue, others), true, null, true)
+                .enableScanListener(metrics);
+        assertEquals(8, finder.findAnnotatedClasses(Color.class).size());
+
+        final Map<String, ScanMetrics.ArchiveMetrics> archives = metrics.getArchives();
+        assertEquals(2, archives.size());
+        assertEquals(3, archives.get(blue.toExternalForm()).getEntries());
+        assertEquals(5, archives.get(others.toExternalForm()).getEntries());
+        assertTrue(archives.get(blue.toExternalForm()).getBytes() > 0);
+        assertTrue(archives.get(blue.toExternalForm()).getNanos() >= archives.get(blue.toExternalForm()).getParseNanos());
+        assertEquals(8, metrics.getEntriesRead());
+        assertEquals(8, metrics.getClassesLoaded());
+        assertEquals(0, metrics.getLoadFailures());
+        assertEquals(2, metrics.getArchiveReport().length);
+
+        finder.link();
+        assertTrue(metrics.getLinks().containsKey("subclasses"));
+        assertTrue(metrics.getLinks().containsKey("implementations"));
+        assertTrue(metrics.getLinks().containsKey("meta-annotations"));
+    }
+
+    @Test
+    public void eagerFinderReportsItsConstructorScan() throws Exception {
+        final URL blue = url(Archives.jarArchive(Blue.class, Blue.Navy.class, Blue.Sky.class));
+        final URL others = url(Archives.jarArchive(Green.class, Green.Emerald.class, Red.class, Red.CandyApple.class, Red.Pink.class));
+        final ScanMetrics metrics = new ScanMetrics();
+
+        new AnnotationFinder(new ClasspathArchive(new URLClassLoader(new URL[]{blue, others}), blue, others), true, null, false, metrics);
+
+        final Map<String, ScanMetrics.ArchiveMetrics> archives = metrics.getArchives();
+        assertEquals(2, archives.size());
+        assertEquals(3, archives.get(blue.toExternalForm()).getEntries());
+        assertEquals(5, archives.get(others.toExternalForm()).getEntries());
+        assertEquals(bytes(Blue.class, Blue.Navy.class, Blue.Sky.class), archives.get(blue.toExternalForm()).getBytes());
+    }
+
+    @Test
+    public void indexedArchivesAreReportedByLocation() throws Exception {
+        final URL blue = url(Archives.jarArchive(Blue.class, Blue.Navy.class, Blue.Sky.class));
+        final URL others = url(Archives.jarArchive(Green.class, Green.Emerald.class, Red.class, Red.CandyApple.class, Red.Pink.class));
+        final ClassLoader loader = new URLClassLoader(new URL[]{blue, others});
+        final ScanMetrics metrics = new ScanMetrics();
+
+        final Archive archive = new CompositeArchive(
+                indexed(new JarArchive(loader, blue)),
+                new FilteredArchive(indexed(new JarArchive(loader, others)), new PrefixFilter(Red.class.getName())));
+        new AnnotationFinder(archive, true, null, false, metrics);
+
+        final Map<String, ScanMetrics.ArchiveMetrics> archives = metrics.getArchives();
+        assertEquals(2, archives.size());
+        assertEquals(3, archives.get(blue.toExternalForm()).getEntries());
+        assertEquals(3, archives.get(others.toExternalForm()).getEntries());
+    }
+
+    @Test
+    public void loadFailures() throws Exception {
+        final File jar = Archives.jarArchive(Red.class, Red.CandyApple.class, Red.Pink.class);
+        // the bootstrap loader doesn't see the classes of the jar
+        final Archive archive = new JarArchive(new URLClassLoader(new URL[0], null), url(jar));
+        final Recording recording = new Recording();
+
+        final AnnotationFinder finder = new AnnotationFinder(archive, true, null, true).enableScanListener(recording);
+        assertEquals(0, finder.findAnnotatedClasses(Color.class).size());
+        // one failure per class, getClassesNotLoaded() lists them once per lookup
+        assertEquals(3, recording.notLoaded.size());
+        assertTrue(finder.getClassesNotLoaded().containsAll(recording.notLoaded));
+        assertTrue(recording.notLoaded.contains(Red.class.getName()));
+        assertEquals(1, recording.archives.size());
+    }
+
+    @Test
+    public void jmx() throws Exception {
+        final URL url = url(Archives.jarArchive(Blue.class, Blue.Navy.class, Blue.Sky.class));
+        final ScanMetrics metrics = new ScanMetrics();
+        final MBeanServer server = MBeanServerFactory.newMBeanServer();
+        final ObjectName name = new ObjectName(ScanMetrics.OBJECT_NAME);
+        metrics.registerMBean(server, name);
+
+        new AnnotationFinder(new ClasspathArchive(new URLClassLoader(new URL[]{url}), url), true, null, true)
+                .enableScanListener(metrics).findAnnotatedClasses(Color.class);
+
+        assertEquals(3L, server.getAttribute(name, "EntriesRead"));
+        assertEquals(1L, server.getAttribute(name, "ArchivesScanned"));
+        assertEquals(1, ((String[]) server.getAttribute(name, "ArchiveReport")).length);
+
+        server.invoke(name, "reset", null, null);
+        assertEquals(0L, server.getAttribute(name, "EntriesRead"));
+    }
+
+    private static long bytes(final Class<?>... classes) throws Exception {
+        long bytes = 0;
+        for (Class<?> clazz : classes) {
+            bytes += clazz.getClassLoader().getResource(clazz.getName().replace('.', '/') + ".class").openConnection().getContentLengthLong();
+        }
+        return bytes;
+    }
+
+    private static Archive indexed(final Archive archive) throws Exception {
+        return new IndexedArchive(archive, ArchiveIndex.build(archive));
+    }
+
+    private static URL url(final File jar) throws Exception {
+        return new URL("jar:" + jar.toURI().toURL() + "!/");
+    }
+
+    private static class Recording implements ScanListener {
+        private final List<Archive> archives = new CopyOnWriteArrayList<Archive>();
+        private final List<String> notLoaded = new CopyOnWriteArrayList<String>();
+
+        @Override
+        public void archiveScanned(final Archive archive, final int entries, final long bytes, final long parseNanos, final long nanos) {
+            archives.add(archive);
+        }
+
+        @Override
+        public void classNotLoaded(final String className, final Throwable cause) {
+            notLoaded.add(className);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.acme.foo.Color;
+import org.acme.foo.Holiday;
+import org.acme.foo.Property;
+import org.acme.foo.Red;
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.Archives;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class StreamingQueryTest {
+
+    @Test
+    public void sameResultsAsTheLists() throws Exception {
+        for (boolean checkRuntimeAnnotation : new boolean[]{true, false}) {
+            final AnnotationFinder finder = new AnnotationFinder(Archives.acmeArchive(), checkRuntimeAnnotation);
+
+            assertEquals(finder.findAnnotatedClasses(Color.class), finder.streamAnnotatedClasses(Color.class).collect(Collectors.toList()));
+            assertEquals(finder.findAnnotatedMethods(Holiday.class), finder.streamAnnotatedMethods(Holiday.class).collect(Collectors.toList()));
+            assertEquals(finder.findAnnotatedMethods(Property.class), finder.streamAnnotatedMethods(Property.class).collect(Collectors.toList()));
+            assertEquals(finder.findAnnotatedFields(Deprecated.class), finder.streamAnnotatedFields(Deprecated.class).collect(Collectors.toList()));
+            assertEquals(finder.findAnnotatedConstructors(Deprecated.class), finder.streamAnnotatedConstructors(Deprecated.class).collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void classesAreLoadedWhenConsumed() throws Exception {
+        final CountingArchive archive = new CountingArchive(Archives.acmeArchive());
+        final AnnotationFinder finder = new AnnotationFinder(archive);
+        final int annotated = finder.findAnnotatedClasses(Color.class).size();
+        assertTrue(annotated > 1);
+
+        final AnnotationFinder lazy = new AnnotationFinder(archive);
+        archive.loaded = 0;
+
+        final List<String> names = lazy.streamAnnotatedInfos(Color.class).map(AnnotationFinder.Info::getName).collect(Collectors.toList());
+        assertEquals(annotated, names.size());
+        assertEquals(0, archive.loaded);
+
+        final Optional<Class<?>> first = lazy.streamAnnotatedClasses(Color.class).findFirst();
+        assertTrue(first.isPresent());
+        assertEquals(1, archive.loaded);
+    }
+
+    @Test
+    public void streamsKeepTheFailuresOfEachOther() throws Exception {
+        final CountingArchive archive = new CountingArchive(Archives.acmeArchive());
+        archive.missing = Red.class.getName();
+        final AnnotationFinder finder = new AnnotationFinder(archive);
+
+        final Iterator<Class<?>> colors = finder.streamAnnotatedClasses(Color.class).iterator();
+        while (colors.hasNext()) {
+            colors.next();
+        }
+        assertTrue(finder.getClassesNotLoaded().contains(Red.class.getName()));
+
+        finder.streamAnnotatedMethods(Holiday.class).count();
+        assertTrue(finder.getClassesNotLoaded().contains(Red.class.getName()));
+    }
+
+    @Test
+    public void streamedInfosAreTheOnesKnownWhenCreated() throws Exception {
+        final AnnotationFinder finder = new AnnotationFinder(Archives.acmeArchive());
+        final List<AnnotationFinder.Info> known = finder.streamAnnotatedInfos(Color.class).collect(Collectors.toList());
+        final Stream<AnnotationFinder.Info> infos = finder.streamAnnotatedInfos(Color.class);
+
+        finder.update(Collections.singletonList(Red.class.getName()));
+
+        final List<AnnotationFinder.Info> streamed = infos.collect(Collectors.toList());
+        assertEquals(known.size(), streamed.size());
+        for (int i = 0; i < known.size(); i++) {
+            assertSame(known.get(i), streamed.get(i));
+        }
+        assertEquals(known.size(), finder.streamAnnotatedInfos(Color.class).count());
+    }
+
+    @Test
+    public void defaultMethodsStreamTheLists() throws Exception {
+        final IAnnotationFinder finder = new ClassFinder(Red.class, Red.Pink.class);
+        assertEquals(finder.findAnnotatedClasses(Color.class), finder.streamAnnotatedClasses(Color.class).collect(Collectors.toList()));
+    }
+
+    private static class CountingArchive implements Archive {
+        private final Archive archive;
+        private int loaded;
+        private String missing;
+
+        private CountingArchive(final Archive archive) {
+            this.archive = archive;
+        }
+
+        public InputStream getBytecode(final String className) throws IOException, ClassNotFoundException {
+            return archive.getBytecode(className);
+        }
+
+        public Class<?> loadClass(final String className) throws ClassNotFoundException {
+            loaded++;
+            if (className.equals(missing)) {
+                throw new ClassNotFoundException(className);
+            }
+            return archive.loadClass(className);
+        }
+
+        public Iterator<Entry> iterator() {
+            return archive.iterator();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import org.acme.foo.Blue;
+import org.acme.foo.Color;
+import org.acme.foo.Green;
+import org.acme.foo.Red;
+import org.apache.xbean.finder.AnnotationFinder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.HashMap;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class ArchiveIndexCacheTest {
+
+    private static final Class[] classes = {Blue.class, Blue.Navy.class, Blue.Sky.class, Green.class, Green.Emerald.class, Red.class, Red.CandyApple.class, Red.Pink.class};
+
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void indexRoundTrip() throws Exception {
+        final File jar = Archives.jarArchive(classes);
+        final ArchiveIndex index = ArchiveIndex.build(jarArchive(jar));
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        index.write(out);
+        final ArchiveIndex read = ArchiveIndex.read(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(classes.length, read.size());
+        assertEquals(index.getClassNames(), read.getClassNames());
+        assertSameResults(jarArchive(jar), new IndexedArchive(jarArchive(jar), read));
+    }
+
+    @Test
+    public void storedAndReused() throws Exception {
+        final File jar = Archives.jarArchive(classes);
+        final File directory = tmp.newFolder("cache");
+        final ArchiveIndexCache cache = new ArchiveIndexCache(directory);
+
+        final Archive first = cache.index(jarArchive(jar));
+        assertTrue(first instanceof IndexedArchive);
+        assertSameResults(jarArchive(jar), first);
+
+        final File[] stored = directory.listFiles();
+        assertEquals(1, stored.length);
+        final long storedAt = stored[0].lastModified();
+        final long size = stored[0].length();
+
+        final Archive second = cache.index(jarArchive(jar));
+        assertTrue(second instanceof IndexedArchive);
+        assertEquals(storedAt, stored[0].lastModified());
+        assertSameResults(jarArchive(jar), second);
+
+        // the jar changed so it is scanned again
+        Archives.jarArchive(jar, new HashMap<String, String>(), Red.class, Red.CandyApple.class, Red.Pink.class);
+        assertTrue(jar.setLastModified(jar.lastModified() + 60000));
+        final Archive third = cache.index(jarArchive(jar));
+        assertEquals(3, ((IndexedArchive) third).getIndex().size());
+        assertTrue(size != directory.listFiles()[0].length());
+    }
+
+    @Test
+    public void digestKeys() throws Exception {
+        final File jar = Archives.jarArchive(classes);
+        final File directory = tmp.newFolder("digest");
+        final ArchiveIndexCache cache = new ArchiveIndexCache(directory, true);
+
+        assertSameResults(jarArchive(jar), cache.index(jarArchive(jar)));
+        assertTrue(jar.setLastModified(jar.lastModified() + 60000));
+        assertSameResults(jarArchive(jar), cache.index(jarArchive(jar)));
+        assertEquals(1, directory.listFiles().length);
+    }
+
+    @Test
+    public void compositeChildrenAreIndexed() throws Exception {
+        final File jar = Archives.jarArchive(classes);
+        final ArchiveIndexCache cache = new ArchiveIndexCache(tmp.newFolder("composite"));
+
+        final Archive archive = cache.index(new CompositeArchive(jarArchive(jar)));
+        assertTrue(archive instanceof CompositeArchive);
+        assertTrue(((CompositeArchive) archive).getArchives().get(0) instanceof IndexedArchive);
+        assertSameResults(jarArchive(jar), archive);
+    }
+
+    static void assertSameResults(final Archive expected, final Archive actual) {
+        final AnnotationFinder scanned = new AnnotationFinder(expected).link();
+        final AnnotationFinder indexed = new AnnotationFinder(actual).link();
+
+        assertEquals(names(scanned.findAnnotatedClasses(Color.class)), names(indexed.findAnnotatedClasses(Color.class)));
+        assertEquals(scanned.getAnnotatedClassNames().size(), indexed.getAnnotatedClassNames().size());
+        assertTrue(indexed.getAnnotatedClassNames().containsAll(scanned.getAnnotatedClassNames()));
+    }
+
+    private static List<String> names(final List<Class<?>> classes) {
+        final String[] names = new String[classes.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = classes.get(i).getName();
+        }
+        return asList(names);
+    }
+
+    static JarArchive jarArchive(final File jar) throws Exception {
+        final URL url = new URL("jar:" + jar.toURI().toURL() + "!/");
+        return new JarArchive(new URLClassLoader(new URL[]{url}), url);
+    }
+}
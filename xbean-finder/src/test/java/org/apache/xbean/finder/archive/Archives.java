@@ -16,20 +16,32 @@
  */
 package org.apache.xbean.finder.archive;
 
+import org.acme.foo.Color;
+import org.acme.foo.Holiday;
+import org.apache.xbean.finder.AnnotationFinder;
+
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
+import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertNotNull;
 import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
 
 /**
 * @version $Rev$ $Date$
@@ -151,4 +163,88 @@ public class Archives {
             out.closeEntry();
         }
     }
+
+    /**
+     * @return the classes of the org.acme packages of the test classpath
+     */
+    public static Archive acmeArchive() throws Exception {
+        final File classes = new File(Holiday.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        return new FileArchive(Archives.class.getClassLoader(), new File(classes, "org/acme"), "org.acme");
+    }
+
+    /**
+     * @return the infos of the model by annotation, as text so two finders can be compared
+     */
+    public static Map<String, List<String>> snapshot(final Map<String, List<AnnotationFinder.Info>> annotated) {
+        final Map<String, List<String>> snapshot = new TreeMap<String, List<String>>();
+        for (final Map.Entry<String, List<AnnotationFinder.Info>> entry : annotated.entrySet()) {
+            final List<String> infos = new ArrayList<String>();
+            for (final AnnotationFinder.Info info : entry.getValue()) {
+                infos.add(info.getClass().getSimpleName() + ":" + info);
+            }
+            snapshot.put(entry.getKey(), infos);
+        }
+        return snapshot;
+    }
+
+    public static List<String> list(final Archive archive) {
+        final List<String> names = new ArrayList<String>();
+        for (Archive.Entry entry : archive) {
+            names.add(entry.getName());
+        }
+        return names;
+    }
+
+    public static byte[] read(final InputStream in) throws IOException {
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    public static URL url(final File jar) throws IOException {
+        return new URL("jar:" + jar.toURI().toURL() + "!/");
+    }
+
+    public static URLClassLoader loader(final File jar) throws IOException {
+        return new URLClassLoader(new URL[]{url(jar)});
+    }
+
+    /**
+     * Checks the archive lists, serves and lets the finder see the classes of the jar as a JarArchive does, then closes it.
+     */
+    public static void assertSameAsJarArchive(final File jar, final Archive actual, final Class... classes) throws Exception {
+        final JarArchive expected = new JarArchive(loader(jar), url(jar));
+
+        final List<String> names = new ArrayList<String>();
+        for (Archive.Entry entry : actual) {
+            names.add(entry.getName());
+            assertTrue(entry.getName(), Arrays.equals(read(expected.getBytecode(entry.getName())), read(entry.getBytecode())));
+        }
+        assertEquals(list(expected), names);
+
+        for (Class clazz : classes) {
+            assertTrue(clazz.getName(), Arrays.equals(read(expected.getBytecode(clazz.getName())), read(actual.getBytecode(clazz.getName()))));
+        }
+        try {
+            actual.getBytecode("Fake");
+            fail("ClassNotFoundException should have been thrown");
+        } catch (ClassNotFoundException e) {
+            // pass
+        }
+
+        assertEquals(new AnnotationFinder(expected).link().findAnnotatedClasses(Color.class).size(),
+                new AnnotationFinder(actual).link().findAnnotatedClasses(Color.class).size());
+        if (actual instanceof AutoCloseable) {
+            ((AutoCloseable) actual).close();
+        }
+        expected.close();
+    }
 }
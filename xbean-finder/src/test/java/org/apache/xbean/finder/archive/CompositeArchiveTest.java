@@ -17,7 +17,13 @@
 package org.apache.xbean.finder.archive;
 
 import junit.framework.TestCase;
+import org.apache.xbean.finder.AnnotationFinder;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -50,6 +56,89 @@ public class CompositeArchiveTest extends TestCase {
         }
     }
 
+    public void testFindBytecode() throws Exception {
+        for (Class clazz : classes) {
+            final InputStream bytecode = archive.findBytecode(clazz.getName());
+            assertNotNull(clazz.getName(), bytecode);
+            bytecode.close();
+        }
+
+        assertNull(archive.findBytecode("Fake"));
+        assertNull(archive.findBytecode("org.acme.Fake"));
+    }
+
+    public void testRoutesToTheArchiveListingThePackage() throws Exception {
+        final ProbeCountingArchive local = new ProbeCountingArchive(Red.class);
+        final ProbeCountingArchive finder = new ProbeCountingArchive(AnnotationFinder.class);
+        final CompositeArchive composite = new CompositeArchive(local, finder);
+
+        // nothing listed yet, children are probed in order and the first one resolves it from its loader
+        composite.findBytecode(AnnotationFinder.class.getName()).close();
+        assertEquals(1, local.probes);
+        assertEquals(0, finder.probes);
+
+        for (Archive.Entry entry : composite) {
+            assertNotNull(entry.getName());
+        }
+
+        composite.findBytecode(AnnotationFinder.class.getName()).close();
+        assertEquals(1, local.probes);
+        assertEquals(1, finder.probes);
+
+        composite.getBytecode(Red.class.getName()).close();
+        assertEquals(2, local.probes);
+        assertEquals(1, finder.probes);
+    }
+
+    public void testRoutesWhenALazyFinderReadsTheChildren() throws Exception {
+        final ProbeCountingArchive local = new ProbeCountingArchive(Red.class);
+        final ProbeCountingArchive finder = new ProbeCountingArchive(AnnotationFinder.class);
+        final CompositeArchive composite = new CompositeArchive(local, finder);
+
+        // the children are read one by one, the composite itself is not iterated
+        new AnnotationFinder(composite, true, null, true).getAnnotatedClassNames();
+        local.probes = 0;
+        finder.probes = 0;
+
+        composite.findBytecode(AnnotationFinder.class.getName()).close();
+        assertEquals(0, local.probes);
+        assertEquals(1, finder.probes);
+    }
+
+    public void testIndexedClasspathArchiveRoutesTheOriginal() throws Exception {
+        final URL red = jar(Red.class, Green.class);
+        final URL blue = jar(Blue.class);
+        final ClasspathArchive classpath = new ClasspathArchive(new URLClassLoader(new URL[]{red, blue}), red, blue);
+        final Archive indexed = new ArchiveIndexCache(Files.createTempDirectory("indexes").toFile()).index(classpath);
+        assertTrue(indexed instanceof DelegatingCompositeArchive);
+
+        assertNull(classpath.route(Blue.class.getName()));
+        new AnnotationFinder(indexed, true, null, true).getAnnotatedClassNames();
+
+        // lookups of the indexed composite are served by the classpath archive
+        final InputStream bytecode = classpath.route(Blue.class.getName());
+        assertNotNull(bytecode);
+        bytecode.close();
+        assertNull(classpath.route(Blue.class.getPackage().getName() + ".Missing"));
+        final InputStream green = indexed.findBytecode(Green.class.getName());
+        assertNotNull(green);
+        green.close();
+    }
+
+    private static URL jar(final Class<?>... classes) throws Exception {
+        return new URL("jar:" + Archives.jarArchive(classes).toURI().toURL() + "!/");
+    }
+
+    public void testUnlistedClassesAreStillFound() throws Exception {
+        final CompositeArchive composite = new CompositeArchive(new ClassesArchive(Red.class));
+
+        // not listed by the child but its classloader knows it
+        final InputStream bytecode = composite.findBytecode(AnnotationFinder.class.getName());
+        assertNotNull(bytecode);
+        bytecode.close();
+        assertEquals(AnnotationFinder.class, composite.loadClass(AnnotationFinder.class.getName()));
+    }
+
     public void testLoadClass() throws Exception {
         for (Class clazz : classes) {
             assertEquals(clazz.getName(), clazz, archive.loadClass(clazz.getName()));
@@ -77,6 +166,20 @@ public class CompositeArchiveTest extends TestCase {
     }
 
 
+    private static class ProbeCountingArchive extends ClassesArchive {
+        private int probes;
+
+        private ProbeCountingArchive(Class<?>... classes) {
+            super(classes);
+        }
+
+        @Override
+        public InputStream findBytecode(String className) throws IOException {
+            probes++;
+            return super.findBytecode(className);
+        }
+    }
+
     public static class Red {
     }
 
@@ -17,9 +17,19 @@
 package org.apache.xbean.finder.archive;
 
 import junit.framework.TestCase;
+import org.acme.bar.AnnType;
+import org.acme.bar.ParamA;
+import org.acme.foo.Color;
+import org.acme.foo.Holiday;
+import org.apache.xbean.finder.filter.ExcludeIncludeFilter;
 import org.apache.xbean.finder.filter.Filter;
+import org.apache.xbean.finder.filter.Filters;
+import org.apache.xbean.finder.filter.IncludeExcludeFilter;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
@@ -49,6 +59,78 @@ public class FilteredArchiveTest extends TestCase {
         assertEquals(0, list.size());
     }
 
+    public void testPackagesArePushedIntoFileArchive() throws Exception {
+        final File dir = Archives.fileArchive(new Class[]{Color.class, Holiday.class, AnnType.class, ParamA.class, FilteredArchiveTest.class});
+        assertPushdown(new FileArchive(getClass().getClassLoader(), dir));
+    }
+
+    public void testPackagesArePushedIntoJarArchive() throws Exception {
+        final File jar = Archives.jarArchive(Color.class, Holiday.class, AnnType.class, ParamA.class, FilteredArchiveTest.class);
+        final JarArchive archive = new JarArchive(getClass().getClassLoader(), jar.toURI().toURL());
+        try {
+            assertPushdown(archive);
+        } finally {
+            archive.close();
+        }
+    }
+
+    private static void assertPushdown(final Archive archive) {
+        final Recording included = new Recording(Filters.packages("org.acme.foo"));
+        assertEquals(2, list(new FilteredArchive(archive, included)).size());
+        assertEquals(2, included.names.size());
+
+        // excluded subtrees are skipped too
+        final Recording excluded = new Recording(Filters.invert(Filters.packages("org.acme")));
+        assertEquals(list(new FilteredArchive(archive, excluded)).toString(), 1, excluded.names.size());
+
+        // unknown filters still see every entry
+        final Recording unknown = new Recording(new Nothing());
+        assertEquals(5, list(new FilteredArchive(archive, unknown)).size());
+        assertEquals(5, unknown.names.size());
+    }
+
+    public void testPrefixesArePushedIntoFileArchive() throws Exception {
+        final File dir = Archives.fileArchive(new Class[]{Color.class, Holiday.class, AnnType.class, ParamA.class, FilteredArchiveTest.class});
+        assertPrefixPushdown(new FileArchive(getClass().getClassLoader(), dir));
+    }
+
+    public void testPrefixesArePushedIntoJarArchive() throws Exception {
+        final File jar = Archives.jarArchive(Color.class, Holiday.class, AnnType.class, ParamA.class, FilteredArchiveTest.class);
+        final JarArchive archive = new JarArchive(getClass().getClassLoader(), jar.toURI().toURL());
+        try {
+            assertPrefixPushdown(archive);
+        } finally {
+            archive.close();
+        }
+    }
+
+    private static void assertPrefixPushdown(final Archive archive) {
+        // listing the archive itself would let it answer the scoped iterations from its full listing
+        final List<String> all = Arrays.asList(Color.class.getName(), Holiday.class.getName(), AnnType.class.getName(),
+                ParamA.class.getName(), FilteredArchiveTest.class.getName());
+
+        assertSameAsAccept(all, archive, Filters.invert(Filters.prefixes("org.acme.f")), 3);
+        assertSameAsAccept(all, archive, new IncludeExcludeFilter(Filters.packages("org"), Filters.prefixes("org.acme.f")), 3);
+        assertSameAsAccept(all, archive, new IncludeExcludeFilter(Filters.prefixes("org.acme"), Filters.prefixes("org.acme.b")), 2);
+        assertSameAsAccept(all, archive, new ExcludeIncludeFilter(Filters.prefixes("org.acme.foo.C"), Filters.prefixes("org.acme")), 2);
+        assertSameAsAccept(all, archive, new ExcludeIncludeFilter(Filters.packages("org.apache"), Filters.prefixes("org.acme.f")), 3);
+    }
+
+    private static void assertSameAsAccept(final List<String> all, final Archive archive, final Filter filter, final int expected) {
+        final List<String> accepted = new ArrayList<String>();
+        for (String name : all) {
+            if (filter.accept(name)) {
+                accepted.add(name);
+            }
+        }
+        assertEquals(filter.toString(), expected, accepted.size());
+
+        final List<String> actual = list(new FilteredArchive(archive, filter));
+        Collections.sort(accepted);
+        Collections.sort(actual);
+        assertEquals(filter.toString(), accepted, actual);
+    }
+
     public static void assertEquals(Iterable<Archive.Entry> expectedList, Iterable<Archive.Entry> actualList) {
         final Iterator<Archive.Entry> expected = expectedList.iterator();
         final Iterator<Archive.Entry> actual = actualList.iterator();
@@ -76,6 +158,31 @@ public class FilteredArchiveTest extends TestCase {
         }
     }
 
+    public static class Recording implements Filter {
+
+        private final Filter filter;
+        private final List<String> names = new ArrayList<String>();
+
+        public Recording(Filter filter) {
+            this.filter = filter;
+        }
+
+        public boolean accept(String name) {
+            names.add(name);
+            return filter.accept(name);
+        }
+
+        @Override
+        public boolean mayAccept(String prefix) {
+            return filter.mayAccept(prefix);
+        }
+
+        @Override
+        public boolean acceptsAll(String prefix) {
+            return filter.acceptsAll(prefix);
+        }
+    }
+
     public static class Half implements Filter {
 
         private boolean accept;
@@ -40,9 +40,11 @@ import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Map;
 import java.util.Set;
 import java.util.jar.Attributes;
 import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
 import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
 
@@ -154,6 +156,20 @@ public class MJarJarArchiveTest {
         }
     }
 
+    @Test
+    public void overlayKeepsTheHighestApplicableVersion() throws Exception {
+        ensureJava9OrLater();
+        assumeTrue("9".equals(System.getProperty("jdk.util.jar.version")));
+        final JarFile file = new JarFile(jar);
+        try {
+            final Map<String, String> overlay = MJarSupport.overlay(file.entries());
+            assertEquals(1, overlay.size());
+            assertEquals("META-INF/versions/9/org/test/Foo.class", overlay.get("org/test/Foo.class"));
+        } finally {
+            file.close();
+        }
+    }
+
     @Test
     public void classLoaderScanningOneUrl() throws Exception {
         ensureJava9OrLater();
@@ -0,0 +1,143 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import org.acme.foo.Blue;
+import org.acme.foo.Green;
+import org.acme.foo.Red;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class MappedJarArchiveTest {
+
+    private static final Class[] classes = {Blue.class, Blue.Navy.class, Blue.Sky.class, Green.class, Green.Emerald.class, Red.class, Red.CandyApple.class, Red.Pink.class};
+
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void deflated() throws Exception {
+        final File jar = Archives.jarArchive(classes);
+        Archives.assertSameAsJarArchive(jar, new MappedJarArchive(Archives.loader(jar), Archives.url(jar)), classes);
+    }
+
+    @Test
+    public void stored() throws Exception {
+        final File jar = tmp.newFile("stored.jar");
+        final OutputStream out = new FileOutputStream(jar);
+        try {
+            writeZip(out, ZipEntry.STORED);
+        } finally {
+            out.close();
+        }
+        Archives.assertSameAsJarArchive(jar, new MappedJarArchive(Archives.loader(jar), Archives.url(jar)), classes);
+
+        final MappedJarArchive archive = new MappedJarArchive(Archives.loader(jar), Archives.url(jar));
+        for (Archive.Entry entry : archive) {
+            final ByteBuffer buffer = ((MappedJarArchive.MappedEntry) entry).getBuffer();
+            final byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            assertArrayEquals(bytes, ((MappedJarArchive.MappedEntry) entry).getBytes());
+        }
+    }
+
+    @Test
+    public void prependedData() throws Exception {
+        final File jar = tmp.newFile("prepended.jar");
+        final OutputStream out = new FileOutputStream(jar);
+        try {
+            out.write("#!/bin/sh\nexec java -jar \"$0\" \"$@\"\n".getBytes("UTF-8"));
+            writeZip(out, ZipEntry.DEFLATED);
+        } finally {
+            out.close();
+        }
+        Archives.assertSameAsJarArchive(jar, new MappedJarArchive(Archives.loader(jar), Archives.url(jar)), classes);
+    }
+
+    @Test
+    public void getBytecode() throws Exception {
+        final File jar = Archives.jarArchive(classes);
+        final MappedJarArchive archive = new MappedJarArchive(Archives.loader(jar), Archives.url(jar));
+        for (Class clazz : classes) {
+            assertArrayEquals(clazz.getName(), Archives.read(new JarArchive(Archives.loader(jar), Archives.url(jar)).getBytecode(clazz.getName())), Archives.read(archive.getBytecode(clazz.getName())));
+            assertEquals(clazz, archive.loadClass(clazz.getName()));
+        }
+        try {
+            archive.getBytecode("Fake");
+            fail("ClassNotFoundException should have been thrown");
+        } catch (ClassNotFoundException e) {
+            // pass
+        }
+        assertNull(archive.getEntry("META-INF/missing"));
+    }
+
+    @Test
+    public void notAZip() throws Exception {
+        final File file = tmp.newFile("broken.jar");
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[64]);
+        } finally {
+            out.close();
+        }
+        try {
+            new MappedJarArchive(Archives.loader(file), Archives.url(file));
+            fail("IllegalStateException should have been thrown");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains(file.getName()));
+        }
+    }
+
+    private static void writeZip(final OutputStream stream, final int method) throws Exception {
+        final ZipOutputStream out = new ZipOutputStream(stream);
+        out.setMethod(method);
+        for (Class clazz : classes) {
+            final String name = clazz.getName().replace('.', '/') + ".class";
+            final byte[] bytes = Archives.read(MappedJarArchiveTest.class.getClassLoader().getResourceAsStream(name));
+            final ZipEntry entry = new ZipEntry(name);
+            if (method == ZipEntry.STORED) {
+                final CRC32 crc = new CRC32();
+                crc.update(bytes);
+                entry.setSize(bytes.length);
+                entry.setCompressedSize(bytes.length);
+                entry.setCrc(crc.getValue());
+            }
+            out.putNextEntry(entry);
+            out.write(bytes);
+            out.closeEntry();
+        }
+        out.finish();
+    }
+}
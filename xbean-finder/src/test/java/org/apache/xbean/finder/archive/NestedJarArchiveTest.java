@@ -0,0 +1,177 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import org.acme.foo.Blue;
+import org.acme.foo.Color;
+import org.acme.foo.Green;
+import org.acme.foo.Red;
+import org.apache.xbean.finder.AnnotationFinder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class NestedJarArchiveTest {
+
+    private static final Class[] classes = {Blue.class, Blue.Navy.class, Blue.Sky.class, Green.class, Green.Emerald.class, Red.class, Red.CandyApple.class, Red.Pink.class};
+
+    private static final String LIB = "WEB-INF/lib/colors.jar";
+
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void stored() throws Exception {
+        final File inner = Archives.jarArchive(classes);
+        final File outer = outer(inner, ZipEntry.STORED, null);
+        Archives.assertSameAsJarArchive(inner, new NestedJarArchive(Archives.loader(inner), new URL("jar:" + outer.toURI().toURL() + "!/" + LIB + "!/")), classes);
+    }
+
+    @Test
+    public void deflated() throws Exception {
+        final File inner = Archives.jarArchive(classes);
+        final File outer = outer(inner, ZipEntry.DEFLATED, null);
+        Archives.assertSameAsJarArchive(inner, new NestedJarArchive(Archives.loader(inner), new URL("jar:" + outer.toURI().toURL() + "!/" + LIB + "!/")), classes);
+    }
+
+    @Test
+    public void prependedData() throws Exception {
+        final File inner = Archives.jarArchive(classes);
+        final File outer = outer(inner, ZipEntry.STORED, "#!/bin/sh\nexec java -jar \"$0\" \"$@\"\n");
+        Archives.assertSameAsJarArchive(inner, new NestedJarArchive(Archives.loader(inner), new URL("jar:" + outer.toURI().toURL() + "!/" + LIB + "!/")), classes);
+    }
+
+    @Test
+    public void nestedUrls() throws Exception {
+        final File inner = Archives.jarArchive(classes);
+        final File outer = outer(inner, ZipEntry.STORED, null);
+
+        final URL jarNested = new URL(null, "jar:nested:" + outer.getAbsolutePath() + "/!" + LIB + "!/", new NoHandler());
+        final NestedJarArchive archive = new NestedJarArchive(Archives.loader(inner), jarNested);
+        assertEquals(outer.getAbsoluteFile(), archive.getFile().getAbsoluteFile());
+        assertEquals(LIB, archive.getPath());
+        Archives.assertSameAsJarArchive(inner, archive, classes);
+
+        final URL nested = new URL(null, "nested:" + outer.getAbsolutePath() + "/!" + LIB, new NoHandler());
+        Archives.assertSameAsJarArchive(inner, new NestedJarArchive(Archives.loader(inner), nested), classes);
+    }
+
+    @Test
+    public void classpathArchive() throws Exception {
+        final File inner = Archives.jarArchive(classes);
+        final File outer = outer(inner, ZipEntry.DEFLATED, null);
+        final URL url = new URL("jar:" + outer.toURI().toURL() + "!/" + LIB + "!/");
+
+        final Archive archive = ClasspathArchive.archive(Archives.loader(inner), url);
+        assertTrue(archive instanceof NestedJarArchive);
+        assertEquals(8, new AnnotationFinder(new ClasspathArchive(Archives.loader(inner), url)).link().findAnnotatedClasses(Color.class).size());
+
+        assertFalse(NestedJarArchive.isNested(new URL("jar:" + outer.toURI().toURL() + "!/WEB-INF/classes/")));
+        assertFalse(NestedJarArchive.isNested(new URL("jar:" + outer.toURI().toURL() + "!/")));
+        assertFalse(NestedJarArchive.isNested(outer.toURI().toURL()));
+    }
+
+    @Test
+    public void outerJarIsShared() throws Exception {
+        final File inner = Archives.jarArchive(classes);
+        final File outer = outer(inner, ZipEntry.DEFLATED, null);
+        final URL url = new URL("jar:" + outer.toURI().toURL() + "!/" + LIB + "!/");
+
+        final Map<File, MappedJarArchive> outers = new HashMap<File, MappedJarArchive>();
+        final NestedJarArchive first = new NestedJarArchive(Archives.loader(inner), url, outers);
+        final NestedJarArchive second = new NestedJarArchive(Archives.loader(inner), url, outers);
+        assertEquals(1, outers.size());
+        NestedJarArchive.close(outers.values().iterator().next());
+
+        Archives.assertSameAsJarArchive(inner, first, classes);
+        Archives.assertSameAsJarArchive(inner, second, classes);
+    }
+
+    @Test
+    public void missingNestedJar() throws Exception {
+        final File inner = Archives.jarArchive(classes);
+        final File outer = outer(inner, ZipEntry.STORED, null);
+        try {
+            new NestedJarArchive(Archives.loader(inner), new URL("jar:" + outer.toURI().toURL() + "!/WEB-INF/lib/missing.jar!/"));
+            fail("IllegalStateException should have been thrown");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("missing.jar"));
+        }
+    }
+
+    private File outer(final File inner, final int method, final String prefix) throws Exception {
+        final byte[] bytes = Archives.read(new FileInputStream(inner));
+        final File outer = tmp.newFile("outer.war");
+        final OutputStream stream = new FileOutputStream(outer);
+        try {
+            if (prefix != null) {
+                stream.write(prefix.getBytes("UTF-8"));
+            }
+            final ZipOutputStream out = new ZipOutputStream(stream);
+            out.putNextEntry(new ZipEntry("WEB-INF/web.xml"));
+            out.write("<web-app/>".getBytes("UTF-8"));
+            out.closeEntry();
+
+            final ZipEntry entry = new ZipEntry(LIB);
+            if (method == ZipEntry.STORED) {
+                final CRC32 crc = new CRC32();
+                crc.update(bytes);
+                entry.setMethod(ZipEntry.STORED);
+                entry.setSize(bytes.length);
+                entry.setCompressedSize(bytes.length);
+                entry.setCrc(crc.getValue());
+            }
+            out.putNextEntry(entry);
+            out.write(bytes);
+            out.closeEntry();
+            out.finish();
+        } finally {
+            stream.close();
+        }
+        return outer;
+    }
+
+    // nested urls are only parsed, never opened
+    private static class NoHandler extends URLStreamHandler {
+        @Override
+        protected URLConnection openConnection(final URL u) throws IOException {
+            throw new IOException("not supported: " + u);
+        }
+    }
+}
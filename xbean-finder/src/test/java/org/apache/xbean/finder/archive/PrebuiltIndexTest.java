@@ -0,0 +1,128 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import org.acme.foo.Blue;
+import org.acme.foo.Color;
+import org.acme.foo.Green;
+import org.acme.foo.Red;
+import org.apache.xbean.finder.AnnotationFinder;
+import org.junit.Test;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.HashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class PrebuiltIndexTest {
+
+    private static final Class[] classes = {Blue.class, Blue.Navy.class, Blue.Sky.class, Green.class, Green.Emerald.class, Red.class, Red.CandyApple.class, Red.Pink.class};
+
+    @Test
+    public void directory() throws Exception {
+        final File dir = Archives.fileArchive(classes);
+        final FileArchive archive = fileArchive(dir);
+        write(ArchiveIndex.build(archive), new File(dir, ArchiveIndex.LOCATION));
+
+        final Archive detected = IndexedArchive.detect(fileArchive(dir));
+        assertTrue(detected instanceof IndexedArchive);
+        assertEquals(classes.length, ((IndexedArchive) detected).getIndex().size());
+        assertEquals(8, new AnnotationFinder(detected).link().findAnnotatedClasses(Color.class).size());
+    }
+
+    @Test
+    public void staleDirectory() throws Exception {
+        final File dir = Archives.fileArchive(classes);
+        final File index = new File(dir, ArchiveIndex.LOCATION);
+        write(ArchiveIndex.build(fileArchive(dir)), index);
+
+        final File red = new File(dir, Red.class.getName().replace('.', '/') + ".class");
+        assertTrue(red.setLastModified(index.lastModified() + 60000));
+        assertFalse(IndexedArchive.detect(fileArchive(dir)) instanceof IndexedArchive);
+
+        assertTrue(red.delete());
+        write(ArchiveIndex.build(fileArchive(dir)), index);
+        assertTrue(IndexedArchive.detect(fileArchive(dir)) instanceof IndexedArchive);
+    }
+
+    @Test
+    public void jar() throws Exception {
+        final File dir = Archives.fileArchive(classes);
+        final ArchiveIndex index = ArchiveIndex.build(fileArchive(dir));
+
+        final File jar = File.createTempFile("prebuilt", ".jar");
+        final ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(jar)));
+        try {
+            Archives.putClasses(getClass().getClassLoader(), out, classes);
+            out.putNextEntry(new ZipEntry(ArchiveIndex.LOCATION));
+            index.write(out);
+            out.closeEntry();
+        } finally {
+            out.close();
+        }
+
+        final Archive detected = IndexedArchive.detect(new CompositeArchive(jarArchive(jar)));
+        assertTrue(((CompositeArchive) detected).getArchives().get(0) instanceof IndexedArchive);
+        assertEquals(8, new AnnotationFinder(detected).link().findAnnotatedClasses(Color.class).size());
+    }
+
+    @Test
+    public void mergedIndexIsIgnored() throws Exception {
+        final File dir = Archives.fileArchive(new Class[]{Red.class, Red.CandyApple.class, Red.Pink.class});
+        final ArchiveIndex index = ArchiveIndex.build(fileArchive(dir));
+
+        final File classpath = Archives.fileArchive(new HashMap<String, String>(), classes);
+        write(index, new File(classpath, ArchiveIndex.LOCATION));
+
+        final FileArchive archive = fileArchive(classpath);
+        assertSame(archive, IndexedArchive.detect(archive));
+    }
+
+    private static void write(final ArchiveIndex index, final File file) throws Exception {
+        assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            index.write(out);
+        } finally {
+            out.close();
+        }
+        // the index is written after the classes, as the build does
+        assertTrue(file.setLastModified(System.currentTimeMillis() + 1000));
+    }
+
+    private static FileArchive fileArchive(final File dir) throws Exception {
+        return new FileArchive(new URLClassLoader(new URL[]{dir.toURI().toURL()}), dir);
+    }
+
+    private static JarArchive jarArchive(final File jar) throws Exception {
+        final URL url = new URL("jar:" + jar.toURI().toURL() + "!/");
+        return new JarArchive(new URLClassLoader(new URL[]{url}), url);
+    }
+}
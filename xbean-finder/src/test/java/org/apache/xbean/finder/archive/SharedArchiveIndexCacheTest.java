@@ -0,0 +1,100 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import org.acme.foo.Blue;
+import org.acme.foo.Green;
+import org.acme.foo.Red;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+
+import static org.apache.xbean.finder.archive.ArchiveIndexCacheTest.assertSameResults;
+import static org.apache.xbean.finder.archive.ArchiveIndexCacheTest.jarArchive;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SharedArchiveIndexCacheTest {
+
+    private static final Class[] classes = {Blue.class, Blue.Navy.class, Blue.Sky.class, Green.class, Green.Emerald.class, Red.class, Red.CandyApple.class, Red.Pink.class};
+
+    @Test
+    public void indexIsSharedBetweenFinders() throws Exception {
+        final File jar = Archives.jarArchive(classes);
+        final SharedArchiveIndexCache cache = new SharedArchiveIndexCache(4, false);
+
+        final Archive first = cache.index(jarArchive(jar));
+        final Archive second = cache.index(jarArchive(jar));
+        assertTrue(first instanceof IndexedArchive);
+        assertSame(((IndexedArchive) first).getIndex(), ((IndexedArchive) second).getIndex());
+        assertEquals(1, cache.size());
+        assertSameResults(jarArchive(jar), second);
+
+        // the jar changed so it is scanned again
+        Archives.jarArchive(jar, new HashMap<String, String>(), Red.class, Red.CandyApple.class, Red.Pink.class);
+        assertTrue(jar.setLastModified(jar.lastModified() + 60000));
+        final Archive third = cache.index(jarArchive(jar));
+        assertEquals(3, ((IndexedArchive) third).getIndex().size());
+    }
+
+    @Test
+    public void copiesShareTheirIndexWithDigests() throws Exception {
+        final File jar = Archives.jarArchive(classes);
+        final File copy = new File(jar.getParentFile(), "copy-" + jar.getName());
+        Files.copy(jar.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        copy.deleteOnExit();
+
+        final SharedArchiveIndexCache byPath = new SharedArchiveIndexCache(4, false);
+        assertNotSame(((IndexedArchive) byPath.index(jarArchive(jar))).getIndex(), ((IndexedArchive) byPath.index(jarArchive(copy))).getIndex());
+
+        final SharedArchiveIndexCache byContent = new SharedArchiveIndexCache(4, true);
+        assertSame(((IndexedArchive) byContent.index(jarArchive(jar))).getIndex(), ((IndexedArchive) byContent.index(jarArchive(copy))).getIndex());
+        assertEquals(1, byContent.size());
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvicted() throws Exception {
+        final File blue = Archives.jarArchive(Blue.class, Blue.Navy.class);
+        final File green = Archives.jarArchive(Green.class, Green.Emerald.class);
+        final File red = Archives.jarArchive(Red.class, Red.Pink.class);
+        final SharedArchiveIndexCache cache = new SharedArchiveIndexCache(2, false);
+
+        final ArchiveIndex blueIndex = ((IndexedArchive) cache.index(jarArchive(blue))).getIndex();
+        final ArchiveIndex greenIndex = ((IndexedArchive) cache.index(jarArchive(green))).getIndex();
+        assertSame(blueIndex, ((IndexedArchive) cache.index(jarArchive(blue))).getIndex());
+
+        cache.index(jarArchive(red));
+        assertEquals(2, cache.size());
+        assertSame(blueIndex, ((IndexedArchive) cache.index(jarArchive(blue))).getIndex());
+        assertNotSame(greenIndex, ((IndexedArchive) cache.index(jarArchive(green))).getIndex());
+    }
+
+    @Test
+    public void compositeChildrenAreIndexed() throws Exception {
+        final File jar = Archives.jarArchive(classes);
+        final SharedArchiveIndexCache cache = new SharedArchiveIndexCache(4, false);
+
+        final Archive archive = cache.index(new CompositeArchive(jarArchive(jar)));
+        assertTrue(((CompositeArchive) archive).getArchives().get(0) instanceof IndexedArchive);
+        assertSameResults(jarArchive(jar), archive);
+    }
+}
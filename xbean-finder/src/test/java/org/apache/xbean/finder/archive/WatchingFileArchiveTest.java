@@ -0,0 +1,154 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import org.acme.foo.Color;
+import org.acme.foo.Green;
+import org.acme.foo.Red;
+import org.apache.xbean.finder.AnnotationFinder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class WatchingFileArchiveTest {
+
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void changesAreReported() throws Exception {
+        final File dir = tmp.newFolder("classes");
+        final WatchingFileArchive archive = new WatchingFileArchive(getClass().getClassLoader(), dir);
+        try {
+            assertEquals(0, Archives.list(archive).size());
+            assertEquals(0, archive.poll().size());
+
+            // directories created after the archive are watched as well
+            copy(dir, Red.class, Green.class);
+            assertEquals(set(Red.class.getName(), Green.class.getName()), changes(archive, 2));
+            assertEquals(set(Red.class.getName(), Green.class.getName()), new TreeSet<String>(Archives.list(archive)));
+
+            copy(dir, Red.class);
+            assertEquals(set(Red.class.getName()), changes(archive, 1));
+
+            assertTrue(new File(dir, path(Green.class)).delete());
+            assertEquals(set(Green.class.getName()), changes(archive, 1));
+            assertEquals(Arrays.asList(Red.class.getName()), Archives.list(archive));
+        } finally {
+            archive.close();
+        }
+    }
+
+    @Test
+    public void feedsTheFinder() throws Exception {
+        final File dir = tmp.newFolder("finder");
+        copy(dir, Red.class);
+
+        final WatchingFileArchive archive = new WatchingFileArchive(getClass().getClassLoader(), dir);
+        try {
+            final AnnotationFinder finder = new AnnotationFinder(archive).link();
+            assertEquals(Arrays.<Class<?>>asList(Red.class), finder.findAnnotatedClasses(Color.class));
+
+            copy(dir, Green.class);
+            finder.update(changes(archive, 1));
+            assertEquals(set(Red.class.getName(), Green.class.getName()), new TreeSet<String>(finder.getAnnotatedClassNames()));
+        } finally {
+            archive.close();
+        }
+    }
+
+    @Test
+    public void movedPackageIsReported() throws Exception {
+        final File dir = tmp.newFolder("moved");
+        copy(dir, Red.class, Green.class);
+
+        // only the directory, the removed classes must not be found elsewhere
+        final URLClassLoader loader = new URLClassLoader(new URL[]{dir.toURI().toURL()}, null);
+        final WatchingFileArchive archive = new WatchingFileArchive(loader, dir);
+        try {
+            final AnnotationFinder finder = new AnnotationFinder(archive).link();
+
+            copy(dir, Color.class);
+            finder.update(changes(archive, 1));
+
+            // the disk doesn't list the classes of a package which is gone
+            Files.move(new File(dir, "org/acme/foo").toPath(), tmp.newFolder("elsewhere").toPath().resolve("foo"));
+            final Set<String> changes = changes(archive, 3);
+            assertEquals(set(Red.class.getName(), Green.class.getName(), Color.class.getName()), changes);
+            assertEquals(0, Archives.list(archive).size());
+
+            finder.update(changes);
+            assertEquals(0, finder.getAnnotatedClassNames().size());
+        } finally {
+            archive.close();
+            loader.close();
+        }
+    }
+
+    private static Set<String> changes(final WatchingFileArchive archive, final int expected) throws Exception {
+        final Set<String> changes = new TreeSet<String>();
+        final long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (changes.size() < expected && System.nanoTime() < end) {
+            changes.addAll(archive.poll(100, TimeUnit.MILLISECONDS));
+        }
+        // events of the same change can be delivered late
+        Set<String> late;
+        while (!(late = archive.poll(200, TimeUnit.MILLISECONDS)).isEmpty()) {
+            changes.addAll(late);
+        }
+        return changes;
+    }
+
+    private static Set<String> set(final String... values) {
+        return new TreeSet<String>(Arrays.asList(values));
+    }
+
+    private static void copy(final File dir, final Class<?>... classes) throws IOException {
+        for (Class<?> clazz : classes) {
+            final File file = new File(dir, path(clazz));
+            file.getParentFile().mkdirs();
+            final InputStream in = clazz.getClassLoader().getResourceAsStream(path(clazz));
+            try {
+                Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    private static String path(final Class<?> clazz) {
+        return clazz.getName().replace('.', '/') + ".class";
+    }
+}